@@ -0,0 +1,92 @@
+package com.tesis.authentication;
+
+import com.tesis.privileges.Privilege;
+import com.tesis.roles.Role;
+import com.tesis.users.User;
+import com.tesis.users.UserStatus;
+import com.tesis.utils.TokenCodec;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtBuilder;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.security.Key;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Size, signing and parsing cost of the legacy access token (whole User entity under the "user" claim) against the
+ * compact {@link AccessTokenClaims}. The token length of each format is printed on setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AccessTokenClaimsBenchmark {
+
+    @Param({"LEGACY", "COMPACT"})
+    public String format;
+
+    private final Key key = Keys.secretKeyFor(SignatureAlgorithm.HS512);
+    private final TokenCodec tokenCodec = new TokenCodec(key, new SimpleMeterRegistry());
+    private User user;
+    private String token;
+
+    @Setup
+    public void setUp() {
+
+        Set<Privilege> privileges = new HashSet<>();
+        for (long i = 1; i <= 10; i++) {
+            privileges.add(Privilege.builder().id(i).name("PRIVILEGE_" + i).build());
+        }
+
+        user = User.builder()
+                .id(1L)
+                .status(UserStatus.ACTIVE)
+                .email("benchmark@test.com")
+                .name("benchmark")
+                .lastName("benchmark")
+                .dni("12345678")
+                .address("Av. Siempre Viva 742")
+                .phone("+54 351 1234567")
+                .createdAt(LocalDateTime.now())
+                .updatedAt(LocalDateTime.now())
+                .role(Role.builder().id(1L).name("CLIENT").privileges(privileges).build())
+                .build();
+
+        token = sign();
+        System.out.println(String.format("%n%s access token length: %d chars", format, token.length()));
+    }
+
+    @Benchmark
+    public String sign() {
+
+        JwtBuilder builder = Jwts.builder()
+                .setHeaderParam("type", "BEARER")
+                .setSubject(user.getId().toString())
+                .setIssuedAt(new Date())
+                .setExpiration(Date.from(Instant.now().plus(DefaultAuthenticationService.ACCESS_TOKEN_TTL)));
+
+        if ("LEGACY".equals(format)) {
+            builder.claim("user", user);
+        } else {
+            builder.addClaims(AccessTokenClaims.of(user)).setId(AccessTokenClaims.newTokenId());
+        }
+
+        return builder.signWith(key, SignatureAlgorithm.HS512).compact();
+    }
+
+    @Benchmark
+    public Claims parse() {
+        return tokenCodec.parse(token).getClaims();
+    }
+}
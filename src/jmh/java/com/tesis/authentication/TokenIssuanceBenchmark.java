@@ -0,0 +1,77 @@
+package com.tesis.authentication;
+
+import com.tesis.config.SpringConfig;
+import com.tesis.roles.Role;
+import com.tesis.roles.RoleRepository;
+import com.tesis.users.User;
+import com.tesis.users.UserRepository;
+import com.tesis.users.UserStatus;
+import com.tesis.utils.ScopeUtils;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.aop.framework.AopProxyUtils;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token issuance of a successful login without the password check: signing the access token, revoking the previous
+ * one and storing the new one, against an in memory H2 db. Run with -prof gc for the allocation per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TokenIssuanceBenchmark {
+
+    private ConfigurableApplicationContext context;
+    private Object authenticationService;
+    private Method createAccessToken;
+    private User user;
+
+    @Setup
+    public void setUp() throws NoSuchMethodException {
+
+        System.setProperty(ScopeUtils.ENVIRONMENT, ScopeUtils.DEVELOPMENT);
+        context = new SpringApplicationBuilder(SpringConfig.class)
+                .web(WebApplicationType.NONE)
+                .run(
+                        "--spring.datasource.url=jdbc:h2:mem:issuance;DB_CLOSE_DELAY=-1",
+                        "--spring.datasource.username=sa",
+                        "--spring.datasource.password=sa",
+                        "--spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+                        "--spring.jpa.hibernate.ddl-auto=create-drop",
+                        "--spring.jpa.show-sql=false",
+                        "--EMAIL_SECRET_KEY=benchmark");
+
+        Role role = context.getBean(RoleRepository.class).save(Role.builder().name("CLIENT").build());
+        user = context.getBean(UserRepository.class).save(User.builder()
+                .name("benchmark")
+                .lastName("benchmark")
+                .dni("123")
+                .email("benchmark@test.com")
+                .password("not used")
+                .status(UserStatus.ACTIVE)
+                .role(role)
+                .build());
+
+        //createAccessToken is private, it is called on the bean behind the metrics and transaction proxies
+        authenticationService = AopProxyUtils.getSingletonTarget(context.getBean(AuthenticationService.class));
+        createAccessToken = DefaultAuthenticationService.class.getDeclaredMethod("createAccessToken", User.class);
+        createAccessToken.setAccessible(true);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Object createAccessToken() throws Exception {
+        return createAccessToken.invoke(authenticationService, user);
+    }
+}
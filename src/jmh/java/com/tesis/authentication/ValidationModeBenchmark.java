@@ -0,0 +1,114 @@
+package com.tesis.authentication;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.tesis.config.SpringConfig;
+import com.tesis.privileges.Privilege;
+import com.tesis.privileges.PrivilegeRepository;
+import com.tesis.roles.AuthorizationIndex;
+import com.tesis.roles.Role;
+import com.tesis.roles.RoleRepository;
+import com.tesis.users.User;
+import com.tesis.users.UserRepository;
+import com.tesis.users.UserStatus;
+import com.tesis.utils.ScopeUtils;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the validate path of both {@link ValidationMode}s against an in memory H2 db, with the verified token cache
+ * disabled (every call verifies the token) and enabled.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ValidationModeBenchmark {
+
+    private static final String EMAIL = "benchmark@test.com";
+    private static final String PASSWORD = "benchmark";
+
+    @Param({"STATEFUL", "STATELESS"})
+    public String validationMode;
+
+    @Param({"0", "10000"})
+    public int tokenCacheSize;
+
+    private ConfigurableApplicationContext context;
+    private AuthenticationService authenticationService;
+    private String token;
+    private List<String> privileges;
+
+    @Setup
+    public void setUp() {
+
+        System.setProperty(ScopeUtils.ENVIRONMENT, ScopeUtils.DEVELOPMENT);
+        //Passed as command line args so they take precedence over the profile datasource
+        context = new SpringApplicationBuilder(SpringConfig.class)
+                .web(WebApplicationType.NONE)
+                .run(
+                        "--spring.datasource.url=jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1",
+                        "--spring.datasource.username=sa",
+                        "--spring.datasource.password=sa",
+                        "--spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+                        "--spring.jpa.hibernate.ddl-auto=create-drop",
+                        "--spring.jpa.show-sql=false",
+                        "--EMAIL_SECRET_KEY=benchmark",
+                        "--authentication.validation-mode=" + validationMode,
+                        "--authentication.token-cache.maximum-size=" + tokenCacheSize);
+
+        List<Privilege> catalog = context.getBean(PrivilegeRepository.class).saveAll(Lists.newArrayList(
+                Privilege.builder().name("GET_CLIENT").build(),
+                Privilege.builder().name("CREATE_CLIENT").build(),
+                Privilege.builder().name("DELETE_CLIENT").build()
+        ));
+        RoleRepository roleRepository = context.getBean(RoleRepository.class);
+        Role role = roleRepository.save(Role.builder().name("CLIENT").build());
+        role.setPrivileges(Sets.newHashSet(catalog));
+        role = roleRepository.save(role);
+        context.getBean(UserRepository.class).save(User.builder()
+                .name("benchmark")
+                .lastName("benchmark")
+                .dni("123")
+                .email(EMAIL)
+                .password(context.getBean(PasswordEncoder.class).encode(PASSWORD))
+                .status(UserStatus.ACTIVE)
+                .role(role)
+                .build());
+
+        //The catalog was written through the repositories, so the index does not know about it yet
+        context.getBean(AuthorizationIndex.class).refresh();
+
+        authenticationService = context.getBean(AuthenticationService.class);
+        //Login serializes the user into the token, it needs a session like the one open-in-view gives to web requests
+        token = new TransactionTemplate(context.getBean(PlatformTransactionManager.class))
+                .execute(status -> authenticationService.login(new ClientCredentialsBody(EMAIL, PASSWORD)).getToken());
+        privileges = Lists.newArrayList("GET_CLIENT", "CREATE_CLIENT");
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public void validateToken() {
+        authenticationService.validatePrivilegesOnAccessToken(token, Collections.emptyList());
+    }
+
+    @Benchmark
+    public void validateTokenAndPrivileges() {
+        authenticationService.validatePrivilegesOnAccessToken(token, privileges);
+    }
+}
@@ -0,0 +1,117 @@
+package com.tesis.emails;
+
+import com.google.common.collect.Lists;
+import com.sun.net.httpserver.HttpServer;
+import com.tesis.config.SpringConfig;
+import com.tesis.emails.models.EmailModel;
+import com.tesis.emails.models.MailAddress;
+import com.tesis.emails.models.Personalization;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.retry.Retry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import kong.unirest.Unirest;
+import kong.unirest.UnirestInstance;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Request threads sending an email each against a local stub of SendGrid that answers 202 after a fixed latency.
+ * With sendMail the request thread is held for the whole exchange; with sendMailAsync it only serializes the email and
+ * keeps going, waiting only if it has more than MAX_IN_FLIGHT emails pending. Scores are requests per second.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class AsyncEmailClientBenchmark {
+
+    private static final int MAX_IN_FLIGHT = 25;
+
+    @Param({"20"})
+    public int providerLatencyMillis;
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private UnirestInstance unirest;
+    private SendGridClient client;
+    private EmailModel email;
+
+    @State(Scope.Thread)
+    public static class InFlight {
+
+        private final Deque<CompletableFuture<Void>> pending = new ArrayDeque<>();
+
+        @TearDown(Level.Iteration)
+        public void drain() {
+            pending.forEach(CompletableFuture::join);
+            pending.clear();
+        }
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 1000);
+        server.createContext("/mail/send", exchange -> {
+            try (InputStream body = exchange.getRequestBody()) {
+                while (body.read() != -1) {
+                    // Se consume el body completo, como haria el proveedor
+                }
+                Thread.sleep(providerLatencyMillis);
+                exchange.sendResponseHeaders(202, -1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                exchange.close();
+            }
+        });
+        serverExecutor = Executors.newFixedThreadPool(500);
+        server.setExecutor(serverExecutor);
+        server.start();
+
+        unirest = Unirest.spawnInstance();
+        unirest.config().socketTimeout(5000).connectTimeout(5500).concurrency(100, 100);
+        client = new SendGridClient(unirest, new SpringConfig().objectMapper(), "benchmark",
+                "http://localhost:" + server.getAddress().getPort(), new SimpleMeterRegistry(),
+                CircuitBreaker.ofDefaults("sendgrid"), Retry.ofDefaults("sendgrid"));
+        email = EmailModel.builder()
+                .from(MailAddress.builder().email("sender@test.com").name("GPS").build())
+                .templateId("d-recovery")
+                .personalizations(Lists.newArrayList(Personalization.builder()
+                        .to(Lists.newArrayList(MailAddress.builder().email("user@test.com").build()))
+                        .build()))
+                .build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        unirest.shutDown();
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Benchmark
+    public void blockingSend() {
+        client.sendMail(email);
+    }
+
+    @Benchmark
+    public void asyncSend(InFlight inFlight) {
+        inFlight.pending.addLast(client.sendMailAsync(email));
+        if (inFlight.pending.size() > MAX_IN_FLIGHT) {
+            inFlight.pending.removeFirst().join();
+        }
+    }
+}
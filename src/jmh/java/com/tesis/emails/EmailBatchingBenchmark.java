@@ -0,0 +1,112 @@
+package com.tesis.emails;
+
+import com.google.common.collect.Lists;
+import com.sun.net.httpserver.HttpServer;
+import com.tesis.config.SpringConfig;
+import com.tesis.emails.models.EmailModel;
+import com.tesis.emails.models.MailAddress;
+import com.tesis.emails.models.Personalization;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.retry.Retry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import kong.unirest.Unirest;
+import kong.unirest.UnirestInstance;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Delivery of a burst of template emails (e.g. welcome emails of a fleet of users) to a local stub of SendGrid that
+ * answers 202 after a fixed latency, one request per email against one request per batch of personalizations.
+ * Scores are emails per second, requests made are printed on tear down.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EmailBatchingBenchmark {
+
+    private static final int EMAILS = 200;
+
+    @Param({"5"})
+    public int providerLatencyMillis;
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private UnirestInstance unirest;
+    private SendGridClient client;
+    private BatchingEmailSender batchingSender;
+    private Map<Integer, EmailModel> emails;
+    private final AtomicLong requests = new AtomicLong();
+
+    @Setup
+    public void setUp() throws IOException {
+
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/mail/send", exchange -> {
+            try (InputStream body = exchange.getRequestBody()) {
+                while (body.read() != -1) {
+                    // Se consume el body completo, como haria el proveedor
+                }
+                Thread.sleep(providerLatencyMillis);
+                requests.incrementAndGet();
+                exchange.sendResponseHeaders(202, -1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                exchange.close();
+            }
+        });
+        serverExecutor = Executors.newFixedThreadPool(8);
+        server.setExecutor(serverExecutor);
+        server.start();
+
+        unirest = Unirest.spawnInstance();
+        unirest.config().socketTimeout(5000).connectTimeout(5500).concurrency(100, 20);
+        client = new SendGridClient(unirest, new SpringConfig().objectMapper(), "benchmark",
+                "http://localhost:" + server.getAddress().getPort(), new SimpleMeterRegistry(),
+                CircuitBreaker.ofDefaults("sendgrid"), Retry.ofDefaults("sendgrid"));
+        batchingSender = new BatchingEmailSender(client, 1000);
+
+        emails = new LinkedHashMap<>();
+        for (int i = 0; i < EMAILS; i++) {
+            emails.put(i, EmailModel.builder()
+                    .from(MailAddress.builder().email("sender@test.com").name("GPS").build())
+                    .templateId("d-welcome")
+                    .personalizations(Lists.newArrayList(Personalization.builder()
+                            .to(Lists.newArrayList(MailAddress.builder().email("user" + i + "@test.com").build()))
+                            .build()))
+                    .build());
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.out.println(String.format("%nrequests to the provider: %d", requests.getAndSet(0)));
+        unirest.shutDown();
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EMAILS)
+    public void oneRequestPerEmail() {
+        emails.values().forEach(client::sendMail);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EMAILS)
+    public Map<Integer, Exception> batchedPersonalizations() {
+        return batchingSender.send(emails);
+    }
+}
@@ -0,0 +1,59 @@
+package com.tesis.emails;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Lists;
+import com.tesis.config.SpringConfig;
+import com.tesis.emails.models.EmailModel;
+import com.tesis.emails.templates.RecoveryEmailTemplate;
+import com.tesis.emails.templates.WelcomeEmailTemplate;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building an email from its template and serializing it as the SendGrid request body, with the application
+ * ObjectMapper. Run with -prof gc for the allocation per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EmailSerializationBenchmark {
+
+    private final ObjectMapper objectMapper = new SpringConfig().objectMapper();
+    private final List<String> receivers = Lists.newArrayList("user@test.com");
+
+    @Benchmark
+    public EmailModel recoveryTemplate() {
+        return recovery();
+    }
+
+    @Benchmark
+    public String recoveryTemplateSerialized() throws JsonProcessingException {
+        return objectMapper.writeValueAsString(recovery());
+    }
+
+    @Benchmark
+    public String welcomeTemplateSerialized() throws JsonProcessingException {
+        return objectMapper.writeValueAsString(WelcomeEmailTemplate.builder()
+                .senderMail("sender@test.com")
+                .receivers(receivers)
+                .userName("benchmark")
+                .welcomeToken("https://gps-front.herokuapp.com/reset-password?token=eyJhbGciOiJIUzUxMiJ9")
+                .build()
+                .get());
+    }
+
+    private EmailModel recovery() {
+        return RecoveryEmailTemplate.builder()
+                .senderMail("sender@test.com")
+                .receivers(receivers)
+                .recoveryLink("https://gps-front.herokuapp.com/reset-password?token=eyJhbGciOiJIUzUxMiJ9")
+                .build()
+                .get();
+    }
+}
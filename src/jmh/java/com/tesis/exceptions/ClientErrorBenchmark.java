@@ -0,0 +1,57 @@
+package com.tesis.exceptions;
+
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.helpers.MessageFormatter;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of rejecting a request with a 4xx: the exception is thrown {@code depth} frames below the handler, as it is
+ * from a service behind the controller, filters and proxies, and the handler formats its warn line. Compares the
+ * previous exceptions (stack trace captured and printed) with {@link ClientErrorException}. The line is only
+ * formatted, not written, so appenders don't take part.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ClientErrorBenchmark {
+
+    @Param({"80"})
+    public int depth;
+
+    @Benchmark
+    public String stackTraceRejection() {
+        try {
+            throwAt(depth, true);
+            return null;
+        } catch (ResponseStatusException e) {
+            return MessageFormatter.arrayFormat("[message: {}] [status: {}] [stackTrace: {}]",
+                    new Object[]{e.getReason(), e.getStatus().value(), e.getStackTrace()}).getMessage();
+        }
+    }
+
+    @Benchmark
+    public String stacklessRejection() {
+        try {
+            throwAt(depth, false);
+            return null;
+        } catch (ResponseStatusException e) {
+            return MessageFormatter.format("[message: {}] [status: {}]", e.getReason(), e.getStatus().value()).getMessage();
+        }
+    }
+
+    private static void throwAt(int depth, boolean stackTrace) {
+        if (depth > 0) {
+            throwAt(depth - 1, stackTrace);
+            return;
+        }
+        throw stackTrace
+                ? new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Unauthorized")
+                : new UnauthorizedException();
+    }
+}
@@ -0,0 +1,112 @@
+package com.tesis.roles;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.tesis.config.SpringConfig;
+import com.tesis.privileges.Privilege;
+import com.tesis.privileges.PrivilegeRepository;
+import com.tesis.privileges.PrivilegeService;
+import com.tesis.utils.ScopeUtils;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Role / privilege lookups by name (what createUser, updateUser and the role endpoints do) against an in memory H2 db,
+ * with the second level cache disabled and enabled. Hibernate statistics (statements, cache hit ratios) are printed on
+ * tear down.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CatalogCacheBenchmark {
+
+    @Param({"false", "true"})
+    public boolean secondLevelCache;
+
+    private ConfigurableApplicationContext context;
+    private RoleService roleService;
+    private PrivilegeService privilegeService;
+    private TransactionTemplate transactionTemplate;
+    private Statistics statistics;
+    private List<String> privilegeNames;
+
+    @Setup
+    public void setUp() {
+
+        System.setProperty(ScopeUtils.ENVIRONMENT, ScopeUtils.DEVELOPMENT);
+        //Passed as command line args so they take precedence over the profile datasource
+        context = new SpringApplicationBuilder(SpringConfig.class)
+                .web(WebApplicationType.NONE)
+                .run(
+                        "--spring.datasource.url=jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1",
+                        "--spring.datasource.username=sa",
+                        "--spring.datasource.password=sa",
+                        "--spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+                        "--spring.jpa.hibernate.ddl-auto=create-drop",
+                        "--spring.jpa.show-sql=false",
+                        "--spring.jpa.properties.hibernate.cache.use_second_level_cache=" + secondLevelCache,
+                        "--spring.jpa.properties.hibernate.cache.use_query_cache=" + secondLevelCache,
+                        "--spring.jpa.properties.hibernate.generate_statistics=true",
+                        "--logging.level.org.hibernate.engine.internal.StatisticalLoggingSessionEventListener=warn",
+                        "--EMAIL_SECRET_KEY=benchmark");
+
+        List<Privilege> catalog = context.getBean(PrivilegeRepository.class).saveAll(Lists.newArrayList(
+                Privilege.builder().name("GET_CLIENT").build(),
+                Privilege.builder().name("CREATE_CLIENT").build(),
+                Privilege.builder().name("DELETE_CLIENT").build()
+        ));
+        RoleRepository roleRepository = context.getBean(RoleRepository.class);
+        Role role = roleRepository.save(Role.builder().name("CLIENT").build());
+        role.setPrivileges(Sets.newHashSet(catalog));
+        roleRepository.save(role);
+
+        roleService = context.getBean(RoleService.class);
+        privilegeService = context.getBean(PrivilegeService.class);
+        transactionTemplate = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+        privilegeNames = Lists.newArrayList("GET_CLIENT", "CREATE_CLIENT");
+        statistics = context.getBean(EntityManagerFactory.class).unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @TearDown
+    public void tearDown() {
+
+        System.out.println(String.format("%nsecond level cache: %s%n" +
+                        "  statements: %d%n" +
+                        "  second level cache hits / misses: %d / %d%n" +
+                        "  natural id cache hits / misses: %d / %d%n" +
+                        "  query cache hits / misses: %d / %d",
+                secondLevelCache,
+                statistics.getPrepareStatementCount(),
+                statistics.getSecondLevelCacheHitCount(), statistics.getSecondLevelCacheMissCount(),
+                statistics.getNaturalIdCacheHitCount(), statistics.getNaturalIdCacheMissCount(),
+                statistics.getQueryCacheHitCount(), statistics.getQueryCacheMissCount()));
+        context.close();
+    }
+
+    @Benchmark
+    public int roleWithPrivilegesByName() {
+        //Same unit of work as createUser / updateUser, the role and its privileges are read in one transaction
+        return transactionTemplate.execute(status -> roleService.getByName("CLIENT")
+                .map(role -> role.getPrivileges().size())
+                .orElse(0));
+    }
+
+    @Benchmark
+    public List<Privilege> privilegesByNames() {
+        return privilegeService.getAllByNames(privilegeNames);
+    }
+}
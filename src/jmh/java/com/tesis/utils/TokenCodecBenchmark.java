@@ -0,0 +1,136 @@
+package com.tesis.utils;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.security.Key;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token verification of the validate and recovery flows and token signing, with a valid token and with one signed with
+ * another key (the attack traffic case). The perCall* benchmarks are the previous JwtUtils behaviour: a parser built for
+ * every verification, twice for the recovery flow (validateToken then getUserIdFromToken), and the json serializer
+ * looked up on every signature. The hs512* benchmarks are the same operations with {@link TokenCodecMode#HS512}, the
+ * es256* ones sign and verify ES256 access tokens, the verification being what consumers of the jwks do locally.
+ * Run with -prof gc for the allocation per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TokenCodecBenchmark {
+
+    @Param({"VALID", "FORGED"})
+    public String tokenKind;
+
+    private final Key key = Keys.secretKeyFor(SignatureAlgorithm.HS512);
+    private final TokenCodec tokenCodec = new TokenCodec(key, new SimpleMeterRegistry());
+    private final TokenCodec hs512Codec = new TokenCodec(key, new SimpleMeterRegistry(), TokenCodecMode.HS512);
+    private final TokenCodec es256Codec = new TokenCodec(
+            new KeyRing(key, Collections.singletonList(new TokenKey("es", Keys.keyPairFor(SignatureAlgorithm.ES256), SignatureAlgorithm.ES256, Instant.EPOCH))),
+            new SimpleMeterRegistry(), TokenCodecMode.HS512, SignatureAlgorithm.ES256);
+    private String token;
+    private String es256Token;
+
+    @Setup
+    public void setUp() {
+        Key signingKey = "VALID".equals(tokenKind) ? key : Keys.secretKeyFor(SignatureAlgorithm.HS512);
+        token = Jwts.builder()
+                .setHeaderParam("type", "RECOVERY")
+                .setSubject("1")
+                .setIssuedAt(new Date())
+                .setExpiration(new Date(System.currentTimeMillis() + TimeUnit.DAYS.toMillis(1)))
+                .signWith(signingKey, SignatureAlgorithm.HS512)
+                .compact();
+        es256Token = "VALID".equals(tokenKind) ? es256Sign() : token;
+    }
+
+    @Benchmark
+    public Long perCallValidate() {
+        Claims claims = perCallParse();
+        return claims != null ? Long.parseLong(claims.getSubject()) : null;
+    }
+
+    @Benchmark
+    public Long validate() {
+        return tokenCodec.verify(token).map(ParsedToken::getUserId).orElse(null);
+    }
+
+    @Benchmark
+    public Long hs512Validate() {
+        return hs512Codec.verify(token).map(ParsedToken::getUserId).orElse(null);
+    }
+
+    @Benchmark
+    public Long perCallRecoveryValidate() {
+        if (perCallParse() == null) {
+            return null;
+        }
+        Claims claims = perCallParse();
+        return claims != null ? Long.parseLong(claims.getSubject()) : null;
+    }
+
+    @Benchmark
+    public Long recoveryValidate() {
+        Optional<ParsedToken> parsedToken = tokenCodec.verify(token);
+        return parsedToken.isPresent() ? parsedToken.get().getUserId() : null;
+    }
+
+    @Benchmark
+    public String perCallSign() {
+        return Jwts.builder()
+                .setSubject("1")
+                .setExpiration(new Date(System.currentTimeMillis() + TimeUnit.DAYS.toMillis(1)))
+                .signWith(key, SignatureAlgorithm.HS512)
+                .compact();
+    }
+
+    @Benchmark
+    public String sign() {
+        return tokenCodec.sign(tokenCodec.builder()
+                .setSubject("1")
+                .setExpiration(new Date(System.currentTimeMillis() + TimeUnit.DAYS.toMillis(1))));
+    }
+
+    @Benchmark
+    public String hs512Sign() {
+        return hs512Codec.sign(hs512Codec.builder()
+                .setSubject("1")
+                .setExpiration(new Date(System.currentTimeMillis() + TimeUnit.DAYS.toMillis(1))));
+    }
+
+    @Benchmark
+    public Long es256Validate() {
+        return es256Codec.verify(es256Token).map(ParsedToken::getUserId).orElse(null);
+    }
+
+    @Benchmark
+    public String es256Sign() {
+        return es256Codec.signAccessToken(es256Codec.builder()
+                .setSubject("1")
+                .setExpiration(new Date(System.currentTimeMillis() + TimeUnit.DAYS.toMillis(1))));
+    }
+
+    private Claims perCallParse() {
+        try {
+            return Jwts.parserBuilder()
+                    .setSigningKey(key)
+                    .build()
+                    .parseClaimsJws(token)
+                    .getBody();
+        } catch (JwtException e) {
+            return null;
+        }
+    }
+}
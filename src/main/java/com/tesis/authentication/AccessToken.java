@@ -1,29 +1,45 @@
 package com.tesis.authentication;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.tesis.utils.TokenDigests;
 import lombok.*;
 
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.Id;
 import javax.persistence.Table;
-import javax.validation.constraints.NotBlank;
+import javax.persistence.Transient;
 import java.io.Serializable;
 
 @Entity
 @Table(name = "ACCESS_TOKENS")
 @NoArgsConstructor
-@AllArgsConstructor
 @Getter
 @Setter
-@Builder
 public class AccessToken implements Serializable {
 
     @JsonIgnore
     @Id
     Long userId;
 
-    @Column(name = "token", nullable = false, updatable = false, unique = true, length = 3000)
-    @NotBlank
+    @JsonIgnore
+    @Column(name = "token_hash", length = TokenDigests.LENGTH)
+    byte[] tokenHash;
+
+    /**
+     * Only known right after the token is issued, db keeps the digest
+     */
+    @Transient
     String token;
+
+    @Builder
+    public AccessToken(Long userId, String token) {
+        this.userId = userId;
+        this.token = token;
+        this.tokenHash = token != null ? TokenDigests.digest(token) : null;
+    }
+
+    public boolean matches(String token) {
+        return TokenDigests.matches(tokenHash, token);
+    }
 }
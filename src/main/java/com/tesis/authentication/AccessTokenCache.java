@@ -0,0 +1,207 @@
+package com.tesis.authentication;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.tesis.exceptions.InternalServerErrorException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Size bounded cache of access tokens that were already verified (signature, expiration and active token check).
+ * Entries are dropped when the token reaches its exp claim, or earlier if they are invalidated on logout / re-login.
+ * Cached tokens are also indexed by user, so the tokens of a user are dropped without scanning the cache.
+ * Invalidations do not cancel verifications already running, so every invalidation bumps a generation and a
+ * verification that started before it is dropped from the cache once it finishes.
+ */
+@Slf4j
+@Component
+public class AccessTokenCache {
+
+    public static final String CACHE_NAME = "access_tokens";
+
+    private final Cache<String, VerifiedAccessToken> cache;
+    // Los sets solo se modifican dentro de compute, que es atomico por user
+    private final ConcurrentMap<Long, Set<String>> tokensByUser = new ConcurrentHashMap<>();
+    private final AtomicLong generation = new AtomicLong();
+
+    @Autowired
+    public AccessTokenCache(MeterRegistry meterRegistry,
+                            @Value("${authentication.token-cache.maximum-size:10000}") long maximumSize,
+                            @Value("${authentication.token-cache.expire-after-write:24h}") Duration expireAfterWrite) {
+
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .<String, VerifiedAccessToken>removalListener(notification -> {
+                    if (notification.getCause() != RemovalCause.REPLACED) {
+                        unindex(notification.getKey(), notification.getValue());
+                    }
+                })
+                .build();
+
+        GuavaCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+    }
+
+    /**
+     * Get a verified token. On a cache miss (or if the cached entry reached its exp claim) the token is verified with
+     * the given verifier and the result is cached
+     * @param token
+     * @param verifier
+     * @return
+     */
+    public VerifiedAccessToken get(String token, Callable<VerifiedAccessToken> verifier) {
+
+        VerifiedAccessToken verifiedToken = load(token, verifier);
+        if (verifiedToken.isExpired()) {
+            cache.invalidate(token);
+            verifiedToken = load(token, verifier);
+        }
+
+        return verifiedToken;
+    }
+
+    /**
+     * Get a cached verification without triggering a new one
+     * @param token
+     * @return null if the token is not cached or it already reached its exp claim
+     */
+    public VerifiedAccessToken getIfPresent(String token) {
+
+        VerifiedAccessToken verifiedToken = cache.getIfPresent(token);
+        if (verifiedToken != null && verifiedToken.isExpired()) {
+            cache.invalidate(token);
+            return null;
+        }
+
+        return verifiedToken;
+    }
+
+    /**
+     * Cached tokens of the user that did not reach their exp claim
+     * @param userId
+     * @return
+     */
+    public Set<String> getUserTokens(Long userId) {
+
+        Set<String> tokens = new HashSet<>();
+        if (userId != null) {
+            tokensByUser.computeIfPresent(userId, (id, userTokens) -> {
+                tokens.addAll(userTokens);
+                return userTokens;
+            });
+        }
+
+        tokens.removeIf(token -> getIfPresent(token) == null);
+        return tokens;
+    }
+
+    /**
+     * Current generation, to be taken before verifying a token that is later cached with
+     * {@link #put(String, VerifiedAccessToken, long)}
+     * @return
+     */
+    public long generation() {
+        return generation.get();
+    }
+
+    /**
+     * Cache a token verified outside of {@link #get(String, Callable)}, e.g. by a bulk verification
+     * @param token
+     * @param verifiedToken
+     * @param verifiedAt generation taken before the verification started
+     */
+    public void put(String token, VerifiedAccessToken verifiedToken, long verifiedAt) {
+        index(token, verifiedToken);
+        cache.put(token, verifiedToken);
+        discardIfInvalidated(token, verifiedToken, verifiedAt);
+    }
+
+    /**
+     * Remove the token from the cache, so the next validation verifies it again
+     * @param token
+     */
+    public void invalidate(String token) {
+        if (token != null) {
+            generation.incrementAndGet();
+            cache.invalidate(token);
+        }
+    }
+
+    /**
+     * Remove every token of the user from the cache. Used when only the digest of the token is known
+     * @param userId
+     */
+    public void invalidateUser(Long userId) {
+        if (userId != null) {
+            generation.incrementAndGet();
+        }
+        Set<String> tokens = userId != null ? tokensByUser.remove(userId) : null;
+        if (tokens != null) {
+            cache.invalidateAll(tokens);
+        }
+    }
+
+    private VerifiedAccessToken index(String token, VerifiedAccessToken verifiedToken) {
+        tokensByUser.compute(verifiedToken.getUserId(), (userId, tokens) -> {
+            Set<String> userTokens = tokens != null ? tokens : new HashSet<>();
+            userTokens.add(token);
+            return userTokens;
+        });
+        return verifiedToken;
+    }
+
+    private void unindex(String token, VerifiedAccessToken verifiedToken) {
+        tokensByUser.computeIfPresent(verifiedToken.getUserId(), (userId, tokens) -> {
+            tokens.remove(token);
+            return tokens.isEmpty() ? null : tokens;
+        });
+    }
+
+    /**
+     * Drop a verification that raced with an invalidation. Only the given entry is removed, a newer one is kept
+     */
+    private void discardIfInvalidated(String token, VerifiedAccessToken verifiedToken, long verifiedAt) {
+        if (generation.get() != verifiedAt) {
+            cache.asMap().remove(token, verifiedToken);
+        }
+    }
+
+    private VerifiedAccessToken load(String token, Callable<VerifiedAccessToken> verifier) {
+        long verifiedAt = generation.get();
+        AtomicBoolean loaded = new AtomicBoolean();
+        try {
+            VerifiedAccessToken verifiedToken = cache.get(token, () -> {
+                loaded.set(true);
+                return index(token, verifier.call());
+            });
+            //Los hits no se descartan, si el token se invalido antes ya no estaria en el cache
+            if (loaded.get()) {
+                discardIfInvalidated(token, verifiedToken, verifiedAt);
+            }
+            return verifiedToken;
+        } catch (UncheckedExecutionException | ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            logger.error("[message: Could not verify access token] [error: {}]", e.getMessage());
+            throw new InternalServerErrorException("internal error", e.getCause());
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.tesis.authentication;
+
+import com.tesis.users.User;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.io.Encoders;
+
+import java.security.SecureRandom;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Claims carried by access tokens besides the registered ones (sub, jti, iat, exp).
+ * Version 1 replaced the serialized User entity ("user" claim) with a few short claims. Tokens without {@link #VERSION}
+ * are the legacy format, they are still accepted and validated against db until they expire.
+ */
+public final class AccessTokenClaims {
+
+    public static final String VERSION = "v";
+    public static final String ROLE_ID = "rid";
+    public static final String ROLE = "rol";
+    public static final String EMAIL = "eml";
+
+    public static final int CURRENT_VERSION = 1;
+
+    private static final int TOKEN_ID_BYTES = 12;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private AccessTokenClaims() {
+    }
+
+    /**
+     * Build the custom claims of a new token for the user
+     * @param user
+     * @return
+     */
+    public static Map<String, Object> of(User user) {
+
+        Map<String, Object> claims = new HashMap<>();
+        claims.put(VERSION, CURRENT_VERSION);
+        claims.put(EMAIL, user.getEmail());
+        if (user.getRole() != null) {
+            claims.put(ROLE_ID, user.getRole().getId());
+            claims.put(ROLE, user.getRole().getName());
+        }
+
+        return claims;
+    }
+
+    /**
+     * Random token id, 96 bits encoded as 16 base64url chars
+     * @return
+     */
+    public static String newTokenId() {
+        byte[] bytes = new byte[TOKEN_ID_BYTES];
+        RANDOM.nextBytes(bytes);
+        return Encoders.BASE64URL.encode(bytes);
+    }
+
+    /**
+     * @param claims
+     * @return null for legacy tokens or users without role
+     */
+    public static Long getRoleId(Claims claims) {
+        return claims.get(ROLE_ID, Long.class);
+    }
+}
@@ -0,0 +1,32 @@
+package com.tesis.authentication;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.tesis.utils.TokenDigests;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Tokens revoked before reaching their exp claim (logout, role change, user deletion). Only consulted in
+ * {@link ValidationMode#STATELESS}, where the db is not checked on every validation. Entries are kept for the
+ * lifetime of an access token, after that the token is rejected by its exp claim anyway.
+ * Tokens are tracked by their digest, the same fingerprint stored in ACCESS_TOKENS.
+ */
+@Component
+public class AccessTokenRevocations {
+
+    private final Cache<ByteBuffer, Boolean> revokedTokens = CacheBuilder.newBuilder()
+            .expireAfterWrite(DefaultAuthenticationService.ACCESS_TOKEN_TTL)
+            .build();
+
+    public void revoke(byte[] tokenHash) {
+        if (tokenHash != null) {
+            revokedTokens.put(ByteBuffer.wrap(tokenHash), Boolean.TRUE);
+        }
+    }
+
+    public boolean isRevoked(String token) {
+        return revokedTokens.getIfPresent(ByteBuffer.wrap(TokenDigests.digest(token))) != null;
+    }
+}
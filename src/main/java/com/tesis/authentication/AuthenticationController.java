@@ -5,22 +5,26 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import javax.annotation.Nullable;
+import javax.servlet.http.HttpServletRequest;
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/authentication")
 public class AuthenticationController {
 
     private final AuthenticationService authenticationService;
+    private final JwkSet jwkSet;
 
     @Autowired
-    public AuthenticationController(AuthenticationService authenticationService) {
+    public AuthenticationController(AuthenticationService authenticationService, JwkSet jwkSet) {
         this.authenticationService = authenticationService;
+        this.jwkSet = jwkSet;
     }
 
     @PostMapping("/login")
-    public ResponseEntity<AccessToken> login(@RequestBody ClientCredentialsBody credentialsBody) {
-        return ResponseEntity.ok(authenticationService.login(credentialsBody));
+    public ResponseEntity<AccessToken> login(@RequestBody ClientCredentialsBody credentialsBody, HttpServletRequest request) {
+        return ResponseEntity.ok(authenticationService.login(credentialsBody, request.getRemoteAddr()));
     }
 
     @PostMapping("/logout")
@@ -34,4 +38,20 @@ public class AuthenticationController {
         authenticationService.validatePrivilegesOnAccessToken(token, privileges);
         return ResponseEntity.ok().build();
     }
+
+    /**
+     * Public keys to verify access tokens locally, cached by consumers and revalidated with If-None-Match
+     */
+    @GetMapping("/jwks")
+    public ResponseEntity<Map<String, List<Map<String, Object>>>> jwks() {
+        return ResponseEntity.ok()
+                .cacheControl(jwkSet.getCacheControl())
+                .eTag(jwkSet.getETag())
+                .body(jwkSet.getKeySet());
+    }
+
+    @PostMapping("/validate/batch")
+    public ResponseEntity<List<TokenValidationResult>> validateTokensAndPrivileges(@RequestBody List<TokenValidationBody> validations) {
+        return ResponseEntity.ok(authenticationService.validatePrivilegesOnAccessTokens(validations));
+    }
 }
@@ -1,6 +1,8 @@
 package com.tesis.authentication;
 
+import com.tesis.exceptions.BadRequestException;
 import com.tesis.exceptions.ForbiddenException;
+import com.tesis.exceptions.TooManyRequestsException;
 import com.tesis.exceptions.UnauthorizedException;
 
 import java.util.List;
@@ -8,11 +10,23 @@ import java.util.List;
 public interface AuthenticationService {
 
     /**
-     * Validate if client credentials match for a registered user and generates the access_token
+     * Validate if client credentials match for a registered user and generates the access_token. The active token of the
+     * user is returned again while it is valid and cached by this instance, otherwise a new one replaces it
      * @param credentialsBody
      * @return
      */
-    AccessToken login(ClientCredentialsBody credentialsBody) throws UnauthorizedException;
+    default AccessToken login(ClientCredentialsBody credentialsBody) throws UnauthorizedException {
+        return login(credentialsBody, null);
+    }
+
+    /**
+     * Same as {@link #login(ClientCredentialsBody)}, throttling failed attempts per email and per client address
+     * @param credentialsBody
+     * @param remoteAddress client address, null if unknown
+     * @return
+     * @throws TooManyRequestsException if the email or the address failed too many times recently
+     */
+    AccessToken login(ClientCredentialsBody credentialsBody, String remoteAddress) throws UnauthorizedException, TooManyRequestsException;
 
     /**
      * Find token asociated to user and remove it from db
@@ -28,4 +42,12 @@ public interface AuthenticationService {
      * @throws ForbiddenException if any privileges is missing in the token
      */
     void validatePrivilegesOnAccessToken(String token, List<String> privileges) throws UnauthorizedException, ForbiddenException;
+
+    /**
+     * Validate many tokens with their privileges in one go. Users are resolved with a single bulk query
+     * @param validations
+     * @return one result per validation, in the same order
+     * @throws BadRequestException if there are more validations than the batch limit or any of them is null
+     */
+    List<TokenValidationResult> validatePrivilegesOnAccessTokens(List<TokenValidationBody> validations) throws BadRequestException;
 }
@@ -2,116 +2,359 @@ package com.tesis.authentication;
 
 import com.tesis.exceptions.BadRequestException;
 import com.tesis.exceptions.ForbiddenException;
+import com.tesis.exceptions.TooManyRequestsException;
 import com.tesis.exceptions.UnauthorizedException;
-import com.tesis.privileges.Privilege;
+import com.tesis.passwords.PasswordRehasher;
+import com.tesis.roles.AuthorizationIndex;
 import com.tesis.users.User;
+import com.tesis.users.UserAccessChangedEvent;
+import com.tesis.users.UserAuthorization;
 import com.tesis.users.UserService;
-import com.tesis.utils.JwtUtils;
-import io.jsonwebtoken.Jwts;
-import io.jsonwebtoken.SignatureAlgorithm;
+import com.tesis.utils.ParsedToken;
+import com.tesis.utils.TokenCodec;
+import com.tesis.utils.TokenDigests;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
 
-import java.security.Key;
+import java.time.Duration;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Service
 @Slf4j
 public class DefaultAuthenticationService implements AuthenticationService {
 
+    public static final Duration ACCESS_TOKEN_TTL = Duration.ofDays(1);
+
     private final AccessTokenRepository accessTokenRepository;
+    private final AccessTokenCache accessTokenCache;
+    private final AccessTokenRevocations accessTokenRevocations;
+    private final AuthorizationIndex authorizationIndex;
     private final UserService userService;
     private final PasswordEncoder passwordEncoder;
-    private Key secretKey;
+    private final PasswordRehasher passwordRehasher;
+    private final LoginThrottle loginThrottle;
+    private final ValidationMode validationMode;
+    private final TokenCodec tokenCodec;
+    private final int maxBatchSize;
 
     @Autowired
-    public DefaultAuthenticationService(AccessTokenRepository accessTokenRepository, UserService userService, PasswordEncoder passwordEncoder, Key secretKey) {
+    public DefaultAuthenticationService(AccessTokenRepository accessTokenRepository,
+                                        AccessTokenCache accessTokenCache,
+                                        AccessTokenRevocations accessTokenRevocations,
+                                        AuthorizationIndex authorizationIndex,
+                                        UserService userService,
+                                        PasswordEncoder passwordEncoder,
+                                        PasswordRehasher passwordRehasher,
+                                        LoginThrottle loginThrottle,
+                                        TokenCodec tokenCodec,
+                                        @Value("${authentication.validation-mode:STATEFUL}") ValidationMode validationMode,
+                                        @Value("${authentication.validate-batch.max-size:100}") int maxBatchSize) {
         this.accessTokenRepository = accessTokenRepository;
+        this.accessTokenCache = accessTokenCache;
+        this.accessTokenRevocations = accessTokenRevocations;
+        this.authorizationIndex = authorizationIndex;
         this.userService = userService;
         this.passwordEncoder = passwordEncoder;
-        this.secretKey = secretKey;
+        this.passwordRehasher = passwordRehasher;
+        this.loginThrottle = loginThrottle;
+        this.tokenCodec = tokenCodec;
+        this.validationMode = validationMode;
+        this.maxBatchSize = maxBatchSize;
     }
 
     @Override
-    public AccessToken login(ClientCredentialsBody credentialsBody) throws UnauthorizedException {
+    public AccessToken login(ClientCredentialsBody credentialsBody, String remoteAddress) throws UnauthorizedException, TooManyRequestsException {
 
-        Optional<User> userOpt = userService.getUser(credentialsBody.getEmail());
-        User user = userOpt.orElseThrow(UnauthorizedException::new);
+        // Se rechaza antes de ir a la db o de calcular el hash
+        loginThrottle.checkAllowed(credentialsBody.getEmail(), remoteAddress);
 
-        if (!passwordEncoder.matches(credentialsBody.getPassword(), user.getPassword())) {
+        Optional<User> userOpt = userService.getUser(credentialsBody.getEmail());
+        if (!userOpt.isPresent() || !passwordEncoder.matches(credentialsBody.getPassword(), userOpt.get().getPassword())) {
+            loginThrottle.recordFailure(credentialsBody.getEmail(), remoteAddress);
             throw new UnauthorizedException();
         }
 
-        return accessTokenRepository.findById(user.getId())
-                .filter(token -> JwtUtils.validateToken(token.getToken(), secretKey))
-                .orElseGet(() -> createAccessToken(user));
+        User user = userOpt.get();
+        loginThrottle.recordSuccess(credentialsBody.getEmail());
+        passwordRehasher.rehashIfNeeded(user.getId(), credentialsBody.getPassword(), user.getPassword());
+
+        // En db solo esta el hash, el token vigente se reutiliza si este cache todavia lo tiene
+        Optional<AccessToken> storedToken = accessTokenRepository.findById(user.getId());
+        return storedToken.flatMap(this::findReusableToken)
+                .orElseGet(() -> createAccessToken(user, storedToken));
     }
 
     @Override
     public void logout(String token) {
 
-        Long userId = JwtUtils.getUserIdFromToken(token, secretKey);
+        Long userId = tokenCodec.parse(token).getUserId();
         Optional<AccessToken> accessTokenOpt = accessTokenRepository.findById(userId);
         AccessToken accessToken = accessTokenOpt.orElseThrow(() -> new BadRequestException("Invalid access token"));
         accessTokenRepository.delete(accessToken);
+
+        revoke(token);
+        revoke(accessToken);
     }
 
     @Override
     public void validatePrivilegesOnAccessToken(String token, List<String> privileges) throws UnauthorizedException, ForbiddenException {
 
-        Long userId = JwtUtils.getUserIdFromToken(token, secretKey);
+        VerifiedAccessToken verifiedToken = accessTokenCache.get(token, () -> verifyAccessToken(token));
+
+        //Comparo los privilegios
+        if (privileges != null && privileges.size() > 0) {
+
+            Long roleId = verifiedToken.getRoleId();
+            if (roleId == null) {
+                roleId = userService.getUserAuthorization(verifiedToken.getUserId())
+                        .orElseThrow(() -> new UnauthorizedException("Invalid access token"))
+                        .getRoleId();
+            }
+
+            if (roleId == null || !authorizationIndex.hasPrivileges(roleId, privileges)) {
+                throw new ForbiddenException("User is not allowed to perform those actions");
+            }
+        }
+    }
+
+    @Override
+    public List<TokenValidationResult> validatePrivilegesOnAccessTokens(List<TokenValidationBody> validations) throws BadRequestException {
+
+        // Cada token es una verificacion de firma, el tamaño del batch se acota antes de hacer cualquier trabajo
+        if (validations.size() > maxBatchSize) {
+            throw new BadRequestException(String.format("Could not validate more than %d tokens at once", maxBatchSize));
+        }
+        if (validations.contains(null)) {
+            throw new BadRequestException("Invalid body, null validation");
+        }
+
+        Map<String, VerifiedAccessToken> verifiedTokens = verifyAccessTokens(validations.stream()
+                .map(TokenValidationBody::getToken)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet()));
+
+        //Solo se buscan los users de las validaciones que piden privilegios, una sola vez cada uno
+        Set<Long> userIds = validations.stream()
+                .filter(validation -> validation.getPrivileges() != null && !validation.getPrivileges().isEmpty())
+                .map(validation -> verifiedTokens.get(validation.getToken()))
+                .filter(verifiedToken -> verifiedToken != null && verifiedToken.getRoleId() == null)
+                .map(VerifiedAccessToken::getUserId)
+                .collect(Collectors.toSet());
+        Map<Long, UserAuthorization> users = userService.getUserAuthorizations(userIds).stream()
+                .collect(Collectors.toMap(UserAuthorization::getUserId, Function.identity()));
+
+        List<TokenValidationResult> results = new ArrayList<>(validations.size());
+        for (TokenValidationBody validation : validations) {
+            results.add(TokenValidationResult.of(validate(validation, verifiedTokens, users)));
+        }
+
+        return results;
+    }
+
+    /**
+     * Revoke the active token of users that were deleted or changed role, so they need to login again
+     * @param event
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUserAccessChanged(UserAccessChangedEvent event) {
+
+        accessTokenRepository.findById(event.getUserId())
+                .ifPresent(accessToken -> {
+                    accessTokenRepository.delete(accessToken);
+                    revoke(accessToken);
+                });
+    }
+
+    private ValidationStatus validate(TokenValidationBody validation, Map<String, VerifiedAccessToken> verifiedTokens, Map<Long, UserAuthorization> users) {
+
+        VerifiedAccessToken verifiedToken = verifiedTokens.get(validation.getToken());
+        if (verifiedToken == null) {
+            return ValidationStatus.UNAUTHORIZED;
+        }
+
+        if (validation.getPrivileges() == null || validation.getPrivileges().isEmpty()) {
+            return ValidationStatus.OK;
+        }
+
+        Long roleId = verifiedToken.getRoleId();
+        if (roleId == null) {
+            UserAuthorization user = users.get(verifiedToken.getUserId());
+            if (user == null) {
+                return ValidationStatus.UNAUTHORIZED;
+            }
+            roleId = user.getRoleId();
+        }
+
+        if (roleId == null || !authorizationIndex.hasPrivileges(roleId, validation.getPrivileges())) {
+            return ValidationStatus.FORBIDDEN;
+        }
+
+        return ValidationStatus.OK;
+    }
+
+    /**
+     * Same checks as {@link #verifyAccessToken(String)} for many tokens, with a single query for the ones not cached
+     * @param tokens
+     * @return verification of every valid token, invalid ones are left out
+     */
+    private Map<String, VerifiedAccessToken> verifyAccessTokens(Set<String> tokens) {
+
+        long verifiedAt = accessTokenCache.generation();
+        Map<String, VerifiedAccessToken> verifiedTokens = new HashMap<>();
+        Map<String, ParsedToken> pendingTokens = new HashMap<>();
+        for (String token : tokens) {
+            VerifiedAccessToken verifiedToken = accessTokenCache.getIfPresent(token);
+            if (verifiedToken != null) {
+                verifiedTokens.put(token, verifiedToken);
+                continue;
+            }
+
+            try {
+                ParsedToken parsedToken = tokenCodec.parse(token);
+                verifiedToken = verifyStateless(token, parsedToken);
+                if (verifiedToken != null) {
+                    accessTokenCache.put(token, verifiedToken, verifiedAt);
+                    verifiedTokens.put(token, verifiedToken);
+                } else {
+                    pendingTokens.put(token, parsedToken);
+                }
+            } catch (UnauthorizedException e) {
+                logger.debug("[message: Invalid access token in batch validation] [error: {}]", e.getMessage());
+            }
+        }
+
+        if (pendingTokens.isEmpty()) {
+            return verifiedTokens;
+        }
+
+        Set<Long> userIds = pendingTokens.values().stream()
+                .map(ParsedToken::getUserId)
+                .collect(Collectors.toSet());
+        Map<Long, AccessToken> activeTokens = accessTokenRepository.findAllById(userIds).stream()
+                .collect(Collectors.toMap(AccessToken::getUserId, Function.identity()));
+
+        //Valido que cada token sea el último generado por su user
+        pendingTokens.forEach((token, parsedToken) -> {
+            Long userId = parsedToken.getUserId();
+            AccessToken activeToken = activeTokens.get(userId);
+            if (activeToken != null && activeToken.matches(token)) {
+                VerifiedAccessToken verifiedToken = new VerifiedAccessToken(userId, parsedToken.getExpiration());
+                accessTokenCache.put(token, verifiedToken, verifiedAt);
+                verifiedTokens.put(token, verifiedToken);
+            }
+        });
+
+        return verifiedTokens;
+    }
+
+    private VerifiedAccessToken verifyAccessToken(String token) {
+
+        ParsedToken parsedToken = tokenCodec.parse(token);
+        VerifiedAccessToken verifiedToken = verifyStateless(token, parsedToken);
+        if (verifiedToken != null) {
+            return verifiedToken;
+        }
+
+        Long userId = parsedToken.getUserId();
 
         //Valido que el token sea el último generado por el user
         Optional<AccessToken> accessTokenOpt = accessTokenRepository.findById(userId);
         accessTokenOpt
-                .filter(activeToken -> activeToken.token.equals(token))
+                .filter(activeToken -> activeToken.matches(token))
                 .orElseThrow(() -> new UnauthorizedException("Invalid access token"));
 
-        //Comparo los privilegios
-        if (privileges != null && privileges.size() > 0) {
+        return new VerifiedAccessToken(userId, parsedToken.getExpiration());
+    }
 
-            User user = userService.getUser(userId).get();
-            List<String> userPrivileges = user.getRole()
-                    .getPrivileges()
-                    .stream()
-                    .map(Privilege::getName)
-                    .collect(Collectors.toList());
+    /**
+     * Verify a token without going to db
+     * @param token
+     * @param parsedToken already verified token
+     * @return null if the token has to be checked against db (stateful mode or tokens without role claim)
+     * @throws UnauthorizedException if the token was revoked
+     */
+    private VerifiedAccessToken verifyStateless(String token, ParsedToken parsedToken) {
 
-            privileges.removeAll(userPrivileges);
-            if (privileges.size() != 0) {
-                throw new ForbiddenException("User is not allowed to perform those actions");
-            }
+        if (validationMode != ValidationMode.STATELESS) {
+            return null;
+        }
+
+        if (accessTokenRevocations.isRevoked(token)) {
+            throw new UnauthorizedException("Invalid access token");
         }
+
+        Long roleId = parsedToken.getRoleId();
+        return roleId != null ? new VerifiedAccessToken(parsedToken.getUserId(), parsedToken.getExpiration(), roleId) : null;
     }
 
-    private AccessToken createAccessToken(User user) {
+    private void revoke(String token) {
+        accessTokenRevocations.revoke(TokenDigests.digest(token));
+        accessTokenCache.invalidate(token);
+    }
 
-        String jws = Jwts.builder()
-                .setHeaderParam("type", "BEARER")
-                .setSubject(user.getId().toString())
-                .setIssuedAt(Date.from(ZonedDateTime.now(ZoneId.systemDefault()).toInstant()))
-                .setExpiration(Date.from(ZonedDateTime.now(ZoneId.systemDefault()).plusDays(1).toInstant()))
-                .claim("user", user)
-                .signWith(secretKey, SignatureAlgorithm.HS512)
-                .compact();
+    private void revoke(AccessToken storedToken) {
+        accessTokenRevocations.revoke(storedToken.getTokenHash());
+        accessTokenCache.invalidateUser(storedToken.getUserId());
+    }
+
+    /**
+     * Token already issued to the user, reused while it is cached, not expired and still the active one in db
+     * @param storedToken
+     * @return
+     */
+    private Optional<AccessToken> findReusableToken(AccessToken storedToken) {
+        return accessTokenCache.getUserTokens(storedToken.getUserId()).stream()
+                .filter(storedToken::matches)
+                .findFirst()
+                .map(token -> AccessToken.builder()
+                        .userId(storedToken.getUserId())
+                        .token(token)
+                        .build());
+    }
+
+    private AccessToken createAccessToken(User user, Optional<AccessToken> previousToken) {
+
+        ZonedDateTime now = ZonedDateTime.now(ZoneId.systemDefault());
+        Date expiration = Date.from(now.plus(ACCESS_TOKEN_TTL).toInstant());
+        String jws = tokenCodec.signAccessToken(tokenCodec.builder()
+                    .setHeaderParam("type", "BEARER")
+                    .addClaims(AccessTokenClaims.of(user))
+                    .setId(AccessTokenClaims.newTokenId())
+                    .setSubject(user.getId().toString())
+                    .setIssuedAt(Date.from(now.toInstant()))
+                    .setExpiration(expiration));
 
         AccessToken accessToken = AccessToken.builder()
                 .userId(user.getId())
                 .token(jws)
                 .build();
 
-        if (accessTokenRepository.existsById(accessToken.getUserId())) {
-            accessTokenRepository.deleteById(accessToken.getUserId());
-        }
+        previousToken.ifPresent(token -> {
+            revoke(token);
+            accessTokenRepository.delete(token);
+        });
 
+        long issuedAt = accessTokenCache.generation();
         accessTokenRepository.save(accessToken);
+
+        // Se cachea como lo dejaria la primera validacion, asi el proximo login lo puede reutilizar
+        Long roleId = validationMode == ValidationMode.STATELESS && user.getRole() != null ? user.getRole().getId() : null;
+        accessTokenCache.put(jws, new VerifiedAccessToken(user.getId(), expiration, roleId), issuedAt);
         return accessToken;
     }
 }
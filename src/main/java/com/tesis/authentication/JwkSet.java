@@ -0,0 +1,108 @@
+package com.tesis.authentication;
+
+import com.tesis.utils.KeyRing;
+import com.tesis.utils.TokenDigests;
+import com.tesis.utils.TokenKey;
+import io.jsonwebtoken.io.Encoders;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.stereotype.Component;
+
+import java.math.BigInteger;
+import java.security.Key;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPublicKey;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Public keys of the asymmetric signing keys as a JWK set (RFC 7517), so other services verify access tokens locally and
+ * only call /authentication/validate for privileges. Keys are added to the ring before they become active, so consumers
+ * caching the set for less than that lead time already have a key when the first token signed with it shows up.
+ */
+@Component
+public class JwkSet {
+
+    private final Map<String, List<Map<String, Object>>> keySet;
+    private final String eTag;
+    private final CacheControl cacheControl;
+
+    @Autowired
+    public JwkSet(KeyRing keyRing,
+                  @Value("${jwt.jwks.max-age:1h}") Duration maxAge,
+                  @Value("${jwt.jwks.stale-if-error:1d}") Duration staleIfError) {
+
+        List<Map<String, Object>> keys = keyRing.getKeys().stream()
+                .filter(tokenKey -> !tokenKey.getAlgorithm().isHmac())
+                .sorted(Comparator.comparing(TokenKey::getId))
+                .map(JwkSet::toJwk)
+                .collect(Collectors.toList());
+
+        this.keySet = Collections.singletonMap("keys", keys);
+        // Las keys no cambian mientras corre la instancia, el etag se calcula una sola vez
+        this.eTag = Encoders.BASE64URL.encode(TokenDigests.digest(keys.toString()));
+        this.cacheControl = CacheControl.maxAge(maxAge.getSeconds(), TimeUnit.SECONDS)
+                .cachePublic()
+                .staleWhileRevalidate(maxAge.getSeconds(), TimeUnit.SECONDS)
+                .staleIfError(staleIfError.getSeconds(), TimeUnit.SECONDS);
+    }
+
+    public Map<String, List<Map<String, Object>>> getKeySet() {
+        return keySet;
+    }
+
+    public String getETag() {
+        return eTag;
+    }
+
+    public CacheControl getCacheControl() {
+        return cacheControl;
+    }
+
+    private static Map<String, Object> toJwk(TokenKey tokenKey) {
+
+        Key publicKey = tokenKey.getVerificationKey();
+        Map<String, Object> jwk = new LinkedHashMap<>();
+        if (publicKey instanceof ECPublicKey) {
+            ECPublicKey ecKey = (ECPublicKey) publicKey;
+            int fieldSize = ecKey.getParams().getCurve().getField().getFieldSize();
+            int length = (fieldSize + 7) / 8;
+            jwk.put("kty", "EC");
+            jwk.put("crv", "P-" + fieldSize);
+            jwk.put("x", encode(ecKey.getW().getAffineX(), length));
+            jwk.put("y", encode(ecKey.getW().getAffineY(), length));
+        } else if (publicKey instanceof RSAPublicKey) {
+            RSAPublicKey rsaKey = (RSAPublicKey) publicKey;
+            jwk.put("kty", "RSA");
+            jwk.put("n", encode(rsaKey.getModulus(), 0));
+            jwk.put("e", encode(rsaKey.getPublicExponent(), 0));
+        } else {
+            throw new IllegalStateException("Unsupported public key " + publicKey.getAlgorithm() + " for key " + tokenKey.getId());
+        }
+
+        jwk.put("kid", tokenKey.getId());
+        jwk.put("use", "sig");
+        jwk.put("alg", tokenKey.getAlgorithm().getValue());
+        return jwk;
+    }
+
+    /**
+     * Unsigned big endian, left padded with zeros up to length
+     */
+    private static String encode(BigInteger value, int length) {
+
+        byte[] bytes = value.toByteArray();
+        int start = bytes.length > 1 && bytes[0] == 0 ? 1 : 0;
+        int size = bytes.length - start;
+        byte[] padded = new byte[Math.max(length, size)];
+        System.arraycopy(bytes, start, padded, padded.length - size, size);
+        return Encoders.BASE64URL.encode(padded);
+    }
+}
@@ -0,0 +1,163 @@
+package com.tesis.authentication;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.tesis.exceptions.TooManyRequestsException;
+import com.tesis.utils.ThrottledLogger;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Locale;
+
+/**
+ * Counts failed logins per email and per client address in a sliding window. Once a key reaches its limit, further
+ * attempts are rejected with a 429 before looking up the user or checking the password, until the oldest failure
+ * leaves the window. Everything is kept in memory, so limits apply per instance.
+ */
+@Slf4j
+@Component
+public class LoginThrottle {
+
+    // El volumen de rechazos se ve en el counter authentication.login.throttled
+    private static final ThrottledLogger THROTTLED = ThrottledLogger.of(logger, "login_throttled");
+
+    private final FailureCounter emailFailures;
+    private final FailureCounter addressFailures;
+
+    @Autowired
+    public LoginThrottle(MeterRegistry meterRegistry,
+                         @Value("${authentication.login-throttle.window:15m}") Duration window,
+                         @Value("${authentication.login-throttle.max-failures-per-email:5}") int maxFailuresPerEmail,
+                         @Value("${authentication.login-throttle.max-failures-per-address:50}") int maxFailuresPerAddress,
+                         @Value("${authentication.login-throttle.maximum-size:100000}") long maximumSize) {
+        this(meterRegistry, window, maxFailuresPerEmail, maxFailuresPerAddress, maximumSize, Ticker.systemTicker());
+    }
+
+    LoginThrottle(MeterRegistry meterRegistry, Duration window, int maxFailuresPerEmail, int maxFailuresPerAddress,
+                  long maximumSize, Ticker ticker) {
+        this.emailFailures = new FailureCounter("email", maxFailuresPerEmail, window, maximumSize, ticker, meterRegistry);
+        this.addressFailures = new FailureCounter("address", maxFailuresPerAddress, window, maximumSize, ticker, meterRegistry);
+    }
+
+    /**
+     * Reject the attempt if the email or the address already failed too many times
+     * @param email
+     * @param remoteAddress null if unknown
+     * @throws TooManyRequestsException
+     */
+    public void checkAllowed(String email, String remoteAddress) throws TooManyRequestsException {
+        addressFailures.checkAllowed(remoteAddress);
+        emailFailures.checkAllowed(normalize(email));
+    }
+
+    /**
+     * Count a failed attempt for both the email and the address
+     * @param email
+     * @param remoteAddress null if unknown
+     */
+    public void recordFailure(String email, String remoteAddress) {
+        emailFailures.record(normalize(email));
+        addressFailures.record(remoteAddress);
+    }
+
+    /**
+     * Forget the failures of the email after a successful login. Failures of the address are kept, a valid account
+     * should not reset the budget of an address trying many others
+     * @param email
+     */
+    public void recordSuccess(String email) {
+        emailFailures.reset(normalize(email));
+    }
+
+    private static String normalize(String email) {
+        return email == null ? null : email.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static class FailureCounter {
+
+        private final String type;
+        private final int maxFailures;
+        private final long windowNanos;
+        private final Ticker ticker;
+        private final Cache<String, FailureWindow> windows;
+        private final Counter rejections;
+
+        FailureCounter(String type, int maxFailures, Duration window, long maximumSize, Ticker ticker, MeterRegistry meterRegistry) {
+            this.type = type;
+            this.maxFailures = maxFailures;
+            this.windowNanos = window.toNanos();
+            this.ticker = ticker;
+            // Una clave sin fallas durante toda la ventana ya no puede estar bloqueada
+            this.windows = CacheBuilder.newBuilder()
+                    .maximumSize(maximumSize)
+                    .expireAfterAccess(window)
+                    .ticker(ticker)
+                    .build();
+            this.rejections = Counter.builder("authentication.login.throttled")
+                    .tag("key", type)
+                    .register(meterRegistry);
+        }
+
+        void checkAllowed(String key) {
+
+            if (key == null || maxFailures <= 0) {
+                return;
+            }
+
+            FailureWindow failures = windows.getIfPresent(key);
+            long retryAfterNanos = failures == null ? 0 : failures.retryAfter(ticker.read(), windowNanos);
+            if (retryAfterNanos > 0) {
+                rejections.increment();
+                THROTTLED.warn("[message: Login attempt throttled] [key: {}]", type);
+                throw new TooManyRequestsException("Too many failed login attempts, try again later", Duration.ofNanos(retryAfterNanos));
+            }
+        }
+
+        void record(String key) {
+            if (key != null && maxFailures > 0) {
+                windows.asMap().computeIfAbsent(key, k -> new FailureWindow(maxFailures)).add(ticker.read());
+            }
+        }
+
+        void reset(String key) {
+            if (key != null) {
+                windows.invalidate(key);
+            }
+        }
+    }
+
+    /**
+     * Timestamps of the last failures of a key, in a ring as long as the limit: the key is blocked while the ring is
+     * full and its oldest failure is still inside the window
+     */
+    private static class FailureWindow {
+
+        private final long[] failures;
+        private int next;
+        private int size;
+
+        FailureWindow(int maxFailures) {
+            this.failures = new long[maxFailures];
+        }
+
+        synchronized void add(long now) {
+            failures[next] = now;
+            next = (next + 1) % failures.length;
+            size = Math.min(size + 1, failures.length);
+        }
+
+        synchronized long retryAfter(long now, long windowNanos) {
+            if (size < failures.length) {
+                return 0;
+            }
+            // Con el anillo lleno, next apunta a la falla mas vieja
+            return Math.max(0, failures[next] + windowNanos - now);
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.tesis.authentication;
+
+import lombok.*;
+
+import java.util.List;
+
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+@Builder
+public class TokenValidationBody {
+
+    private String token;
+    private List<String> privileges;
+}
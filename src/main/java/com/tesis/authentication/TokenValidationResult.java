@@ -0,0 +1,17 @@
+package com.tesis.authentication;
+
+import lombok.*;
+
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+@Builder
+public class TokenValidationResult {
+
+    private ValidationStatus status;
+
+    public static TokenValidationResult of(ValidationStatus status) {
+        return new TokenValidationResult(status);
+    }
+}
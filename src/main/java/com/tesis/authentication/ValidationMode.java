@@ -0,0 +1,15 @@
+package com.tesis.authentication;
+
+public enum ValidationMode {
+
+    /**
+     * Every token is checked against the active token of its user in db, privileges are resolved from the user role
+     */
+    STATEFUL,
+
+    /**
+     * Tokens are trusted on their signature and the role id they carry. Logouts and user changes are tracked in memory
+     * by {@link AccessTokenRevocations}
+     */
+    STATELESS
+}
@@ -0,0 +1,8 @@
+package com.tesis.authentication;
+
+public enum ValidationStatus {
+
+    OK,
+    UNAUTHORIZED,
+    FORBIDDEN
+}
@@ -0,0 +1,26 @@
+package com.tesis.authentication;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.Date;
+
+@Getter
+@AllArgsConstructor
+public class VerifiedAccessToken {
+
+    private final Long userId;
+    private final Date expiration;
+    /**
+     * Role carried by the token, only set when it was verified in {@link ValidationMode#STATELESS}
+     */
+    private final Long roleId;
+
+    public VerifiedAccessToken(Long userId, Date expiration) {
+        this(userId, expiration, null);
+    }
+
+    public boolean isExpired() {
+        return expiration != null && expiration.getTime() <= System.currentTimeMillis();
+    }
+}
@@ -1,6 +1,8 @@
 package com.tesis.config;
 
 import com.tesis.exceptions.ApiError;
+import com.tesis.exceptions.ClientErrorException;
+import com.tesis.utils.ThrottledLogger;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -12,13 +14,21 @@ import org.springframework.web.server.ResponseStatusException;
 import org.springframework.web.servlet.NoHandlerFoundException;
 
 import javax.servlet.http.HttpServletRequest;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Slf4j
 @ControllerAdvice
 public class ControllerExceptionHandler {
 
+    private static final ThrottledLogger UNKNOWN_ROUTE = ThrottledLogger.of(logger, "unknown_route");
+
+    // Uno por status, los rechazos esperados se repiten en cada request
+    private final Map<Integer, ThrottledLogger> clientErrors = new ConcurrentHashMap<>();
+
     @ExceptionHandler(value = {NoHandlerFoundException.class, HttpRequestMethodNotSupportedException.class})
     public ResponseEntity<ApiError> noHandlerFoundException(HttpServletRequest req, NoHandlerFoundException ex) {
+        UNKNOWN_ROUTE.warn("[message: Route not found] [method: {}] [route: {}]", req.getMethod(), req.getRequestURI());
         ApiError apiError = new ApiError(HttpStatus.NOT_FOUND.value(), String.format("Route %s not found", req.getRequestURI()));
         return ResponseEntity.status(apiError.getStatus())
                 .body(apiError);
@@ -28,7 +38,11 @@ public class ControllerExceptionHandler {
     protected ResponseEntity<ApiError> handleApiException(ResponseStatusException e) {
         Integer statusCode = e.getStatus().value();
         boolean expected = 500 > statusCode;
-        if (expected) {
+        if (e instanceof ClientErrorException) {
+            // Resultado esperado: sin stack trace y limitado por status
+            clientErrors.computeIfAbsent(statusCode, status -> ThrottledLogger.of(logger, "client_error_" + status))
+                    .warn("[message: {}] [status: {}]", e.getReason(), statusCode);
+        } else if (expected) {
             logger.warn("[message: {}] [status: {}] [stackTrace: {}]", e.getReason(), e.getStatus().value(), e.getStackTrace());
         } else {
             logger.error("[message: {}] [status: {}] [stackTrace: {}]", e.getReason(), e.getStatus().value(), e.getStackTrace());
@@ -36,6 +50,7 @@ public class ControllerExceptionHandler {
 
         ApiError apiError = new ApiError(statusCode, e.getReason());
         return ResponseEntity.status(apiError.getStatus())
+                .headers(e.getResponseHeaders())
                 .body(apiError);
     }
 
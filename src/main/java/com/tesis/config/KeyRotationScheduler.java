@@ -0,0 +1,28 @@
+package com.tesis.config;
+
+import com.tesis.utils.KeyRing;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+
+/**
+ * Switches to the next signing key once its active-from is reached. Every instance already has the key (it is
+ * configured ahead of time), so they all verify its tokens before any of them signs with it
+ */
+@Component
+public class KeyRotationScheduler {
+
+    private final KeyRing keyRing;
+
+    @Autowired
+    public KeyRotationScheduler(KeyRing keyRing) {
+        this.keyRing = keyRing;
+    }
+
+    @Scheduled(fixedDelayString = "${jwt.rotation-check-interval:60000}")
+    public void rotate() {
+        keyRing.rotate(Instant.now());
+    }
+}
@@ -0,0 +1,163 @@
+package com.tesis.config;
+
+import com.tesis.utils.ServerTiming;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+/**
+ * Takes the request id from the X-Request-Id header, or generates one, and keeps it in the MDC (request_id in the
+ * log pattern) and in the response. Also answers with the Server-Timing breakdown of the request stages, when enabled.
+ * The breakdown tells apart requests that took different paths (e.g. a login only hashes the password of a known
+ * email), so it is only sent to callers with the trusted token and never on the excluded paths.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class RequestTracingFilter extends OncePerRequestFilter {
+
+    public static final String REQUEST_ID_HEADER = "X-Request-Id";
+    public static final String REQUEST_ID = "request_id";
+    public static final String SERVER_TIMING_TOKEN_HEADER = "X-Server-Timing-Token";
+
+    // Un id ajeno termina en los logs, solo se acepta si es corto y sin caracteres raros
+    private static final Pattern VALID_REQUEST_ID = Pattern.compile("[A-Za-z0-9._:-]{1,64}");
+
+    private final boolean serverTimingEnabled;
+    private final byte[] serverTimingToken;
+    private final Set<String> serverTimingExcludedPaths;
+
+    /**
+     * @param serverTimingEnabled
+     * @param serverTimingToken value of the X-Server-Timing-Token header required to get the breakdown, empty to send it
+     *                          to every caller
+     * @param serverTimingExcludedPaths paths that never get the breakdown
+     */
+    @Autowired
+    public RequestTracingFilter(@Value("${tracing.server-timing.enabled:false}") boolean serverTimingEnabled,
+                                @Value("${tracing.server-timing.token:}") String serverTimingToken,
+                                @Value("${tracing.server-timing.excluded-paths:/authentication/login}") String[] serverTimingExcludedPaths) {
+        this.serverTimingEnabled = serverTimingEnabled;
+        this.serverTimingToken = serverTimingToken.isEmpty() ? null : serverTimingToken.getBytes(StandardCharsets.UTF_8);
+        this.serverTimingExcludedPaths = new HashSet<>(Arrays.asList(serverTimingExcludedPaths));
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain) throws ServletException, IOException {
+
+        String requestId = request.getHeader(REQUEST_ID_HEADER);
+        if (requestId == null || !VALID_REQUEST_ID.matcher(requestId).matches()) {
+            requestId = UUID.randomUUID().toString();
+        }
+
+        MDC.put(REQUEST_ID, requestId);
+        response.setHeader(REQUEST_ID_HEADER, requestId);
+        if (!isServerTimingAllowed(request)) {
+            try {
+                chain.doFilter(request, response);
+            } finally {
+                MDC.remove(REQUEST_ID);
+            }
+            return;
+        }
+
+        ServerTiming.begin();
+        ServerTimingResponse timedResponse = new ServerTimingResponse(response, System.nanoTime());
+        try {
+            chain.doFilter(request, timedResponse);
+        } finally {
+            timedResponse.writeServerTiming();
+            ServerTiming.end();
+            MDC.remove(REQUEST_ID);
+        }
+    }
+
+    private boolean isServerTimingAllowed(HttpServletRequest request) {
+
+        if (!serverTimingEnabled || serverTimingExcludedPaths.contains(request.getRequestURI().substring(request.getContextPath().length()))) {
+            return false;
+        }
+        if (serverTimingToken == null) {
+            return true;
+        }
+
+        String token = request.getHeader(SERVER_TIMING_TOKEN_HEADER);
+        return token != null && MessageDigest.isEqual(serverTimingToken, token.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Headers can't be added once the body starts being written, so the breakdown is set right before that
+     */
+    private static class ServerTimingResponse extends HttpServletResponseWrapper {
+
+        private final long start;
+        private boolean written;
+
+        ServerTimingResponse(HttpServletResponse response, long start) {
+            super(response);
+            this.start = start;
+        }
+
+        void writeServerTiming() {
+            if (!written && !isCommitted()) {
+                setHeader(ServerTiming.HEADER, ServerTiming.header(System.nanoTime() - start));
+            }
+            written = true;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            writeServerTiming();
+            return super.getOutputStream();
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            writeServerTiming();
+            return super.getWriter();
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            writeServerTiming();
+            super.flushBuffer();
+        }
+
+        @Override
+        public void sendError(int sc) throws IOException {
+            writeServerTiming();
+            super.sendError(sc);
+        }
+
+        @Override
+        public void sendError(int sc, String msg) throws IOException {
+            writeServerTiming();
+            super.sendError(sc, msg);
+        }
+
+        @Override
+        public void sendRedirect(String location) throws IOException {
+            writeServerTiming();
+            super.sendRedirect(location);
+        }
+    }
+}
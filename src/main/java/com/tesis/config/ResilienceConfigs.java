@@ -0,0 +1,83 @@
+package com.tesis.config;
+
+import com.tesis.emails.SendGridClient;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.core.IntervalFunction;
+import io.github.resilience4j.micrometer.tagged.TaggedCircuitBreakerMetrics;
+import io.github.resilience4j.micrometer.tagged.TaggedRetryMetrics;
+import io.github.resilience4j.retry.Retry;
+import io.github.resilience4j.retry.RetryConfig;
+import io.github.resilience4j.retry.RetryRegistry;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * Retries and circuit breakers of the external dependencies. Their state, calls and retries are published as
+ * resilience4j.* metrics
+ */
+@Slf4j
+@Configuration
+public class ResilienceConfigs {
+
+    public static final String SENDGRID = "sendgrid";
+
+    @Bean
+    public CircuitBreakerRegistry circuitBreakerRegistry(MeterRegistry meterRegistry) {
+        CircuitBreakerRegistry registry = CircuitBreakerRegistry.ofDefaults();
+        TaggedCircuitBreakerMetrics.ofCircuitBreakerRegistry(registry).bindTo(meterRegistry);
+        return registry;
+    }
+
+    @Bean
+    public RetryRegistry retryRegistry(MeterRegistry meterRegistry) {
+        RetryRegistry registry = RetryRegistry.ofDefaults();
+        TaggedRetryMetrics.ofRetryRegistry(registry).bindTo(meterRegistry);
+        return registry;
+    }
+
+    @Bean
+    @Qualifier(SENDGRID)
+    public CircuitBreaker sendGridCircuitBreaker(CircuitBreakerRegistry registry,
+                                                 @Value("${email.sendgrid.circuit-breaker.failure-rate-threshold:50}") float failureRateThreshold,
+                                                 @Value("${email.sendgrid.circuit-breaker.sliding-window-size:20}") int slidingWindowSize,
+                                                 @Value("${email.sendgrid.circuit-breaker.minimum-number-of-calls:10}") int minimumNumberOfCalls,
+                                                 @Value("${email.sendgrid.circuit-breaker.wait-in-open-state:30s}") Duration waitInOpenState,
+                                                 @Value("${email.sendgrid.circuit-breaker.permitted-calls-in-half-open-state:3}") int permittedCallsInHalfOpenState) {
+
+        CircuitBreaker circuitBreaker = registry.circuitBreaker(SENDGRID, CircuitBreakerConfig.custom()
+                .failureRateThreshold(failureRateThreshold)
+                .slidingWindowSize(slidingWindowSize)
+                .minimumNumberOfCalls(minimumNumberOfCalls)
+                .waitDurationInOpenState(waitInOpenState)
+                .permittedNumberOfCallsInHalfOpenState(permittedCallsInHalfOpenState)
+                // Un 4xx es un email invalido, no un proveedor caido
+                .recordException(SendGridClient::isTransient)
+                .build());
+        circuitBreaker.getEventPublisher().onStateTransition(event ->
+                logger.warn("[message: SendGrid circuit breaker state changed] [transition: {}]", event.getStateTransition()));
+        return circuitBreaker;
+    }
+
+    @Bean
+    @Qualifier(SENDGRID)
+    public Retry sendGridRetry(RetryRegistry registry,
+                               @Value("${email.sendgrid.retry.max-attempts:3}") int maxAttempts,
+                               @Value("${email.sendgrid.retry.initial-interval:500ms}") Duration initialInterval,
+                               @Value("${email.sendgrid.retry.multiplier:2}") double multiplier,
+                               @Value("${email.sendgrid.retry.randomization-factor:0.5}") double randomizationFactor) {
+
+        return registry.retry(SENDGRID, RetryConfig.custom()
+                .maxAttempts(maxAttempts)
+                .intervalFunction(IntervalFunction.ofExponentialRandomBackoff(initialInterval, multiplier, randomizationFactor))
+                .retryOnException(SendGridClient::isTransient)
+                .build());
+    }
+}
@@ -1,11 +1,39 @@
 package com.tesis.config;
 
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import kong.unirest.Proxy;
 import kong.unirest.Unirest;
+import kong.unirest.UnirestConfigException;
 import kong.unirest.UnirestInstance;
+import kong.unirest.apache.ApacheAsyncClient;
+import kong.unirest.apache.ApacheClient;
+import kong.unirest.apache.AsyncIdleConnectionMonitorThread;
+import kong.unirest.apache.RequestConfigFactory;
+import org.apache.http.HttpHost;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.pool.ConnPoolControl;
+import org.apache.http.pool.PoolStats;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * One http client per tier of dependencies. Every tier has its own connection pool, so the pool size is its bulkhead:
+ * a slow dependency can only hold the connections of its tier, and requests waiting for one give up after a short
+ * pool wait instead of piling up. Async requests (e.g. the email provider) go through a second pool with the same
+ * limits. Spring closes the clients (and their pools) on shutdown.
+ */
 @Configuration
 public class RestClientConfigs {
 
@@ -16,61 +44,170 @@ public class RestClientConfigs {
 
     @Bean
     @Qualifier(FAST)
-    public UnirestInstance fastInstance() {
+    public UnirestInstance fastInstance(MeterRegistry meterRegistry) {
+        return tier(FAST, 500, 1000, 100, 20, 100, meterRegistry);
+    }
 
-        UnirestInstance fastInstance = Unirest.primaryInstance();
-        fastInstance.config()
-                .socketTimeout(500)
-                .connectTimeout(1000)
-                .concurrency(100, 20)
-                .automaticRetries(true)
-                .addShutdownHook(true);
+    @Bean
+    @Qualifier(MID)
+    public UnirestInstance midInstance(MeterRegistry meterRegistry) {
+        return tier(MID, 1000, 1500, 100, 20, 200, meterRegistry);
+    }
 
-        return fastInstance;
+    @Bean
+    @Qualifier(SLOW)
+    public UnirestInstance slowInstance(MeterRegistry meterRegistry) {
+        return tier(SLOW, 2000, 2500, 50, 10, 250, meterRegistry);
     }
 
     @Bean
-    @Qualifier(MID)
-    public UnirestInstance midInstance() {
+    @Qualifier(VERY_SLOW)
+    public UnirestInstance verySlowInstance(MeterRegistry meterRegistry) {
+        return tier(VERY_SLOW, 5000, 5500, 20, 10, 250, meterRegistry);
+    }
+
+    /**
+     * @param socketTimeout millis without data before a request fails
+     * @param connectTimeout millis to open a connection
+     * @param maxConnections connections of the tier, shared by all its hosts
+     * @param maxPerRoute connections of the tier to a single host
+     * @param poolWait millis to wait for a free connection of the tier before failing
+     */
+    static UnirestInstance tier(String name, int socketTimeout, int connectTimeout, int maxConnections, int maxPerRoute,
+                                int poolWait, MeterRegistry meterRegistry) {
 
-        UnirestInstance midInstance = Unirest.primaryInstance();
-        midInstance.config()
-                .socketTimeout(1000)
-                .connectTimeout(1500)
-                .concurrency(100, 20)
+        // Los pools se crean con el primer request de cada tipo, hasta entonces no hay conexiones
+        AtomicReference<ConnPoolControl<?>> syncPool = new AtomicReference<>();
+        AtomicReference<ConnPoolControl<?>> asyncPool = new AtomicReference<>();
+        RequestConfigFactory requestConfig = requestConfig(poolWait);
+
+        UnirestInstance instance = Unirest.spawnInstance();
+        instance.config()
+                .socketTimeout(socketTimeout)
+                .connectTimeout(connectTimeout)
+                .concurrency(maxConnections, maxPerRoute)
                 .automaticRetries(true)
-                .addShutdownHook(true);
+                .httpClient(config -> {
+                    ApacheClient client = new ApacheClient(config);
+                    client.setConfigFactory(requestConfig);
+                    syncPool.set(client.getManager());
+                    return client;
+                })
+                .asyncClient(config -> {
+                    // El cliente async de Unirest no expone su pool, se arma aca para poder medirlo
+                    PoolingNHttpClientConnectionManager manager = asyncConnectionManager(config.getMaxConnections(), config.getMaxPerRoutes());
+                    CloseableHttpAsyncClient httpClient = HttpAsyncClientBuilder.create()
+                            .setConnectionManager(manager)
+                            .build();
+                    httpClient.start();
+                    AsyncIdleConnectionMonitorThread monitor = new AsyncPoolMonitor(name, manager, poolWait);
+                    monitor.tryStart();
+
+                    ApacheAsyncClient client = new ApacheAsyncClient(httpClient, config, manager, monitor);
+                    client.setConfigFactory(requestConfig);
+                    asyncPool.set(manager);
+                    return client;
+                })
+                .instrumentWith(request -> {
+                    long start = System.nanoTime();
+                    return (response, exception) -> Timer.builder("http.client.requests")
+                            .tag("tier", name)
+                            .tag("method", request.getHttpMethod().name())
+                            .tag("status", response != null ? String.valueOf(response.getStatus()) : "CLIENT_ERROR")
+                            .tag("exception", exception != null ? exception.getClass().getSimpleName() : "None")
+                            .register(meterRegistry)
+                            .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                });
+
+        poolGauges(name, "sync", syncPool, meterRegistry);
+        poolGauges(name, "async", asyncPool, meterRegistry);
 
-        return midInstance;
+        return instance;
     }
 
-    @Bean
-    @Qualifier(SLOW)
-    public UnirestInstance slowInstance() {
+    /**
+     * Unirest waits for a free connection as long as the socket timeout, the pool wait is bounded so the pool works as
+     * a bulkhead. Shared by the sync and async clients of a tier
+     */
+    private static RequestConfigFactory requestConfig(int poolWait) {
+        return (config, request) -> RequestConfig.custom()
+                .setConnectTimeout(request.getConnectTimeout())
+                .setSocketTimeout(request.getSocketTimeout())
+                .setConnectionRequestTimeout(poolWait)
+                .setProxy(toHttpHost(request.getProxy()))
+                .setCookieSpec(config.getCookieSpec())
+                .setNormalizeUri(false)
+                .build();
+    }
 
-        UnirestInstance slowInstance = Unirest.primaryInstance();
-        slowInstance.config()
-                .socketTimeout(2000)
-                .connectTimeout(2500)
-                .concurrency(100, 20)
-                .automaticRetries(true)
-                .addShutdownHook(true);
+    private static PoolingNHttpClientConnectionManager asyncConnectionManager(int maxConnections, int maxPerRoute) {
+        try {
+            PoolingNHttpClientConnectionManager manager = new PoolingNHttpClientConnectionManager(new DefaultConnectingIOReactor());
+            manager.setMaxTotal(maxConnections);
+            manager.setDefaultMaxPerRoute(maxPerRoute);
+            return manager;
+        } catch (IOReactorException e) {
+            throw new UnirestConfigException(e);
+        }
+    }
 
-        return slowInstance;
+    private static HttpHost toHttpHost(Proxy proxy) {
+        return proxy == null ? null : new HttpHost(proxy.getHost(), proxy.getPort());
     }
 
-    @Bean
-    @Qualifier(VERY_SLOW)
-    public UnirestInstance verySlowInstance() {
+    private static void poolGauges(String tier, String client, AtomicReference<ConnPoolControl<?>> pool, MeterRegistry meterRegistry) {
+        poolGauge("http.client.connections.active", "Connections of the tier in use", tier, client, pool, PoolStats::getLeased, meterRegistry);
+        poolGauge("http.client.connections.idle", "Open connections of the tier not in use", tier, client, pool, PoolStats::getAvailable, meterRegistry);
+        poolGauge("http.client.connections.pending", "Requests waiting for a connection of the tier", tier, client, pool, PoolStats::getPending, meterRegistry);
+        poolGauge("http.client.connections.max", "Connections allowed to the tier", tier, client, pool, PoolStats::getMax, meterRegistry);
+    }
 
-        UnirestInstance slowInstance = Unirest.primaryInstance();
-        slowInstance.config()
-                .socketTimeout(5000)
-                .connectTimeout(5500)
-                .concurrency(100, 20)
-                .automaticRetries(true)
-                .addShutdownHook(true);
+    private static void poolGauge(String metric, String description, String tier, String client,
+                                  AtomicReference<ConnPoolControl<?>> pool, ToDoubleFunction<PoolStats> stat,
+                                  MeterRegistry meterRegistry) {
+        Gauge.builder(metric, pool, p -> p.get() != null ? stat.applyAsDouble(p.get().getTotalStats()) : 0)
+                .description(description)
+                .tag("tier", tier)
+                .tag("client", client)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Same cleanup as the Unirest monitor, plus the pool wait: the async pool only checks whether a request waited too
+     * long for a connection when another connection is leased or released, so with every connection stuck it never
+     * would. Stopped (interrupted) when the client is closed
+     */
+    static class AsyncPoolMonitor extends AsyncIdleConnectionMonitorThread {
+
+        private static final long CLEANUP_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(5);
+        private static final long IDLE_TIMEOUT_SECONDS = 30;
+
+        private final PoolingNHttpClientConnectionManager manager;
+        private final long checkInterval;
+
+        AsyncPoolMonitor(String tier, PoolingNHttpClientConnectionManager manager, int poolWait) {
+            super(manager);
+            this.manager = manager;
+            this.checkInterval = Math.max(10, poolWait / 2);
+            setName("http-client-" + tier + "-async-pool");
+        }
 
-        return slowInstance;
+        @Override
+        public void run() {
+            long nextCleanup = System.nanoTime() + CLEANUP_INTERVAL_NANOS;
+            try {
+                while (!isInterrupted()) {
+                    Thread.sleep(checkInterval);
+                    manager.validatePendingRequests();
+                    if (System.nanoTime() - nextCleanup >= 0) {
+                        manager.closeExpiredConnections();
+                        manager.closeIdleConnections(IDLE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                        nextCleanup = System.nanoTime() + CLEANUP_INTERVAL_NANOS;
+                    }
+                }
+            } catch (InterruptedException e) {
+                // El cliente se cerro
+            }
+        }
     }
 }
@@ -0,0 +1,75 @@
+package com.tesis.config;
+
+import com.tesis.utils.ServerTiming;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.aop.framework.AopProxyUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of every public method of the services (service.calls), of the SendGrid client and of the repositories
+ * (repository.calls), tagged by class, method and exception. Histograms are enabled in application.yml so percentiles
+ * can be computed on the scraped buckets. Repository time is also added to the db stage of the Server-Timing header.
+ */
+@Aspect
+@Component
+public class ServiceMetricsAspect {
+
+    private final MeterRegistry meterRegistry;
+
+    @Autowired
+    public ServiceMetricsAspect(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Around("execution(public * com.tesis..Default*Service.*(..)) || execution(public * com.tesis.emails.SendGridClient.*(..))")
+    public Object timeService(ProceedingJoinPoint joinPoint) throws Throwable {
+        return time("service.calls", joinPoint.getSignature().getDeclaringType().getSimpleName(), null, joinPoint);
+    }
+
+    @Around("execution(* org.springframework.data.repository.Repository+.*(..)) && this(org.springframework.data.repository.Repository)")
+    public Object timeRepository(ProceedingJoinPoint joinPoint) throws Throwable {
+        return time("repository.calls", repositoryName(joinPoint.getThis()), ServerTiming.DB, joinPoint);
+    }
+
+    private Object time(String metric, String className, String stage, ProceedingJoinPoint joinPoint) throws Throwable {
+
+        long start = System.nanoTime();
+        String exception = "None";
+        try {
+            return joinPoint.proceed();
+        } catch (Throwable e) {
+            exception = e.getClass().getSimpleName();
+            throw e;
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            Timer.builder(metric)
+                    .tag("class", className)
+                    .tag("method", joinPoint.getSignature().getName())
+                    .tag("exception", exception)
+                    .register(meterRegistry)
+                    .record(elapsed, TimeUnit.NANOSECONDS);
+            if (stage != null) {
+                ServerTiming.record(stage, elapsed);
+            }
+        }
+    }
+
+    /**
+     * Los repositorios son proxies, el nombre util es el de la interfaz declarada en el proyecto
+     */
+    private static String repositoryName(Object repository) {
+        for (Class<?> type : AopProxyUtils.proxiedUserInterfaces(repository)) {
+            if (type.getName().startsWith("com.tesis.")) {
+                return type.getSimpleName();
+            }
+        }
+        return repository.getClass().getSimpleName();
+    }
+}
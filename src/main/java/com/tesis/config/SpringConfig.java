@@ -5,9 +5,18 @@ import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.PropertyNamingStrategy;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.tesis.passwords.BCryptCalibrator;
+import com.tesis.passwords.CostAwareBCryptPasswordEncoder;
+import com.tesis.passwords.PasswordHashingCalibration;
+import com.tesis.passwords.PooledPasswordEncoder;
+import com.tesis.utils.KeyRing;
+import com.tesis.utils.TokenKey;
+import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.io.Decoders;
 import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
@@ -15,17 +24,27 @@ import org.springframework.context.annotation.Primary;
 import org.springframework.core.env.Environment;
 import org.springframework.data.jpa.repository.config.EnableJpaAuditing;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
+import java.security.GeneralSecurityException;
 import java.security.Key;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
 
 @ComponentScan("com.tesis")
 @Configuration
 @EnableJpaAuditing
 @EnableJpaRepositories("com.tesis")
+@EnableScheduling
 @EnableTransactionManagement
 public class SpringConfig implements WebMvcConfigurer {
 
@@ -44,12 +63,72 @@ public class SpringConfig implements WebMvcConfigurer {
     }
 
     @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder(6);
+    public PasswordHashingCalibration passwordHashingCalibration(@Value("${passwords.bcrypt.cost:10}") int cost,
+                                                                 @Value("${passwords.bcrypt.target-latency:100ms}") Duration targetLatency,
+                                                                 @Value("${passwords.bcrypt.min-cost:6}") int minCost,
+                                                                 @Value("${passwords.bcrypt.max-cost:14}") int maxCost) {
+        return cost > 0
+                ? BCryptCalibrator.fixed(cost, targetLatency)
+                : BCryptCalibrator.calibrate(targetLatency, minCost, maxCost);
     }
 
     @Bean
-    public Key getKey() {
-        return Keys.hmacShaKeyFor(Decoders.BASE64.decode(env.getProperty("jwt.secret-key")));
+    public PasswordEncoder passwordEncoder(PasswordHashingCalibration calibration,
+                                           MeterRegistry meterRegistry,
+                                           @Value("${passwords.hashing.pool-size:0}") int poolSize,
+                                           @Value("${passwords.hashing.queue-capacity:50}") int queueCapacity) {
+        return new PooledPasswordEncoder(
+                new CostAwareBCryptPasswordEncoder(calibration.getCost()),
+                poolSize > 0 ? poolSize : Runtime.getRuntime().availableProcessors(),
+                queueCapacity,
+                meterRegistry);
+    }
+
+    /**
+     * jwt.secret-key signs and verifies the tokens without kid, jwt.keys[n] are the keys rotated by {@link KeyRing}: id,
+     * algorithm (HS512 by default), active-from and either secret or private-key / public-key (base64 PKCS#8 / X.509)
+     */
+    @Bean
+    public KeyRing keyRing() {
+
+        List<TokenKey> keys = new ArrayList<>();
+        for (int i = 0; env.containsProperty("jwt.keys[" + i + "].id"); i++) {
+            keys.add(tokenKey("jwt.keys[" + i + "]."));
+        }
+
+        String secretKey = env.getProperty("jwt.secret-key");
+        return new KeyRing(secretKey != null ? hmacKey(secretKey) : null, keys);
+    }
+
+    private TokenKey tokenKey(String prefix) {
+
+        String id = env.getRequiredProperty(prefix + "id");
+        SignatureAlgorithm algorithm = SignatureAlgorithm.forName(env.getProperty(prefix + "algorithm", SignatureAlgorithm.HS512.getValue()));
+        String activeFrom = env.getProperty(prefix + "active-from");
+        Instant activeFromInstant = activeFrom != null ? Instant.parse(activeFrom) : Instant.EPOCH;
+
+        if (algorithm == SignatureAlgorithm.HS512) {
+            return new TokenKey(id, hmacKey(env.getRequiredProperty(prefix + "secret")), activeFromInstant);
+        }
+        if (algorithm.isHmac() || algorithm == SignatureAlgorithm.NONE) {
+            throw new IllegalStateException("Unsupported algorithm " + algorithm + " for key " + id + ", secrets are only used with HS512");
+        }
+        KeyPair keyPair = keyPair(algorithm, env.getRequiredProperty(prefix + "private-key"), env.getRequiredProperty(prefix + "public-key"));
+        return new TokenKey(id, keyPair, algorithm, activeFromInstant);
+    }
+
+    private static Key hmacKey(String secret) {
+        return Keys.hmacShaKeyFor(Decoders.BASE64.decode(secret));
+    }
+
+    private static KeyPair keyPair(SignatureAlgorithm algorithm, String privateKey, String publicKey) {
+        try {
+            KeyFactory keyFactory = KeyFactory.getInstance(algorithm.isEllipticCurve() ? "EC" : "RSA");
+            return new KeyPair(
+                    keyFactory.generatePublic(new X509EncodedKeySpec(Decoders.BASE64.decode(publicKey))),
+                    keyFactory.generatePrivate(new PKCS8EncodedKeySpec(Decoders.BASE64.decode(privateKey))));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Invalid " + algorithm + " key pair", e);
+        }
     }
 }
@@ -0,0 +1,17 @@
+package com.tesis.config;
+
+import com.tesis.utils.ThrottledLogger;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Reports the suppressed repeated warnings even when the warning stops happening
+ */
+@Component
+public class ThrottledLogFlusher {
+
+    @Scheduled(fixedDelayString = "${logging.throttle.flush-interval:60000}")
+    public void flush() {
+        ThrottledLogger.flushAll();
+    }
+}
@@ -0,0 +1,90 @@
+package com.tesis.config;
+
+import com.tesis.utils.TokenDigests;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * ACCESS_TOKENS and RECOVERY_TOKENS used to store the whole token in a unique "token" column, now they store its digest
+ * in "token_hash". Hibernate adds the new column, this runner fills it for the existing rows and drops the old one.
+ * It does nothing once the old column is gone. Instances starting together on the new release migrate one at a time,
+ * the column is checked again under a lock so only the first one does the work.
+ */
+@Slf4j
+@Component
+public class TokenHashMigration implements ApplicationRunner {
+
+    static final String[] TABLES = {"access_tokens", "recovery_tokens"};
+    // Clave del advisory lock, cualquier numero que no usen otros locks de la db
+    static final long LOCK_KEY = 0x746f6b656e5f68L;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    @Autowired
+    public TokenHashMigration(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+
+        if (Arrays.stream(TABLES).noneMatch(table -> hasColumn(table, "token"))) {
+            return;
+        }
+
+        transactionTemplate.execute(status -> {
+            lock();
+            for (String table : TABLES) {
+                // Otra instancia pudo haber migrado la tabla mientras se esperaba el lock
+                if (hasColumn(table, "token")) {
+                    migrate(table);
+                }
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Transaction scoped lock shared by every instance, released on commit or rollback. Only PostgreSQL has advisory
+     * locks, other databases (H2 in tests) run a single instance
+     */
+    private void lock() {
+
+        String database = jdbcTemplate.execute((ConnectionCallback<String>) connection -> connection.getMetaData().getDatabaseProductName());
+        if ("PostgreSQL".equalsIgnoreCase(database)) {
+            jdbcTemplate.query("select pg_advisory_xact_lock(?)", rs -> null, LOCK_KEY);
+        }
+    }
+
+    private void migrate(String table) {
+
+        List<Object[]> rows = jdbcTemplate.query(
+                String.format("select user_id, token from %s", table),
+                (rs, rowNum) -> new Object[]{TokenDigests.digest(rs.getString("token")), rs.getLong("user_id")});
+
+        jdbcTemplate.batchUpdate(String.format("update %s set token_hash = ? where user_id = ?", table), rows);
+        jdbcTemplate.execute(String.format("alter table %s drop column token", table));
+        jdbcTemplate.execute(String.format("alter table %s alter column token_hash set not null", table));
+
+        logger.info("[message: Token digests migrated] [table: {}] [rows: {}]", table, rows.size());
+    }
+
+    private boolean hasColumn(String table, String column) {
+        Integer count = jdbcTemplate.queryForObject(
+                "select count(*) from information_schema.columns where lower(table_name) = ? and lower(column_name) = ?",
+                Integer.class, table, column);
+        return count != null && count > 0;
+    }
+}
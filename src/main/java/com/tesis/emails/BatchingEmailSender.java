@@ -0,0 +1,185 @@
+package com.tesis.emails;
+
+import com.tesis.emails.models.EmailModel;
+import com.tesis.emails.models.MailAddress;
+import com.tesis.emails.models.Personalization;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Sends many emails with as few /mail/send requests as possible. Template emails sharing template, sender, reply to
+ * and subject only differ in their personalizations, so they are merged into one request with up to the provider
+ * limit of personalizations. Emails that can not be merged (e.g. with inline content) are sent alone.
+ * Requests are sent on the non blocking client, all of them at once.
+ */
+@Slf4j
+@Component
+public class BatchingEmailSender {
+
+    private final SendGridClient mailClient;
+    private final int maxPersonalizations;
+
+    @Autowired
+    public BatchingEmailSender(SendGridClient mailClient, @Value("${email.sendgrid.max-personalizations:1000}") int maxPersonalizations) {
+        this.mailClient = mailClient;
+        this.maxPersonalizations = maxPersonalizations;
+    }
+
+    /**
+     * @param emails emails to send, by a key of the caller
+     * @param <K>
+     * @return the error of every email that could not be sent, by its key
+     */
+    public <K> Map<K, Exception> send(Map<K, EmailModel> emails) {
+        return sendAsync(emails).join();
+    }
+
+    /**
+     * Same as {@link #send(Map)} without waiting for the provider
+     * @param emails emails to send, by a key of the caller
+     * @param <K>
+     * @return completed with the error of every email that could not be sent, by its key, once every request finished
+     */
+    public <K> CompletableFuture<Map<K, Exception>> sendAsync(Map<K, EmailModel> emails) {
+
+        Map<K, Exception> errors = new LinkedHashMap<>();
+        List<CompletableFuture<Void>> requests = new ArrayList<>();
+        for (List<Map.Entry<K, EmailModel>> batch : batch(emails)) {
+            requests.add(mailClient.sendMailAsync(merge(batch))
+                    .handle((ok, error) -> {
+                        Exception cause = unwrap(error);
+                        if (cause instanceof ResponseStatusException && batch.size() > 1
+                                && ((ResponseStatusException) cause).getStatus().is4xxClientError()) {
+                            // Una personalization invalida rechaza todo el request, se reenvian por separado para aislarla
+                            logger.warn("[message: Batched email rejected, sending its {} emails one by one] [error: {}]", batch.size(), ((ResponseStatusException) cause).getReason());
+                            return sendOneByOne(batch, errors);
+                        }
+                        if (cause != null) {
+                            synchronized (errors) {
+                                batch.forEach(entry -> errors.put(entry.getKey(), cause));
+                            }
+                        }
+                        return CompletableFuture.<Void>completedFuture(null);
+                    })
+                    .thenCompose(future -> future));
+        }
+
+        return CompletableFuture.allOf(requests.toArray(new CompletableFuture[0]))
+                .thenApply(done -> errors);
+    }
+
+    /**
+     * @return false while the provider is known to be down, so sending would fail right away
+     */
+    public boolean isAvailable() {
+        return mailClient.isAvailable();
+    }
+
+    private <K> CompletableFuture<Void> sendOneByOne(List<Map.Entry<K, EmailModel>> batch, Map<K, Exception> errors) {
+        return CompletableFuture.allOf(batch.stream()
+                .map(entry -> mailClient.sendMailAsync(entry.getValue())
+                        .whenComplete((ok, error) -> {
+                            if (error != null) {
+                                synchronized (errors) {
+                                    errors.put(entry.getKey(), unwrap(error));
+                                }
+                            }
+                        })
+                        .exceptionally(error -> null))
+                .toArray(CompletableFuture[]::new));
+    }
+
+    private static Exception unwrap(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause == null || cause instanceof Exception) {
+            return (Exception) cause;
+        }
+        return new CompletionException(cause);
+    }
+
+    /**
+     * Group the emails that can share a request, without going over the personalizations limit
+     */
+    private <K> List<List<Map.Entry<K, EmailModel>>> batch(Map<K, EmailModel> emails) {
+
+        Map<List<Object>, List<Map.Entry<K, EmailModel>>> open = new LinkedHashMap<>();
+        Map<List<Object>, Integer> openPersonalizations = new LinkedHashMap<>();
+        List<List<Map.Entry<K, EmailModel>>> batches = new ArrayList<>();
+
+        for (Map.Entry<K, EmailModel> entry : emails.entrySet()) {
+            EmailModel email = entry.getValue();
+            int personalizations = email.getPersonalizations() != null ? email.getPersonalizations().size() : 0;
+            if (!isMergeable(email) || personalizations >= maxPersonalizations) {
+                batches.add(Collections.singletonList(entry));
+                continue;
+            }
+
+            List<Object> key = mergeKey(email);
+            List<Map.Entry<K, EmailModel>> batch = open.get(key);
+            if (batch != null && openPersonalizations.get(key) + personalizations > maxPersonalizations) {
+                batches.add(batch);
+                batch = null;
+            }
+            if (batch == null) {
+                batch = new ArrayList<>();
+                open.put(key, batch);
+                openPersonalizations.put(key, 0);
+            }
+            batch.add(entry);
+            openPersonalizations.merge(key, personalizations, Integer::sum);
+        }
+
+        batches.addAll(open.values());
+        return batches;
+    }
+
+    private static boolean isMergeable(EmailModel email) {
+        return email.getTemplateId() != null
+                && (email.getContent() == null || email.getContent().isEmpty())
+                && email.getPersonalizations() != null && !email.getPersonalizations().isEmpty();
+    }
+
+    private static List<Object> mergeKey(EmailModel email) {
+        return Arrays.asList(email.getTemplateId(), address(email.getFrom()), address(email.getReplyTo()), email.getSubject());
+    }
+
+    private static List<String> address(MailAddress address) {
+        return address == null ? null : Arrays.asList(address.getEmail(), address.getName());
+    }
+
+    private static <K> EmailModel merge(List<Map.Entry<K, EmailModel>> batch) {
+
+        EmailModel first = batch.get(0).getValue();
+        if (batch.size() == 1) {
+            return first;
+        }
+
+        List<Personalization> personalizations = new ArrayList<>();
+        batch.stream()
+                .map(entry -> entry.getValue().getPersonalizations())
+                .filter(Objects::nonNull)
+                .forEach(personalizations::addAll);
+
+        return EmailModel.builder()
+                .personalizations(personalizations)
+                .from(first.getFrom())
+                .replyTo(first.getReplyTo())
+                .subject(first.getSubject())
+                .content(first.getContent())
+                .templateId(first.getTemplateId())
+                .build();
+    }
+}
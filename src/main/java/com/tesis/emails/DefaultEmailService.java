@@ -1,28 +1,29 @@
 package com.tesis.emails;
 
+import com.tesis.emails.models.EmailModel;
+import com.tesis.emails.outbox.EmailOutbox;
 import com.tesis.emails.templates.EmailTemplate;
 import com.tesis.emails.templates.RecoveryEmailTemplate;
 import com.tesis.emails.templates.WelcomeEmailTemplate;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import com.tesis.utils.ServerTiming;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @Service
 public class DefaultEmailService implements EmailService {
 
-    private final Logger logger = LoggerFactory.getLogger(DefaultEmailService.class);
-    private final SendGridClient mailClient;
+    private final EmailOutbox emailOutbox;
     private final String senderMail;
     private final String recoveryUrl;
     private final String welcomeUrl;
 
     @Autowired
-    public DefaultEmailService(SendGridClient mailClient, @Value("${email.sender-address}") String senderMail, @Value("${email.recovery.url}") String recoveryUrl, @Value("${email.welcome.url}") String welcomeUrl) {
-        this.mailClient = mailClient;
+    public DefaultEmailService(EmailOutbox emailOutbox, @Value("${email.sender-address}") String senderMail, @Value("${email.recovery.url}") String recoveryUrl, @Value("${email.welcome.url}") String welcomeUrl) {
+        this.emailOutbox = emailOutbox;
         this.senderMail = senderMail;
         this.recoveryUrl = recoveryUrl;
         this.welcomeUrl = welcomeUrl;
@@ -30,6 +31,25 @@ public class DefaultEmailService implements EmailService {
 
     @Override
     public void sendRecoveryPasswordEmail(List<String> receivers, String recoveryToken) {
+        ServerTiming.time(ServerTiming.EMAIL, () -> emailOutbox.enqueue(recoveryEmail(receivers, recoveryToken), recoveryToken));
+    }
+
+    @Override
+    public void sendWelcomePasswordEmail(List<String> receivers, String userName, String welcomeToken) {
+        ServerTiming.time(ServerTiming.EMAIL, () -> emailOutbox.enqueue(welcomeEmail(receivers, userName, welcomeToken), welcomeToken));
+    }
+
+    @Override
+    public CompletableFuture<Void> sendRecoveryPasswordEmailAsync(List<String> receivers, String recoveryToken) {
+        return ServerTiming.time(ServerTiming.EMAIL, () -> emailOutbox.enqueueAsync(recoveryEmail(receivers, recoveryToken), recoveryToken));
+    }
+
+    @Override
+    public CompletableFuture<Void> sendWelcomePasswordEmailAsync(List<String> receivers, String userName, String welcomeToken) {
+        return ServerTiming.time(ServerTiming.EMAIL, () -> emailOutbox.enqueueAsync(welcomeEmail(receivers, userName, welcomeToken), welcomeToken));
+    }
+
+    private EmailModel recoveryEmail(List<String> receivers, String recoveryToken) {
 
         EmailTemplate recoveryTemplate = RecoveryEmailTemplate.builder()
                 .senderMail(senderMail)
@@ -37,27 +57,18 @@ public class DefaultEmailService implements EmailService {
                 .recoveryLink(recoveryUrl + recoveryToken)
                 .build();
 
-        mailClient.sendMail(recoveryTemplate.get());
+        return recoveryTemplate.get();
     }
 
-    @Override
-    public void sendWelcomePasswordEmail(List<String> receivers, String userName, String welcomeToken) {
-        try {
-            EmailTemplate welcomeTemplate = WelcomeEmailTemplate.builder()
-                    .senderMail(senderMail)
-                    .receivers(receivers)
-                    .userName(userName)
-                    .welcomeToken(welcomeUrl + welcomeToken)
-                    .build();
-
-            mailClient.sendMail(welcomeTemplate.get());
-        } catch (Exception e) {
-            logger.error("Error al enviar email de bienvenida. [message: {}] [cause: {}] [stackTrace: {}]",
-                    e.getMessage(),
-                    e.getCause(),
-                    e.getStackTrace());
-            throw e;
-        }
-    }
+    private EmailModel welcomeEmail(List<String> receivers, String userName, String welcomeToken) {
 
+        EmailTemplate welcomeTemplate = WelcomeEmailTemplate.builder()
+                .senderMail(senderMail)
+                .receivers(receivers)
+                .userName(userName)
+                .welcomeToken(welcomeUrl + welcomeToken)
+                .build();
+
+        return welcomeTemplate.get();
+    }
 }
@@ -1,21 +1,41 @@
 package com.tesis.emails;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public interface EmailService {
 
     /**
-     * Send recovery password email with token
+     * Send recovery password email with token. It is queued in the outbox and delivered after the current transaction
+     * commits
      * @param receivers
      * @param recoveryToken
      */
     void sendRecoveryPasswordEmail(List<String> receivers, String recoveryToken);
 
     /**
-     * Send welcome email with token to set password
+     * Send welcome email with token to set password. It is queued in the outbox and delivered after the current
+     * transaction commits
      * @param receivers
      * @param userName
      * @param welcomeToken
      */
     void sendWelcomePasswordEmail(List<String> receivers, String userName, String welcomeToken);
+
+    /**
+     * Same as {@link #sendRecoveryPasswordEmail(List, String)}, following the delivery
+     * @param receivers
+     * @param recoveryToken
+     * @return completed once the provider accepts the email
+     */
+    CompletableFuture<Void> sendRecoveryPasswordEmailAsync(List<String> receivers, String recoveryToken);
+
+    /**
+     * Same as {@link #sendWelcomePasswordEmail(List, String, String)}, following the delivery
+     * @param receivers
+     * @param userName
+     * @param welcomeToken
+     * @return completed once the provider accepts the email
+     */
+    CompletableFuture<Void> sendWelcomePasswordEmailAsync(List<String> receivers, String userName, String welcomeToken);
 }
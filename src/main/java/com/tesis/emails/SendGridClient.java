@@ -1,13 +1,24 @@
 package com.tesis.emails;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.tesis.emails.models.EmailModel;
 import com.tesis.emails.models.ErrorResponse;
 import com.tesis.exceptions.InternalServerErrorException;
+import com.tesis.exceptions.ServiceUnavailableException;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.retry.Retry;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import kong.unirest.HttpResponse;
+import kong.unirest.RequestBodyEntity;
 import kong.unirest.UnirestException;
 import kong.unirest.UnirestInstance;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
@@ -16,49 +27,202 @@ import org.springframework.stereotype.Component;
 import org.springframework.web.server.ResponseStatusException;
 
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import static com.tesis.config.ResilienceConfigs.SENDGRID;
 import static com.tesis.config.RestClientConfigs.VERY_SLOW;
 
+/**
+ * SendGrid v3 client. Transient failures (5xx, 429, connection errors) are retried with jittered exponential backoff,
+ * and a circuit breaker stops calling SendGrid while it keeps failing: calls fail right away with
+ * {@link ServiceUnavailableException} and the outbox keeps the emails for later.
+ */
 @Slf4j
 @Component
-public class SendGridClient {
+public class SendGridClient implements DisposableBean {
 
     private final UnirestInstance client;
     private final String apiSecretKey;
     private final String baseUrl;
     private ObjectMapper objectMapper;
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final MeterRegistry meterRegistry;
+    private final CircuitBreaker circuitBreaker;
+    private final Retry retry;
+    private final ScheduledExecutorService retryScheduler;
 
     @Autowired
-    public SendGridClient(@Qualifier(VERY_SLOW) UnirestInstance client, ObjectMapper objectMapper, @Value("${email.secret-key}") String apiSecretKey, @Value("${email.sendgrid-base-url}") String baseUrl) {
+    public SendGridClient(@Qualifier(VERY_SLOW) UnirestInstance client, ObjectMapper objectMapper, @Value("${email.secret-key}") String apiSecretKey, @Value("${email.sendgrid-base-url}") String baseUrl,
+                          MeterRegistry meterRegistry, @Qualifier(SENDGRID) CircuitBreaker circuitBreaker, @Qualifier(SENDGRID) Retry retry) {
         this.client = client;
         this.objectMapper = objectMapper;
         this.apiSecretKey = apiSecretKey;
         this.baseUrl = baseUrl;
+        this.meterRegistry = meterRegistry;
+        this.circuitBreaker = circuitBreaker;
+        this.retry = retry;
+        this.retryScheduler = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("sendgrid-retry-%d").setDaemon(true).build());
+
+        Gauge.builder("email.sendgrid.requests.outstanding", outstanding, AtomicInteger::get)
+                .description("Requests sent to SendGrid waiting for a response")
+                .register(meterRegistry);
     }
 
     public void sendMail(EmailModel emailModel) {
+        try {
+            Retry.decorateRunnable(retry, CircuitBreaker.decorateRunnable(circuitBreaker, () -> send(emailModel))).run();
+        } catch (CallNotPermittedException e) {
+            throw unavailable();
+        }
+    }
+
+    /**
+     * Same as {@link #sendMail(EmailModel)} on the non blocking transport: the calling thread only serializes the email,
+     * the exchange and the retries run on other threads
+     * @param emailModel
+     * @return completed once SendGrid accepts the email, or exceptionally with the same exceptions sendMail throws
+     */
+    public CompletableFuture<Void> sendMailAsync(EmailModel emailModel) {
+        return Retry.decorateCompletionStage(retry, retryScheduler,
+                CircuitBreaker.decorateCompletionStage(circuitBreaker, () -> sendAsync(emailModel)))
+                .get()
+                .toCompletableFuture()
+                .handle((ok, error) -> {
+                    Throwable cause = unwrap(error);
+                    if (cause instanceof CallNotPermittedException) {
+                        throw unavailable();
+                    }
+                    if (cause != null) {
+                        throw cause instanceof RuntimeException ? (RuntimeException) cause : new CompletionException(cause);
+                    }
+                    return null;
+                });
+    }
+
+    /**
+     * @return false while the circuit breaker is open, so calls would fail without reaching SendGrid
+     */
+    public boolean isAvailable() {
+        CircuitBreaker.State state = circuitBreaker.getState();
+        return state != CircuitBreaker.State.OPEN && state != CircuitBreaker.State.FORCED_OPEN;
+    }
+
+    /**
+     * @param error
+     * @return true if the error may not happen again when the same email is retried
+     */
+    public static boolean isTransient(Throwable error) {
+        Throwable cause = unwrap(error);
+        if (cause instanceof ResponseStatusException) {
+            HttpStatus status = ((ResponseStatusException) cause).getStatus();
+            return status.is5xxServerError() || status == HttpStatus.TOO_MANY_REQUESTS;
+        }
+        return false;
+    }
+
+    @Override
+    public void destroy() {
+        retryScheduler.shutdownNow();
+    }
+
+    private void send(EmailModel emailModel) {
+
+        Timer.Sample sample = Timer.start(meterRegistry);
+        outstanding.incrementAndGet();
+        try {
+            checkResponse(prepare(emailModel).asEmpty());
+            record(sample, "sync", null);
+        } catch (UnirestException e) {
+            logger.error("[message: Connection error sending mail] [error: {}] [stacktrace: {}]", e, e.getStackTrace());
+            record(sample, "sync", e);
+            throw new InternalServerErrorException("internal error");
+        } catch (RuntimeException e) {
+            record(sample, "sync", e);
+            throw e;
+        } finally {
+            outstanding.decrementAndGet();
+        }
+    }
 
+    private CompletableFuture<Void> sendAsync(EmailModel emailModel) {
+
+        Timer.Sample sample = Timer.start(meterRegistry);
+        RequestBodyEntity request;
         try {
+            request = prepare(emailModel);
+        } catch (RuntimeException e) {
+            record(sample, "async", e);
+            CompletableFuture<Void> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+
+        outstanding.incrementAndGet();
+        return request.asEmptyAsync()
+                .handle((response, error) -> {
+                    outstanding.decrementAndGet();
+                    Throwable cause = unwrap(error);
+                    try {
+                        if (cause != null) {
+                            logger.error("[message: Connection error sending mail] [error: {}]", cause.toString());
+                            throw new InternalServerErrorException("internal error");
+                        }
+                        checkResponse(response);
+                        record(sample, "async", null);
+                        return null;
+                    } catch (RuntimeException e) {
+                        record(sample, "async", e);
+                        throw e;
+                    }
+                });
+    }
 
-            HttpResponse response = client
+    private RequestBodyEntity prepare(EmailModel emailModel) {
+        try {
+            return client
                     .post(String.format("%s%s", baseUrl, "/mail/send"))
                     .header("Authorization", "Bearer " + apiSecretKey)
                     .header("Content-type", "application/json")
-                    .body(objectMapper.writeValueAsString(emailModel))
-                    .asEmpty();
+                    .body(objectMapper.writeValueAsString(emailModel));
+        } catch (JsonProcessingException e) {
+            logger.error("[message: Could not parse mail to string] [error: {}] [stacktrace: {}]", e, e.getStackTrace());
+            throw new InternalServerErrorException("internal error");
+        }
+    }
 
-            if (!response.isSuccess()) {
-                ErrorResponse errorResponse = (ErrorResponse) response.mapError(ErrorResponse.class);
-                logger.error("[message: Invalid response sending mail] [error: {}]", objectMapper.writeValueAsString(errorResponse));
-                throw new ResponseStatusException(HttpStatus.resolve(response.getStatus()), objectMapper.writeValueAsString(errorResponse));
-            }
+    private void checkResponse(HttpResponse response) {
 
-        } catch (UnirestException e) {
-            logger.error("[message: Connection error sending mail] [error: {}] [stacktrace: {}]", e, e.getStackTrace());
-            throw new InternalServerErrorException("internal error");
+        if (response.isSuccess()) {
+            return;
+        }
+
+        try {
+            ErrorResponse errorResponse = (ErrorResponse) response.mapError(ErrorResponse.class);
+            logger.error("[message: Invalid response sending mail] [error: {}]", objectMapper.writeValueAsString(errorResponse));
+            throw new ResponseStatusException(HttpStatus.resolve(response.getStatus()), objectMapper.writeValueAsString(errorResponse));
         } catch (IOException e) {
             logger.error("[message: Could not parse mail to string] [error: {}] [stacktrace: {}]", e, e.getStackTrace());
             throw new InternalServerErrorException("internal error");
         }
     }
-}
\ No newline at end of file
+
+    private ServiceUnavailableException unavailable() {
+        return new ServiceUnavailableException("email provider unavailable");
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    private void record(Timer.Sample sample, String mode, Exception error) {
+        sample.stop(Timer.builder("email.sendgrid.requests")
+                .tag("mode", mode)
+                .tag("result", error == null ? "success" : "error")
+                .register(meterRegistry));
+    }
+}
@@ -0,0 +1,138 @@
+package com.tesis.emails.outbox;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tesis.emails.models.EmailModel;
+import com.tesis.exceptions.InternalServerErrorException;
+import com.tesis.utils.TokenCodec;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Entry point of the outbox: emails are stored with the caller transaction, so they are only sent if it commits, and
+ * the caller never waits for the provider.
+ * Tokens in the links of an email (recovery, welcome) are not stored usable: the outbox keeps them without their
+ * signature, which the dispatcher computes again when sending
+ */
+@Slf4j
+@Component
+public class EmailOutbox {
+
+    /**
+     * Stored in the payload in place of the link token
+     */
+    public static final String LINK_TOKEN = "{link_token}";
+
+    private final OutboxEmailRepository outboxEmailRepository;
+    private final EmailOutboxDispatcher dispatcher;
+    private final ObjectMapper objectMapper;
+    private final TokenCodec tokenCodec;
+
+    @Autowired
+    public EmailOutbox(OutboxEmailRepository outboxEmailRepository, EmailOutboxDispatcher dispatcher, ObjectMapper objectMapper, TokenCodec tokenCodec) {
+        this.outboxEmailRepository = outboxEmailRepository;
+        this.dispatcher = dispatcher;
+        this.objectMapper = objectMapper;
+        this.tokenCodec = tokenCodec;
+    }
+
+    /**
+     * Store the email for delivery, it is dispatched right after the current transaction commits
+     * @param emailModel
+     * @return
+     */
+    public OutboxEmail enqueue(EmailModel emailModel) {
+        return enqueue(emailModel, null);
+    }
+
+    /**
+     * Same as {@link #enqueue(EmailModel)} for an email whose links carry a token
+     * @param emailModel
+     * @param linkToken token issued by this service, nullable
+     * @return
+     */
+    public OutboxEmail enqueue(EmailModel emailModel, String linkToken) {
+
+        OutboxEmail outboxEmail = store(emailModel, linkToken);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    dispatcher.trigger();
+                }
+            });
+        } else {
+            dispatcher.trigger();
+        }
+
+        return outboxEmail;
+    }
+
+    /**
+     * Same as {@link #enqueue(EmailModel)}, following the delivery
+     * @param emailModel
+     * @return completed once the provider accepts the email, or exceptionally if it is given up or its transaction is
+     * rolled back
+     */
+    public CompletableFuture<Void> enqueueAsync(EmailModel emailModel) {
+        return enqueueAsync(emailModel, null);
+    }
+
+    /**
+     * Same as {@link #enqueue(EmailModel, String)}, following the delivery
+     * @param emailModel
+     * @param linkToken token issued by this service, nullable
+     * @return completed once the provider accepts the email, or exceptionally if it is given up or its transaction is
+     * rolled back
+     */
+    public CompletableFuture<Void> enqueueAsync(EmailModel emailModel, String linkToken) {
+
+        OutboxEmail outboxEmail = store(emailModel, linkToken);
+        CompletableFuture<Void> delivery = dispatcher.track(outboxEmail.getId());
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status == STATUS_COMMITTED) {
+                        dispatcher.trigger();
+                    } else {
+                        dispatcher.untrack(outboxEmail.getId(), new InternalServerErrorException("email discarded with its transaction"));
+                    }
+                }
+            });
+        } else {
+            dispatcher.trigger();
+        }
+
+        return delivery;
+    }
+
+    private OutboxEmail store(EmailModel emailModel, String linkToken) {
+
+        LocalDateTime now = LocalDateTime.now();
+        OutboxEmail outboxEmail;
+        try {
+            // Los caracteres de un jws no se escapan en json, el token aparece tal cual en el payload
+            String payload = objectMapper.writeValueAsString(emailModel);
+            outboxEmail = outboxEmailRepository.save(OutboxEmail.builder()
+                    .status(OutboxEmailStatus.PENDING)
+                    .templateId(emailModel.getTemplateId())
+                    .payload(linkToken != null ? payload.replace(linkToken, LINK_TOKEN) : payload)
+                    .linkToken(linkToken != null ? tokenCodec.stripSignature(linkToken) : null)
+                    .nextAttemptAt(now)
+                    .createdAt(now)
+                    .build());
+        } catch (JsonProcessingException e) {
+            logger.error("[message: Could not parse mail to string] [error: {}]", e.getMessage());
+            throw new InternalServerErrorException("internal error", e);
+        }
+
+        return outboxEmail;
+    }
+}
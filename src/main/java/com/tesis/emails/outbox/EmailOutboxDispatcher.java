@@ -0,0 +1,342 @@
+package com.tesis.emails.outbox;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.tesis.emails.BatchingEmailSender;
+import com.tesis.emails.models.EmailModel;
+import com.tesis.exceptions.InternalServerErrorException;
+import com.tesis.exceptions.ServiceUnavailableException;
+import com.tesis.exceptions.UnauthorizedException;
+import com.tesis.recovery.RecoveryRepository;
+import com.tesis.recovery.RecoveryToken;
+import com.tesis.utils.TokenCodec;
+import io.jsonwebtoken.JwtException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Delivers the emails of the outbox in background, in batches. Each batch is claimed in a short transaction (pushing
+ * its next attempt forward, so a crashed dispatcher only delays it), sent without holding a db connection, and then
+ * deleted or rescheduled with exponential backoff.
+ * New emails are not dispatched one by one: a dispatch starts once a full batch was queued, or after a short linger,
+ * so bursts (e.g. a fleet of users created at once) share the same provider requests.
+ * While the provider is down (its circuit breaker is open) nothing is claimed, and emails that found it down do not
+ * spend an attempt.
+ * Link tokens are signed again only in memory, right before the email is sent, and only if the result is the recovery
+ * token still active for its user. Anything else was not written by {@link EmailOutbox} and the email is given up.
+ */
+@Slf4j
+@Component
+public class EmailOutboxDispatcher implements DisposableBean {
+
+    private static final long MAX_BACKOFF_FACTOR = 64;
+    // Entregas que no se resuelven en este tiempo (ej. las envio otra instancia) dejan de seguirse
+    private static final Duration DELIVERY_TRACKING = Duration.ofHours(1);
+
+    private final OutboxEmailRepository outboxEmailRepository;
+    private final BatchingEmailSender mailSender;
+    private final ObjectMapper objectMapper;
+    private final TokenCodec tokenCodec;
+    private final RecoveryRepository recoveryRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final int maxAttempts;
+    private final Duration retryDelay;
+    private final Duration claimTimeout;
+    private final Duration linger;
+    private final ScheduledExecutorService executor;
+    private final AtomicInteger enqueued = new AtomicInteger();
+    private ScheduledFuture<?> nextDispatch;
+    private final AtomicLong backlog = new AtomicLong();
+    private final Cache<Long, CompletableFuture<Void>> deliveries;
+    private final Timer deliveryLatency;
+    private final Counter sent;
+    private final Counter retried;
+    private final Counter failed;
+
+    @Autowired
+    public EmailOutboxDispatcher(OutboxEmailRepository outboxEmailRepository,
+                                 BatchingEmailSender mailSender,
+                                 ObjectMapper objectMapper,
+                                 TokenCodec tokenCodec,
+                                 RecoveryRepository recoveryRepository,
+                                 PlatformTransactionManager transactionManager,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${email.outbox.batch-size:500}") int batchSize,
+                                 @Value("${email.outbox.max-attempts:8}") int maxAttempts,
+                                 @Value("${email.outbox.retry-delay:30s}") Duration retryDelay,
+                                 @Value("${email.outbox.claim-timeout:5m}") Duration claimTimeout,
+                                 @Value("${email.outbox.linger:500ms}") Duration linger) {
+        this.outboxEmailRepository = outboxEmailRepository;
+        this.mailSender = mailSender;
+        this.objectMapper = objectMapper;
+        this.tokenCodec = tokenCodec;
+        this.recoveryRepository = recoveryRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.retryDelay = retryDelay;
+        this.claimTimeout = claimTimeout;
+        this.linger = linger;
+        this.executor = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("email-outbox-%d").setDaemon(true).build());
+
+        Gauge.builder("email.outbox.pending", backlog, AtomicLong::get)
+                .description("Emails waiting for delivery, as of the last dispatch")
+                .register(meterRegistry);
+        this.deliveries = CacheBuilder.newBuilder()
+                .expireAfterWrite(DELIVERY_TRACKING)
+                .<Long, CompletableFuture<Void>>removalListener(removal -> {
+                    if (removal.getCause() == RemovalCause.EXPIRED) {
+                        removal.getValue().completeExceptionally(new InternalServerErrorException("email delivery not confirmed"));
+                    }
+                })
+                .build();
+        this.deliveryLatency = Timer.builder("email.outbox.delivery")
+                .description("Time from enqueue until the provider accepted the email")
+                .register(meterRegistry);
+        this.sent = Counter.builder("email.outbox.dispatched").tag("result", "sent").register(meterRegistry);
+        this.retried = Counter.builder("email.outbox.dispatched").tag("result", "retry").register(meterRegistry);
+        this.failed = Counter.builder("email.outbox.dispatched").tag("result", "failed").register(meterRegistry);
+    }
+
+    /**
+     * Notify that an email was committed to the outbox. It is dispatched once a full batch is waiting, or after the
+     * linger at most
+     */
+    public void trigger() {
+        schedule(enqueued.incrementAndGet() >= batchSize ? 0 : linger.toMillis());
+    }
+
+    /**
+     * Picks up retries and emails left behind by other instances or a restart
+     */
+    @Scheduled(fixedDelayString = "${email.outbox.poll-interval:10000}")
+    public void poll() {
+        schedule(0);
+    }
+
+    /**
+     * Send every email that is due, batch by batch
+     * @return number of emails accepted by the provider
+     */
+    public int dispatchPending() {
+
+        if (!mailSender.isAvailable()) {
+            logger.warn("[message: Email provider unavailable, outbox dispatch postponed]");
+            backlog.set(outboxEmailRepository.countByStatus(OutboxEmailStatus.PENDING));
+            return 0;
+        }
+
+        int delivered = 0;
+        List<OutboxEmail> batch;
+        do {
+            batch = claim();
+            delivered += send(batch);
+        } while (batch.size() == batchSize && mailSender.isAvailable());
+
+        backlog.set(outboxEmailRepository.countByStatus(OutboxEmailStatus.PENDING));
+        return delivered;
+    }
+
+    /**
+     * Follow the delivery of an email enqueued by this instance
+     * @param outboxEmailId
+     * @return completed once the provider accepts the email, or exceptionally if it is given up
+     */
+    public CompletableFuture<Void> track(Long outboxEmailId) {
+        CompletableFuture<Void> delivery = new CompletableFuture<>();
+        deliveries.put(outboxEmailId, delivery);
+        return delivery;
+    }
+
+    /**
+     * Stop following a delivery that will never happen, e.g. the email was rolled back with its transaction
+     */
+    public void untrack(Long outboxEmailId, Exception reason) {
+        CompletableFuture<Void> delivery = deliveries.asMap().remove(outboxEmailId);
+        if (delivery != null) {
+            delivery.completeExceptionally(reason);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdown();
+    }
+
+    /**
+     * Schedule a dispatch on the background thread, unless one is already scheduled to start earlier
+     */
+    private synchronized void schedule(long delayMillis) {
+
+        if (nextDispatch != null && (nextDispatch.getDelay(TimeUnit.MILLISECONDS) <= delayMillis || !nextDispatch.cancel(false))) {
+            return;
+        }
+
+        nextDispatch = executor.schedule(() -> {
+            // Lo que se encole desde aca en adelante necesita otro dispatch
+            synchronized (this) {
+                nextDispatch = null;
+            }
+            enqueued.set(0);
+            try {
+                dispatchPending();
+            } catch (Exception e) {
+                logger.error("[message: Email outbox dispatch failed] [error: {}]", e.getMessage());
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private List<OutboxEmail> claim() {
+        return transactionTemplate.execute(status -> {
+            LocalDateTime now = LocalDateTime.now();
+            List<OutboxEmail> batch = outboxEmailRepository.findByStatusAndNextAttemptAtLessThanEqualOrderByIdAsc(
+                    OutboxEmailStatus.PENDING, now, PageRequest.of(0, batchSize));
+
+            // Si el dispatcher se cae mientras envia, el batch vuelve a estar disponible al vencer el claim
+            batch.forEach(outboxEmail -> {
+                outboxEmail.setAttempts(outboxEmail.getAttempts() + 1);
+                outboxEmail.setNextAttemptAt(now.plus(claimTimeout));
+            });
+            return batch;
+        });
+    }
+
+    private int send(List<OutboxEmail> batch) {
+
+        if (batch.isEmpty()) {
+            return 0;
+        }
+
+        Map<OutboxEmail, Exception> errors = new LinkedHashMap<>();
+        Map<OutboxEmail, EmailModel> emails = new LinkedHashMap<>();
+        Set<OutboxEmail> rejected = new HashSet<>();
+        for (OutboxEmail outboxEmail : batch) {
+            try {
+                emails.put(outboxEmail, objectMapper.readValue(payload(outboxEmail), EmailModel.class));
+            } catch (JwtException | UnauthorizedException e) {
+                // Un link token que no es el que guardo el outbox no se reintenta
+                logger.error("[message: Rejected link token of email {}] [error: {}]", outboxEmail.getId(), e.getMessage());
+                rejected.add(outboxEmail);
+                errors.put(outboxEmail, e);
+            } catch (Exception e) {
+                errors.put(outboxEmail, e);
+            }
+        }
+        errors.putAll(mailSender.send(emails));
+
+        List<Long> delivered = new ArrayList<>(batch.size());
+        List<OutboxEmail> undelivered = new ArrayList<>(errors.size());
+        List<OutboxEmail> postponed = new ArrayList<>();
+        for (OutboxEmail outboxEmail : batch) {
+            Exception error = errors.get(outboxEmail);
+            if (error instanceof ServiceUnavailableException) {
+                // No llego al proveedor (circuit breaker abierto), se devuelve el intento y queda para el proximo poll
+                outboxEmail.setAttempts(outboxEmail.getAttempts() - 1);
+                outboxEmail.setNextAttemptAt(LocalDateTime.now());
+                postponed.add(outboxEmail);
+            } else if (error == null) {
+                delivered.add(outboxEmail.getId());
+                if (outboxEmail.getCreatedAt() != null) {
+                    deliveryLatency.record(Duration.between(outboxEmail.getCreatedAt(), LocalDateTime.now()));
+                }
+            } else {
+                outboxEmail.setLastError(StringUtils.abbreviate(error.getMessage(), 1000));
+                undelivered.add(outboxEmail);
+            }
+        }
+
+        complete(delivered, undelivered, postponed, rejected);
+        return delivered.size();
+    }
+
+    private String payload(OutboxEmail outboxEmail) {
+        if (outboxEmail.getLinkToken() == null) {
+            return outboxEmail.getPayload();
+        }
+        return outboxEmail.getPayload().replace(EmailOutbox.LINK_TOKEN, linkToken(outboxEmail.getLinkToken()));
+    }
+
+    /**
+     * Sign the stored link token again, only if it is the recovery token still active for its user
+     * @param unsignedToken
+     * @return
+     * @throws UnauthorizedException if it is not the active recovery token, e.g. a row written outside the outbox
+     */
+    private String linkToken(String unsignedToken) throws JwtException, UnauthorizedException {
+
+        String token = tokenCodec.restoreSignature(unsignedToken, RecoveryToken.TOKEN_TYPE);
+        Long userId = tokenCodec.parse(token).getUserId();
+        recoveryRepository.findById(userId)
+                .filter(recoveryToken -> recoveryToken.matches(token))
+                .orElseThrow(() -> new UnauthorizedException("Link token is not the active recovery token of user " + userId));
+
+        return token;
+    }
+
+    private void complete(List<Long> delivered, List<OutboxEmail> undelivered, List<OutboxEmail> postponed, Set<OutboxEmail> rejected) {
+
+        LocalDateTime now = LocalDateTime.now();
+        for (OutboxEmail outboxEmail : undelivered) {
+            if (outboxEmail.getAttempts() >= maxAttempts || rejected.contains(outboxEmail)) {
+                outboxEmail.setStatus(OutboxEmailStatus.FAILED);
+                failed.increment();
+                untrack(outboxEmail.getId(), new InternalServerErrorException(outboxEmail.getLastError()));
+                logger.error("[message: Giving up on email {} after {} attempts] [error: {}]", outboxEmail.getId(), outboxEmail.getAttempts(), outboxEmail.getLastError());
+            } else {
+                long factor = Math.min(1L << (outboxEmail.getAttempts() - 1), MAX_BACKOFF_FACTOR);
+                outboxEmail.setNextAttemptAt(now.plus(retryDelay.multipliedBy(factor)));
+                retried.increment();
+                logger.warn("[message: Could not send email {}, will retry] [attempt: {}] [error: {}]", outboxEmail.getId(), outboxEmail.getAttempts(), outboxEmail.getLastError());
+            }
+        }
+
+        transactionTemplate.execute(status -> {
+            if (!delivered.isEmpty()) {
+                outboxEmailRepository.deleteByIdIn(delivered);
+            }
+            outboxEmailRepository.saveAll(undelivered);
+            outboxEmailRepository.saveAll(postponed);
+            return null;
+        });
+        sent.increment(delivered.size());
+        delivered.forEach(id -> {
+            CompletableFuture<Void> delivery = deliveries.asMap().remove(id);
+            if (delivery != null) {
+                delivery.complete(null);
+            }
+        });
+    }
+}
@@ -0,0 +1,60 @@
+package com.tesis.emails.outbox;
+
+import lombok.*;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Email waiting to be delivered. It is written in the same transaction as the change that triggers it, and deleted
+ * once the provider accepts it.
+ */
+@Entity
+@Table(name = "EMAIL_OUTBOX", indexes = @Index(name = "email_outbox_due_idx", columnList = "status, next_attempt_at"))
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+@Builder
+public class OutboxEmail {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private OutboxEmailStatus status;
+
+    @Column(name = "template_id")
+    private String templateId;
+
+    /**
+     * The {@link com.tesis.emails.models.EmailModel} as sent to the provider, with {@link EmailOutbox#LINK_TOKEN} in
+     * place of the token of its links
+     */
+    @Column(nullable = false, length = 10000)
+    private String payload;
+
+    /**
+     * Token of the links of the email without its signature, it is signed again right before sending. Null if the
+     * email has no token
+     */
+    @Column(name = "link_token", length = 3000)
+    private String linkToken;
+
+    @Column(nullable = false)
+    private int attempts;
+
+    /**
+     * Not picked by the dispatcher before this moment. Also pushed forward while a dispatcher holds the email
+     */
+    @Column(name = "next_attempt_at", nullable = false)
+    private LocalDateTime nextAttemptAt;
+
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "last_error", length = 1000)
+    private String lastError;
+}
@@ -0,0 +1,32 @@
+package com.tesis.emails.outbox;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+
+import javax.persistence.LockModeType;
+import javax.persistence.QueryHint;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+public interface OutboxEmailRepository extends JpaRepository<OutboxEmail, Long> {
+
+    /**
+     * Oldest emails due for delivery, locked so two dispatchers never claim the same ones. Rows locked by another
+     * dispatcher are skipped where the dialect supports it
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "javax.persistence.lock.timeout", value = "-2"))
+    List<OutboxEmail> findByStatusAndNextAttemptAtLessThanEqualOrderByIdAsc(OutboxEmailStatus status, LocalDateTime now, Pageable pageable);
+
+    long countByStatus(OutboxEmailStatus status);
+
+    @Modifying
+    @Query("delete from OutboxEmail e where e.id in :ids")
+    int deleteByIdIn(@Param("ids") Collection<Long> ids);
+}
@@ -0,0 +1,10 @@
+package com.tesis.emails.outbox;
+
+public enum OutboxEmailStatus {
+
+    PENDING,
+    /**
+     * Gave up after too many attempts, kept for inspection
+     */
+    FAILED
+}
@@ -1,9 +1,8 @@
 package com.tesis.exceptions;
 
 import org.springframework.http.HttpStatus;
-import org.springframework.web.server.ResponseStatusException;
 
-public class BadRequestException extends ResponseStatusException {
+public class BadRequestException extends ClientErrorException {
 
     public BadRequestException(String reason) {
         super(HttpStatus.BAD_REQUEST, reason);
@@ -0,0 +1,32 @@
+package com.tesis.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * Expected 4xx outcome (bad token, missing privilege, unknown id). These are thrown on every rejected request, so the
+ * stack trace is never captured: it is the most expensive part of the exception and nobody reads it. A cause, if any,
+ * keeps its own.
+ */
+public abstract class ClientErrorException extends ResponseStatusException {
+
+    private static final StackTraceElement[] NO_STACK_TRACE = new StackTraceElement[0];
+
+    protected ClientErrorException(HttpStatus status, String reason) {
+        super(status, reason);
+    }
+
+    protected ClientErrorException(HttpStatus status, String reason, Throwable cause) {
+        super(status, reason, cause);
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+
+    @Override
+    public StackTraceElement[] getStackTrace() {
+        return NO_STACK_TRACE;
+    }
+}
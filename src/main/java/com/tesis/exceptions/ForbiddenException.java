@@ -1,9 +1,8 @@
 package com.tesis.exceptions;
 
 import org.springframework.http.HttpStatus;
-import org.springframework.web.server.ResponseStatusException;
 
-public class ForbiddenException extends ResponseStatusException {
+public class ForbiddenException extends ClientErrorException {
 
     public ForbiddenException(String reason) {
         super(HttpStatus.FORBIDDEN, reason);
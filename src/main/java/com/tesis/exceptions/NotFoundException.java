@@ -1,9 +1,8 @@
 package com.tesis.exceptions;
 
 import org.springframework.http.HttpStatus;
-import org.springframework.web.server.ResponseStatusException;
 
-public class NotFoundException extends ResponseStatusException {
+public class NotFoundException extends ClientErrorException {
 
     public NotFoundException(String reason) {
         super(HttpStatus.NOT_FOUND, reason);
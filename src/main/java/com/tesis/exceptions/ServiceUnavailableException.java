@@ -0,0 +1,15 @@
+package com.tesis.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+public class ServiceUnavailableException extends ResponseStatusException {
+
+    public ServiceUnavailableException(String reason) {
+        super(HttpStatus.SERVICE_UNAVAILABLE, reason);
+    }
+
+    public ServiceUnavailableException(String reason, Throwable cause) {
+        super(HttpStatus.SERVICE_UNAVAILABLE, reason, cause);
+    }
+}
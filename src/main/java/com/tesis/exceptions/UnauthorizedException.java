@@ -1,9 +1,8 @@
 package com.tesis.exceptions;
 
 import org.springframework.http.HttpStatus;
-import org.springframework.web.server.ResponseStatusException;
 
-public class UnauthorizedException extends ResponseStatusException {
+public class UnauthorizedException extends ClientErrorException {
 
     public UnauthorizedException() {
         super(HttpStatus.UNAUTHORIZED, "Unauthorized");
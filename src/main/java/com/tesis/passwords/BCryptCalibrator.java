@@ -0,0 +1,64 @@
+package com.tesis.passwords;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.security.crypto.bcrypt.BCrypt;
+
+import java.time.Duration;
+
+/**
+ * Measures BCrypt on the current hardware to pick the highest cost that still hashes within a target latency
+ */
+@Slf4j
+public class BCryptCalibrator {
+
+    private static final String SAMPLE_PASSWORD = "calibration-password";
+    private static final int SAMPLES = 3;
+
+    /**
+     * @param targetLatency
+     * @param minCost cost used even if it is slower than the target
+     * @param maxCost
+     * @return
+     */
+    public static PasswordHashingCalibration calibrate(Duration targetLatency, int minCost, int maxCost) {
+
+        // Warm up, the first hashes also pay for class loading and JIT
+        measure(minCost);
+
+        int cost = minCost;
+        Duration latency = measure(minCost);
+        while (cost < maxCost) {
+            Duration next = measure(cost + 1);
+            if (next.compareTo(targetLatency) > 0) {
+                break;
+            }
+            cost++;
+            latency = next;
+        }
+
+        logger.info("[message: BCrypt cost calibrated] [cost: {}] [hash_latency_ms: {}] [target_ms: {}]", cost, latency.toMillis(), targetLatency.toMillis());
+        return new PasswordHashingCalibration(cost, latency, targetLatency, true);
+    }
+
+    /**
+     * Latency of a single hash with the given cost, without calibrating
+     * @param cost
+     * @param targetLatency
+     * @return
+     */
+    public static PasswordHashingCalibration fixed(int cost, Duration targetLatency) {
+        return new PasswordHashingCalibration(cost, measure(cost), targetLatency, false);
+    }
+
+    private static Duration measure(int cost) {
+
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < SAMPLES; i++) {
+            long start = System.nanoTime();
+            BCrypt.hashpw(SAMPLE_PASSWORD, BCrypt.gensalt(cost));
+            best = Math.min(best, System.nanoTime() - start);
+        }
+
+        return Duration.ofNanos(best);
+    }
+}
@@ -0,0 +1,22 @@
+package com.tesis.passwords;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.Duration;
+
+/**
+ * BCrypt cost in use and how long a hash took with it when it was chosen
+ */
+@Getter
+@AllArgsConstructor
+public class PasswordHashingCalibration {
+
+    private final int cost;
+    private final Duration hashLatency;
+    private final Duration targetLatency;
+    /**
+     * False when the cost was fixed by configuration
+     */
+    private final boolean calibrated;
+}
@@ -0,0 +1,53 @@
+package com.tesis.passwords;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Admin endpoint (/actuator/bcrypt) with the BCrypt cost in use, the latency measured when it was chosen and the
+ * latency observed since startup
+ */
+@Component
+@Endpoint(id = "bcrypt")
+public class PasswordHashingEndpoint {
+
+    private final PasswordHashingCalibration calibration;
+    private final MeterRegistry meterRegistry;
+
+    @Autowired
+    public PasswordHashingEndpoint(PasswordHashingCalibration calibration, MeterRegistry meterRegistry) {
+        this.calibration = calibration;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @ReadOperation
+    public Map<String, Object> bcrypt() {
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("cost", calibration.getCost());
+        result.put("calibrated", calibration.isCalibrated());
+        result.put("target_latency_ms", calibration.getTargetLatency().toMillis());
+        result.put("hash_latency_ms", calibration.getHashLatency().toMillis());
+
+        for (String operation : new String[]{"encode", "matches"}) {
+            Timer timer = meterRegistry.find("password.hashing").tag("operation", operation).timer();
+            if (timer != null) {
+                Map<String, Object> observed = new LinkedHashMap<>();
+                observed.put("count", timer.count());
+                observed.put("mean_ms", timer.mean(TimeUnit.MILLISECONDS));
+                observed.put("max_ms", timer.max(TimeUnit.MILLISECONDS));
+                result.put(operation, observed);
+            }
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,75 @@
+package com.tesis.passwords;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.tesis.users.UserService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Re-hashes passwords stored with an outdated BCrypt cost once the user proves it knows them (on login).
+ * It is best effort: it runs in background, and upgrades are dropped if too many are pending.
+ */
+@Slf4j
+@Component
+public class PasswordRehasher implements DisposableBean {
+
+    private static final int MAX_PENDING_UPGRADES = 100;
+
+    private final PasswordEncoder passwordEncoder;
+    private final UserService userService;
+    private final ExecutorService executor;
+    private final Counter upgrades;
+
+    @Autowired
+    public PasswordRehasher(PasswordEncoder passwordEncoder, UserService userService, MeterRegistry meterRegistry) {
+        this(passwordEncoder, userService, meterRegistry, new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(MAX_PENDING_UPGRADES),
+                new ThreadFactoryBuilder().setNameFormat("password-rehash-%d").setDaemon(true).build(),
+                new ThreadPoolExecutor.DiscardPolicy()));
+    }
+
+    PasswordRehasher(PasswordEncoder passwordEncoder, UserService userService, MeterRegistry meterRegistry, ExecutorService executor) {
+        this.passwordEncoder = passwordEncoder;
+        this.userService = userService;
+        this.executor = executor;
+        this.upgrades = Counter.builder("password.rehashed").register(meterRegistry);
+    }
+
+    /**
+     * Schedule an upgrade of the stored hash if it was made with another cost
+     * @param userId
+     * @param rawPassword password already verified against the stored hash
+     * @param encodedPassword stored hash, the upgrade is skipped if it changes in the meantime
+     */
+    public void rehashIfNeeded(Long userId, String rawPassword, String encodedPassword) {
+
+        if (!passwordEncoder.upgradeEncoding(encodedPassword)) {
+            return;
+        }
+
+        executor.execute(() -> {
+            try {
+                if (userService.upgradePassword(userId, encodedPassword, passwordEncoder.encode(rawPassword))) {
+                    upgrades.increment();
+                }
+            } catch (Exception e) {
+                logger.warn("[message: Could not upgrade password hash of user {}] [error: {}]", userId, e.getMessage());
+            }
+        });
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdown();
+    }
+}
@@ -1,5 +1,6 @@
 package com.tesis.privileges;
 
+import com.tesis.roles.AuthorizationIndex;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
@@ -12,10 +13,12 @@ import java.util.Optional;
 public class DefaultPrivilegeService implements PrivilegeService {
 
     private final PrivilegeRepository repository;
+    private final AuthorizationIndex authorizationIndex;
 
     @Autowired
-    public DefaultPrivilegeService(PrivilegeRepository repository) {
+    public DefaultPrivilegeService(PrivilegeRepository repository, AuthorizationIndex authorizationIndex) {
         this.repository = repository;
+        this.authorizationIndex = authorizationIndex;
     }
 
     @Override
@@ -44,12 +47,16 @@ public class DefaultPrivilegeService implements PrivilegeService {
 
     @Override
     public Privilege save(Privilege privilege) {
-        return repository.save(privilege);
+        Privilege savedPrivilege = repository.save(privilege);
+        authorizationIndex.rebuild();
+
+        return savedPrivilege;
     }
 
     @Override @Transactional
     public void delete(String name) {
         repository.deleteByName(name);
+        authorizationIndex.rebuild();
     }
 
 
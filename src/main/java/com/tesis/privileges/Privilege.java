@@ -3,12 +3,17 @@ package com.tesis.privileges;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.tesis.roles.Role;
 import lombok.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.NaturalId;
+import org.hibernate.annotations.NaturalIdCache;
 
 import javax.persistence.*;
 import java.util.Set;
 
 @Entity
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "privileges")
+@NaturalIdCache(region = "privileges_by_name")
 @Table(name = "PRIVILEGES")
 @NoArgsConstructor
 @AllArgsConstructor
@@ -1,12 +1,15 @@
 package com.tesis.privileges;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.QueryHints;
+
+import javax.persistence.QueryHint;
 
 import java.util.List;
 
-public interface PrivilegeRepository extends JpaRepository<Privilege, Long> {
+public interface PrivilegeRepository extends JpaRepository<Privilege, Long>, PrivilegeRepositoryCustom {
 
-    Privilege getByName(String name);
+    @QueryHints(@QueryHint(name = "org.hibernate.cacheable", value = "true"))
     List<Privilege> getAllByNameIsIn(List<String> names);
     void deleteByName(String name);
 }
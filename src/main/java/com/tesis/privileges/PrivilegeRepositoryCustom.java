@@ -0,0 +1,11 @@
+package com.tesis.privileges;
+
+public interface PrivilegeRepositoryCustom {
+
+    /**
+     * Load a privilege by its natural id, going through the natural id and second level caches
+     * @param name
+     * @return null if there is no privilege with that name
+     */
+    Privilege getByName(String name);
+}
@@ -0,0 +1,21 @@
+package com.tesis.privileges;
+
+import org.hibernate.Session;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+public class PrivilegeRepositoryImpl implements PrivilegeRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    @Transactional(readOnly = true)
+    public Privilege getByName(String name) {
+        return entityManager.unwrap(Session.class)
+                .bySimpleNaturalId(Privilege.class)
+                .load(name);
+    }
+}
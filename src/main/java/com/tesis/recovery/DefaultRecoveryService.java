@@ -8,16 +8,14 @@ import com.tesis.exceptions.UnauthorizedException;
 import com.tesis.users.User;
 import com.tesis.users.UserRequestBody;
 import com.tesis.users.UserService;
-import com.tesis.utils.JwtUtils;
-import io.jsonwebtoken.Jwts;
-import io.jsonwebtoken.SignatureAlgorithm;
+import com.tesis.utils.ParsedToken;
+import com.tesis.utils.TokenCodec;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
 
 import javax.transaction.Transactional;
-import java.security.Key;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.util.Date;
@@ -30,14 +28,14 @@ public class DefaultRecoveryService implements RecoveryService {
     private final RecoveryRepository recoveryRepository;
     private final UserService userService;
     private final EmailService emailService;
-    private Key secretKey;
+    private final TokenCodec tokenCodec;
 
     @Autowired
-    public DefaultRecoveryService(RecoveryRepository recoveryRepository, @Lazy UserService userService, EmailService emailService, Key secretKey) {
+    public DefaultRecoveryService(RecoveryRepository recoveryRepository, @Lazy UserService userService, EmailService emailService, TokenCodec tokenCodec) {
         this.recoveryRepository = recoveryRepository;
         this.userService = userService;
         this.emailService = emailService;
-        this.secretKey = secretKey;
+        this.tokenCodec = tokenCodec;
     }
 
     @Override
@@ -48,9 +46,8 @@ public class DefaultRecoveryService implements RecoveryService {
                 .orElseThrow(() -> new BadRequestException(String.format("Email %s is not registered", email)))
                 .getId();
 
-        RecoveryToken recoveryToken = recoveryRepository.findById(userId)
-                .filter(token -> validateToken(token.getToken()))
-                .orElseGet(() -> generateRandomToken(userId, Date.from(ZonedDateTime.now(ZoneId.systemDefault()).plusSeconds(60 * 30).toInstant())));
+        // Solo se guarda el hash del token, asi que siempre se genera uno nuevo que reemplaza al anterior
+        RecoveryToken recoveryToken = generateRandomToken(userId, Date.from(ZonedDateTime.now(ZoneId.systemDefault()).plusSeconds(60 * 30).toInstant()));
 
         emailService.sendRecoveryPasswordEmail(Lists.newArrayList(user.get().getEmail()), recoveryToken.getToken());
 
@@ -60,9 +57,7 @@ public class DefaultRecoveryService implements RecoveryService {
     @Override
     public RecoveryToken createWelcomeToken(User user) {
 
-        RecoveryToken recoveryToken = recoveryRepository.findById(user.getId())
-                .filter(token -> validateToken(token.getToken()))
-                .orElseGet(() -> generateRandomToken(user.getId(), Date.from(ZonedDateTime.now(ZoneId.systemDefault()).plusMonths(1).toInstant())));
+        RecoveryToken recoveryToken = generateRandomToken(user.getId(), Date.from(ZonedDateTime.now(ZoneId.systemDefault()).plusMonths(1).toInstant()));
 
         emailService.sendWelcomePasswordEmail(
                 Lists.newArrayList(user.getEmail()),
@@ -74,13 +69,15 @@ public class DefaultRecoveryService implements RecoveryService {
 
     @Override
     public boolean validateToken(String tokenString) {
-        if (!JwtUtils.validateToken(tokenString, secretKey)) {
+        // Se verifica una sola vez, el user id sale del mismo token parseado
+        Optional<ParsedToken> parsedToken = tokenCodec.verify(tokenString);
+        if (!parsedToken.isPresent()) {
             return false;
         }
 
-        Long userId = JwtUtils.getUserIdFromToken(tokenString, secretKey);
+        Long userId = parsedToken.get().getUserId();
         Optional<RecoveryToken> token = recoveryRepository.findById(userId)
-            .filter(tokenFound -> tokenFound.getToken().equals(tokenString));
+            .filter(tokenFound -> tokenFound.matches(tokenString));
 
         return token.isPresent();
     }
@@ -89,11 +86,11 @@ public class DefaultRecoveryService implements RecoveryService {
     @Transactional
     public void changeUserPassword(String token, String rawPassword) {
 
-        Long userId = JwtUtils.getUserIdFromToken(token, secretKey);
+        Long userId = tokenCodec.parse(token).getUserId();
 
         // Checkeo que el token que mande sea el vigente
         RecoveryToken recoveryToken = recoveryRepository.findById(userId)
-                .filter(tokenFound -> tokenFound.getToken().equals(token))
+                .filter(tokenFound -> tokenFound.matches(token))
                 .orElseThrow(UnauthorizedException::new);
 
         try {
@@ -111,13 +108,11 @@ public class DefaultRecoveryService implements RecoveryService {
     }
 
     private RecoveryToken generateRandomToken(Long userId, Date expirationDate) {
-        String jws = Jwts.builder()
-                .setHeaderParam("type", "RECOVERY")
-                .setSubject(userId.toString())
-                .setIssuedAt(Date.from(ZonedDateTime.now(ZoneId.systemDefault()).toInstant()))
-                .setExpiration(expirationDate)
-                .signWith(secretKey, SignatureAlgorithm.HS512)
-                .compact();
+        String jws = tokenCodec.sign(tokenCodec.builder()
+                    .setHeaderParam("type", RecoveryToken.TOKEN_TYPE)
+                    .setSubject(userId.toString())
+                    .setIssuedAt(Date.from(ZonedDateTime.now(ZoneId.systemDefault()).toInstant()))
+                    .setExpiration(expirationDate));
 
         RecoveryToken token = RecoveryToken.builder()
                 .userId(userId)
@@ -1,27 +1,50 @@
 package com.tesis.recovery;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.tesis.utils.TokenDigests;
 import lombok.*;
 
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.Id;
 import javax.persistence.Table;
+import javax.persistence.Transient;
 import java.io.Serializable;
 
 @Entity
 @Table(name = "RECOVERY_TOKENS")
 @Getter
 @Setter
-@Builder
 @NoArgsConstructor
-@AllArgsConstructor
 public class RecoveryToken implements Serializable {
 
+    /**
+     * Type header of recovery and welcome tokens
+     */
+    public static final String TOKEN_TYPE = "RECOVERY";
+
     @JsonIgnore
     @Id
     private Long userId;
 
-    @Column(length = 1000, nullable = false, unique = true)
+    @JsonIgnore
+    @Column(name = "token_hash", length = TokenDigests.LENGTH)
+    private byte[] tokenHash;
+
+    /**
+     * Only known right after the token is generated, db keeps the digest
+     */
+    @Transient
     private String token;
+
+    @Builder
+    public RecoveryToken(Long userId, String token) {
+        this.userId = userId;
+        this.token = token;
+        this.tokenHash = token != null ? TokenDigests.digest(token) : null;
+    }
+
+    public boolean matches(String token) {
+        return TokenDigests.matches(tokenHash, token);
+    }
 }
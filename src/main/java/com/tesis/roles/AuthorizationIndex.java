@@ -0,0 +1,170 @@
+package com.tesis.roles;
+
+import com.tesis.privileges.Privilege;
+import com.tesis.privileges.PrivilegeRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In memory view of the privilege catalog. Every privilege gets a dense ordinal and every role an immutable
+ * {@link PrivilegeMask}, so checking a set of privileges against a role is a single mask comparison.
+ * The index is swapped atomically on every rebuild, readers never see a half built catalog.
+ */
+@Slf4j
+@Component
+public class AuthorizationIndex {
+
+    private final RoleRepository roleRepository;
+    private final PrivilegeRepository privilegeRepository;
+    private final long missRefreshIntervalNanos;
+    private volatile Snapshot snapshot;
+
+    /**
+     * @param missRefreshInterval minimum age of the catalog before an unknown role reloads it, until then unknown roles
+     *                            (deleted ones, stale role ids in stateless tokens) are answered from the current catalog
+     */
+    @Autowired
+    public AuthorizationIndex(RoleRepository roleRepository,
+                              PrivilegeRepository privilegeRepository,
+                              @Value("${authentication.authorization-index.miss-refresh-interval:5s}") Duration missRefreshInterval) {
+        this.roleRepository = roleRepository;
+        this.privilegeRepository = privilegeRepository;
+        this.missRefreshIntervalNanos = missRefreshInterval.toNanos();
+    }
+
+    /**
+     * Validate if the role has every one of the privileges
+     * @param roleId
+     * @param privileges
+     * @return false if the role or any of the privileges is unknown
+     */
+    public boolean hasPrivileges(Long roleId, Collection<String> privileges) {
+
+        Snapshot current = currentSnapshot();
+        PrivilegeMask granted = current.roleMasks.get(roleId);
+        if (granted == null && refreshOnMiss(current)) {
+            // The role may have been created by another instance since the last refresh
+            current = snapshot;
+            granted = current.roleMasks.get(roleId);
+        }
+
+        if (granted == null) {
+            return false;
+        }
+
+        PrivilegeMask required = current.maskOf(privileges);
+        return required != null && granted.containsAll(required);
+    }
+
+    /**
+     * Rebuild the index once the current transaction commits, or right away if there is no transaction
+     */
+    public void rebuild() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    refresh();
+                }
+            });
+        } else {
+            refresh();
+        }
+    }
+
+    /**
+     * Reload the catalog from db. It also runs periodically to pick up changes made by other instances
+     */
+    @Scheduled(fixedDelayString = "${authentication.authorization-index.refresh-interval:60000}")
+    public synchronized void refresh() {
+
+        List<Privilege> privileges = privilegeRepository.findAll(Sort.by("id"));
+        Map<String, Integer> ordinals = new HashMap<>();
+        for (Privilege privilege : privileges) {
+            ordinals.put(privilege.getName(), ordinals.size());
+        }
+
+        Map<Long, PrivilegeMask> roleMasks = new HashMap<>();
+        for (Role role : roleRepository.findAllWithPrivileges()) {
+            BitSet bits = new BitSet(ordinals.size());
+            if (role.getPrivileges() != null) {
+                for (Privilege privilege : role.getPrivileges()) {
+                    Integer ordinal = ordinals.get(privilege.getName());
+                    if (ordinal != null) {
+                        bits.set(ordinal);
+                    }
+                }
+            }
+            roleMasks.put(role.getId(), PrivilegeMask.of(bits));
+        }
+
+        snapshot = new Snapshot(Collections.unmodifiableMap(ordinals), Collections.unmodifiableMap(roleMasks));
+        logger.debug("[message: Authorization index rebuilt] [privileges: {}] [roles: {}]", ordinals.size(), roleMasks.size());
+    }
+
+    /**
+     * Reload the catalog for an unknown role, at most once per miss refresh interval. Threads that missed on the same
+     * snapshot wait for a single reload instead of running one each
+     * @param missed snapshot without the role
+     * @return false if the catalog was not reloaded
+     */
+    private synchronized boolean refreshOnMiss(Snapshot missed) {
+
+        if (snapshot != missed) {
+            return true;
+        }
+        if (System.nanoTime() - missed.loadedAt < missRefreshIntervalNanos) {
+            return false;
+        }
+        refresh();
+        return true;
+    }
+
+    private Snapshot currentSnapshot() {
+        if (snapshot == null) {
+            refresh();
+        }
+        return snapshot;
+    }
+
+    private static final class Snapshot {
+
+        private final Map<String, Integer> ordinals;
+        private final Map<Long, PrivilegeMask> roleMasks;
+        private final long loadedAt = System.nanoTime();
+
+        private Snapshot(Map<String, Integer> ordinals, Map<Long, PrivilegeMask> roleMasks) {
+            this.ordinals = ordinals;
+            this.roleMasks = roleMasks;
+        }
+
+        /**
+         * @return null if any of the privileges does not exist
+         */
+        private PrivilegeMask maskOf(Collection<String> privileges) {
+            BitSet bits = new BitSet(ordinals.size());
+            for (String privilege : privileges) {
+                Integer ordinal = ordinals.get(privilege);
+                if (ordinal == null) {
+                    return null;
+                }
+                bits.set(ordinal);
+            }
+            return PrivilegeMask.of(bits);
+        }
+    }
+}
@@ -20,11 +20,13 @@ public class DefaultRoleService implements RoleService {
 
     private final RoleRepository roleRepository;
     private final PrivilegeService privilegeService;
+    private final AuthorizationIndex authorizationIndex;
 
     @Autowired
-    public DefaultRoleService(RoleRepository roleRepository, PrivilegeService privilegeService) {
+    public DefaultRoleService(RoleRepository roleRepository, PrivilegeService privilegeService, AuthorizationIndex authorizationIndex) {
         this.roleRepository = roleRepository;
         this.privilegeService = privilegeService;
+        this.authorizationIndex = authorizationIndex;
     }
 
     @Override
@@ -65,12 +67,15 @@ public class DefaultRoleService implements RoleService {
             throw new BadRequestException(String.format("Could not create new role %s with invalid privileges %s", newRole.getName(), Arrays.toString(newRole.getPrivileges().toArray())));
         }
 
-        return roleRepository.save(
+        Role role = roleRepository.save(
                 Role.builder()
                         .name(newRole.getName())
                         .privileges(Sets.newHashSet(privileges))
                         .build()
         );
+        authorizationIndex.rebuild();
+
+        return role;
     }
 
     @Override
@@ -96,7 +101,10 @@ public class DefaultRoleService implements RoleService {
         }
 
         role.setPrivileges(Sets.newHashSet(privileges));
-        return roleRepository.save(role);
+        Role updatedRole = roleRepository.save(role);
+        authorizationIndex.rebuild();
+
+        return updatedRole;
     }
 
     @Override
@@ -106,5 +114,6 @@ public class DefaultRoleService implements RoleService {
                 .orElseThrow(() -> new NotFoundException(String.format("Role %s not found", roleName)));
 
         roleRepository.delete(role);
+        authorizationIndex.rebuild();
     }
 }
@@ -0,0 +1,48 @@
+package com.tesis.roles;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Immutable set of privilege ordinals assigned by {@link AuthorizationIndex}
+ */
+public final class PrivilegeMask {
+
+    private final long[] words;
+
+    private PrivilegeMask(long[] words) {
+        this.words = words;
+    }
+
+    public static PrivilegeMask of(BitSet bits) {
+        return new PrivilegeMask(bits.toLongArray());
+    }
+
+    /**
+     * True if every privilege of the other mask is also present in this one
+     * @param other
+     * @return
+     */
+    public boolean containsAll(PrivilegeMask other) {
+        for (int i = 0; i < other.words.length; i++) {
+            long granted = i < words.length ? words[i] : 0L;
+            if ((other.words[i] & ~granted) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        return Arrays.equals(words, ((PrivilegeMask) o).words);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(words);
+    }
+}
@@ -2,12 +2,17 @@ package com.tesis.roles;
 
 import com.tesis.privileges.Privilege;
 import lombok.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.NaturalId;
+import org.hibernate.annotations.NaturalIdCache;
 
 import javax.persistence.*;
 import java.util.Set;
 
 @Entity
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "roles")
+@NaturalIdCache(region = "roles_by_name")
 @Table(name = "ROLES")
 @NoArgsConstructor
 @AllArgsConstructor
@@ -23,6 +28,7 @@ public class Role {
     @NaturalId
     private String name;
 
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "role_privileges")
     @ManyToMany(cascade = {CascadeType.PERSIST, CascadeType.REFRESH}, fetch=FetchType.LAZY)
     @JoinTable(name = "ROLES_PRIVILEGES",
             joinColumns = { @JoinColumn(name = "role_id") },
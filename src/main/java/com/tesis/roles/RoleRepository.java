@@ -1,12 +1,19 @@
 package com.tesis.roles;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+
+import javax.persistence.QueryHint;
 
 import java.util.List;
 
-public interface RoleRepository extends JpaRepository<Role, Long> {
+public interface RoleRepository extends JpaRepository<Role, Long>, RoleRepositoryCustom {
 
-    Role getByName(String name);
+    @QueryHints(@QueryHint(name = "org.hibernate.cacheable", value = "true"))
     List<Role> getAllByNameIsIn(List<String> names);
     boolean existsByName(String name);
+
+    @Query("select distinct r from Role r left join fetch r.privileges")
+    List<Role> findAllWithPrivileges();
 }
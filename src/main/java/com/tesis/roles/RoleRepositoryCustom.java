@@ -0,0 +1,11 @@
+package com.tesis.roles;
+
+public interface RoleRepositoryCustom {
+
+    /**
+     * Load a role by its natural id, going through the natural id and second level caches
+     * @param name
+     * @return null if there is no role with that name
+     */
+    Role getByName(String name);
+}
@@ -10,11 +10,15 @@ import com.tesis.roles.RoleService;
 import lombok.extern.slf4j.Slf4j;
 import org.hibernate.exception.ConstraintViolationException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 
 import javax.transaction.Transactional;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
 
 @Slf4j
@@ -25,14 +29,16 @@ public class DefaultUserService implements UserService {
     private final RoleService roleService;
     private final RecoveryService recoveryService;
     private final PasswordEncoder passwordEncoder;
+    private final ApplicationEventPublisher eventPublisher;
 
 
     @Autowired
-    public DefaultUserService(UserRepository userRepository, RoleService roleService, RecoveryService recoveryService, PasswordEncoder passwordEncoder) {
+    public DefaultUserService(UserRepository userRepository, RoleService roleService, RecoveryService recoveryService, PasswordEncoder passwordEncoder, ApplicationEventPublisher eventPublisher) {
         this.userRepository = userRepository;
         this.roleService = roleService;
         this.recoveryService = recoveryService;
         this.passwordEncoder = passwordEncoder;
+        this.eventPublisher = eventPublisher;
     }
 
     @Override
@@ -45,6 +51,16 @@ public class DefaultUserService implements UserService {
         return Optional.ofNullable(userRepository.findByEmailAndStatusIsNot(email, UserStatus.DELETED));
     }
 
+    @Override
+    public Optional<UserAuthorization> getUserAuthorization(Long id) {
+        return Optional.ofNullable(userRepository.findAuthorizationByIdAndStatusIsNot(id, UserStatus.DELETED));
+    }
+
+    @Override
+    public List<UserAuthorization> getUserAuthorizations(Collection<Long> ids) {
+        return ids.isEmpty() ? Collections.emptyList() : userRepository.findAuthorizationsByIdInAndStatusIsNot(ids, UserStatus.DELETED);
+    }
+
     @Override
     @Transactional
     public User createUser(UserRequestBody userRequestBody) {
@@ -100,9 +116,11 @@ public class DefaultUserService implements UserService {
             throw new BadRequestException(String.format("Email %s is already in use", userRequestBody.getEmail()));
         }
 
+        boolean roleChanged = false;
         if (!Strings.isNullOrEmpty(userRequestBody.getRole())) {
             Role role = roleService.getByName(userRequestBody.getRole())
                     .orElseThrow(() -> new BadRequestException(String.format("Could not update user with invalid role %s", userRequestBody.getRole())));
+            roleChanged = user.getRole() == null || !user.getRole().getId().equals(role.getId());
             user.setRole(role);
         }
 
@@ -113,19 +131,30 @@ public class DefaultUserService implements UserService {
         user.merge(userRequestBody);
         userRepository.save(user);
 
+        if (roleChanged || UserStatus.DELETED.equals(user.getStatus())) {
+            eventPublisher.publishEvent(new UserAccessChangedEvent(user.getId()));
+        }
+
         return user;
     }
 
+    @Override
+    public boolean upgradePassword(Long userId, String currentHash, String newHash) {
+        return userRepository.updatePassword(userId, currentHash, newHash) > 0;
+    }
+
     @Override
     public void deleteUser(Long id) {
 
         User user = getUser(id).orElseThrow(() -> new NotFoundException(String.format("User %s not found", id)));
         user.setStatus(UserStatus.DELETED);
         userRepository.save(user);
+        eventPublisher.publishEvent(new UserAccessChangedEvent(id));
     }
 
     @Override
     public void physicallyDeleteUser(Long id) {
         userRepository.deleteById(id);
+        eventPublisher.publishEvent(new UserAccessChangedEvent(id));
     }
 }
@@ -0,0 +1,14 @@
+package com.tesis.users;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Published when a user is deleted or its role changes, so the tokens already issued to it stop being valid
+ */
+@Getter
+@AllArgsConstructor
+public class UserAccessChangedEvent {
+
+    private final Long userId;
+}
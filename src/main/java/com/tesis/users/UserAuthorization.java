@@ -0,0 +1,20 @@
+package com.tesis.users;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * What the validate path needs to know about a user. Loaded with a single query instead of the whole {@link User},
+ * privileges of the role are then resolved in memory by {@link com.tesis.roles.AuthorizationIndex}
+ */
+@Getter
+@AllArgsConstructor
+public class UserAuthorization {
+
+    private final Long userId;
+    private final UserStatus status;
+    /**
+     * null if the user has no role
+     */
+    private final Long roleId;
+}
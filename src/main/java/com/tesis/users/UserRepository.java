@@ -1,9 +1,27 @@
 package com.tesis.users;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
 
 public interface UserRepository extends JpaRepository<User, Long> {
 
     User findByIdAndStatusIsNot(Long id, UserStatus status);
     User findByEmailAndStatusIsNot(String email, UserStatus status);
+
+    @Query("select new com.tesis.users.UserAuthorization(u.id, u.status, r.id) from User u left join u.role r where u.id = :id and u.status <> :status")
+    UserAuthorization findAuthorizationByIdAndStatusIsNot(@Param("id") Long id, @Param("status") UserStatus status);
+
+    @Query("select new com.tesis.users.UserAuthorization(u.id, u.status, r.id) from User u left join u.role r where u.id in :ids and u.status <> :status")
+    List<UserAuthorization> findAuthorizationsByIdInAndStatusIsNot(@Param("ids") Collection<Long> ids, @Param("status") UserStatus status);
+
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("update User u set u.password = :newPassword where u.id = :id and u.password = :currentPassword")
+    int updatePassword(@Param("id") Long id, @Param("currentPassword") String currentPassword, @Param("newPassword") String newPassword);
 }
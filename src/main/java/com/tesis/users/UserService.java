@@ -1,5 +1,7 @@
 package com.tesis.users;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 public interface UserService {
@@ -18,6 +20,20 @@ public interface UserService {
      */
     Optional<User> getUser(String email);
 
+    /**
+     * Get the status and role of a not deleted user, with a single query and without loading the entity
+     * @param id
+     * @return
+     */
+    Optional<UserAuthorization> getUserAuthorization(Long id);
+
+    /**
+     * Same as {@link #getUserAuthorization(Long)} for many users, with a single query
+     * @param ids
+     * @return
+     */
+    List<UserAuthorization> getUserAuthorizations(Collection<Long> ids);
+
     /**
      * Create new user
      * @param userRequestBody
@@ -33,6 +49,15 @@ public interface UserService {
      */
     User updateUser(Long userId, UserRequestBody userRequestBody);
 
+    /**
+     * Replace the password hash of the user, only if it still has the given hash
+     * @param userId
+     * @param currentHash
+     * @param newHash
+     * @return true if the hash was replaced
+     */
+    boolean upgradePassword(Long userId, String currentHash, String newHash);
+
     /**
      * Delete existing user (only set status on deleted)
      * @param id
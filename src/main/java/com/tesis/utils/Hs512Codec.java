@@ -0,0 +1,479 @@
+package com.tesis.utils;
+
+import com.tesis.authentication.AccessTokenClaims;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.Header;
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.MalformedJwtException;
+import io.jsonwebtoken.PrematureJwtException;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.UnsupportedJwtException;
+import io.jsonwebtoken.io.Deserializer;
+import io.jsonwebtoken.security.SignatureException;
+
+import javax.crypto.Mac;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * HS512 codec for the tokens issued by this service: flat header and claims with string, integer and boolean values.
+ * Signing writes the same json jjwt would (Jackson escaping, insertion order, alg last in the header). Verification
+ * reads the header to find the key, checks the signature over the raw token bytes and then reads only the claims
+ * {@link ParsedToken} needs, without building maps. The full claims are decoded only if they are asked for.
+ * Mac instances are not thread safe, each thread keeps its own for every key of the ring.
+ */
+final class Hs512Codec {
+
+    private static final String ALGORITHM = SignatureAlgorithm.HS512.getValue();
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    private final KeyRing keyRing;
+    private final Deserializer<Map<String, Object>> deserializer;
+    private final Map<TokenKey, ThreadLocal<Mac>> macs = new IdentityHashMap<>();
+
+    Hs512Codec(KeyRing keyRing, Deserializer<Map<String, Object>> deserializer) {
+        this.keyRing = keyRing;
+        this.deserializer = deserializer;
+        for (TokenKey tokenKey : keyRing.getKeys()) {
+            if (tokenKey.getAlgorithm() == SignatureAlgorithm.HS512) {
+                SignatureAlgorithm.HS512.assertValidSigningKey(tokenKey.getKey());
+                macs.put(tokenKey, ThreadLocal.withInitial(() -> newMac(tokenKey.getKey())));
+            }
+        }
+    }
+
+    String sign(Map<String, Object> header, Map<String, Object> claims, TokenKey signingKey) {
+
+        // jjwt agrega (o pisa) alg al final del header
+        Map<String, Object> jwsHeader = new LinkedHashMap<>(header);
+        jwsHeader.put(JwsHeader.ALGORITHM, ALGORITHM);
+
+        String signingInput = ENCODER.encodeToString(toJson(jwsHeader)) + '.' + ENCODER.encodeToString(toJson(claims));
+        byte[] signature = macs.get(signingKey).get().doFinal(signingInput.getBytes(StandardCharsets.US_ASCII));
+        return signingInput + '.' + ENCODER.encodeToString(signature);
+    }
+
+    /**
+     * @param token
+     * @return the verified token, built on get() since it fails if the subject is not a user id. Null if the token was
+     * signed by an asymmetric key, those are left to jjwt
+     * @throws io.jsonwebtoken.JwtException if the token is malformed, its signature is invalid or it expired
+     * @throws IllegalArgumentException if a part of the token is not base64url
+     */
+    Supplier<ParsedToken> verify(String token) {
+
+        int headerEnd = token.indexOf('.');
+        int payloadEnd = headerEnd < 0 ? -1 : token.indexOf('.', headerEnd + 1);
+        if (payloadEnd < 0 || token.indexOf('.', payloadEnd + 1) >= 0) {
+            throw new MalformedJwtException("JWT strings must contain exactly 2 period characters");
+        }
+
+        byte[] bytes = token.getBytes(StandardCharsets.US_ASCII);
+        JsonReader header = new JsonReader(decode(bytes, 0, headerEnd));
+        Object algorithm = null;
+        Object keyId = null;
+        for (String name = header.nextName(); name != null; name = header.nextName()) {
+            Object value = header.nextValue();
+            if (JwsHeader.ALGORITHM.equals(name)) {
+                algorithm = value;
+            } else if (JwsHeader.KEY_ID.equals(name)) {
+                keyId = value;
+            } else if (Header.COMPRESSION_ALGORITHM.equals(name)) {
+                throw new UnsupportedJwtException("Compressed tokens are not supported");
+            }
+        }
+        TokenKey tokenKey = keyRing.getVerificationKey(keyId != null ? keyId.toString() : null);
+        if (tokenKey.getAlgorithm() != SignatureAlgorithm.HS512) {
+            return null;
+        }
+        if (!ALGORITHM.equals(algorithm)) {
+            throw new UnsupportedJwtException("Unsupported signature algorithm " + algorithm);
+        }
+
+        // La firma se valida antes de leer los claims, los de un token falsificado no llegan a parsearse
+        Mac mac = macs.get(tokenKey).get();
+        mac.update(bytes, 0, payloadEnd);
+        if (!MessageDigest.isEqual(mac.doFinal(), decode(bytes, payloadEnd + 1, bytes.length))) {
+            throw new SignatureException("JWT signature does not match locally computed signature");
+        }
+
+        byte[] payload = decode(bytes, headerEnd + 1, payloadEnd);
+        JsonReader claims = new JsonReader(payload);
+        Object subject = null;
+        Long expiration = null;
+        Long notBefore = null;
+        Long roleId = null;
+        for (String name = claims.nextName(); name != null; name = claims.nextName()) {
+            Object value = claims.nextValue();
+            switch (name) {
+                case Claims.SUBJECT:
+                    subject = value;
+                    break;
+                case Claims.EXPIRATION:
+                    expiration = toLong(name, value);
+                    break;
+                case Claims.NOT_BEFORE:
+                    notBefore = toLong(name, value);
+                    break;
+                case AccessTokenClaims.ROLE_ID:
+                    roleId = toLong(name, value);
+                    break;
+                default:
+            }
+        }
+
+        long now = System.currentTimeMillis();
+        if (expiration != null && now > expiration * 1000) {
+            throw new ExpiredJwtException(null, null, "JWT expired at " + Instant.ofEpochSecond(expiration));
+        }
+        if (notBefore != null && now < notBefore * 1000) {
+            throw new PrematureJwtException(null, null, "JWT must not be accepted before " + Instant.ofEpochSecond(notBefore));
+        }
+
+        String userId = subject != null ? subject.toString() : null;
+        Date expirationDate = expiration != null ? new Date(expiration * 1000) : null;
+        Long tokenRoleId = roleId;
+        return () -> new ParsedToken(userId, expirationDate, tokenRoleId, () -> Jwts.claims(deserializer.deserialize(payload)));
+    }
+
+    private static Mac newMac(Key key) {
+        try {
+            Mac mac = Mac.getInstance(SignatureAlgorithm.HS512.getJcaName());
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Unable to initialize " + SignatureAlgorithm.HS512.getJcaName(), e);
+        }
+    }
+
+    private static byte[] decode(byte[] bytes, int from, int to) {
+        return DECODER.decode(ByteBuffer.wrap(bytes, from, to - from)).array();
+    }
+
+    private static Long toLong(String name, Object value) {
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        throw new MalformedJwtException("Invalid " + name + " claim");
+    }
+
+    private static byte[] toJson(Map<String, Object> fields) {
+
+        StringBuilder json = new StringBuilder(128).append('{');
+        for (Map.Entry<String, Object> field : fields.entrySet()) {
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            writeString(json, field.getKey());
+            json.append(':');
+            writeValue(json, field.getValue());
+        }
+
+        return json.append('}').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void writeValue(StringBuilder json, Object value) {
+        if (value instanceof String) {
+            writeString(json, (String) value);
+        } else if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            json.append(((Number) value).longValue());
+        } else if (value instanceof Boolean) {
+            json.append(value);
+        } else {
+            throw new IllegalArgumentException("Unsupported claim type " + value.getClass().getName());
+        }
+    }
+
+    // Mismos escapes que Jackson: comillas, barra invertida y caracteres de control
+    private static void writeString(StringBuilder json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                case '\\':
+                    json.append('\\').append(c);
+                    break;
+                case '\b':
+                    json.append("\\b");
+                    break;
+                case '\t':
+                    json.append("\\t");
+                    break;
+                case '\n':
+                    json.append("\\n");
+                    break;
+                case '\f':
+                    json.append("\\f");
+                    break;
+                case '\r':
+                    json.append("\\r");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        json.append("\\u00").append(HEX[c >> 4]).append(HEX[c & 0xF]);
+                    } else {
+                        json.append(c);
+                    }
+            }
+        }
+        json.append('"');
+    }
+
+    /**
+     * Reads the fields of a json object one by one. Values are returned as String, Long, Double, Boolean or null,
+     * nested objects and arrays are skipped and returned as null.
+     */
+    private static final class JsonReader {
+
+        private static final int MAX_DEPTH = 16;
+
+        private final byte[] json;
+        private int position;
+        private boolean first = true;
+
+        JsonReader(byte[] json) {
+            this.json = json;
+            expect('{');
+        }
+
+        /**
+         * @return name of the next field, null once the object is over
+         */
+        String nextName() {
+
+            if (peek() == '}') {
+                position++;
+                skipWhitespace();
+                if (position != json.length) {
+                    throw malformed();
+                }
+                return null;
+            }
+
+            if (!first) {
+                expect(',');
+            }
+            first = false;
+            String name = readString();
+            expect(':');
+            return name;
+        }
+
+        Object nextValue() {
+            return readValue(0);
+        }
+
+        private Object readValue(int depth) {
+            switch (peek()) {
+                case '"':
+                    return readString();
+                case '{':
+                    skip('}', depth, true);
+                    return null;
+                case '[':
+                    skip(']', depth, false);
+                    return null;
+                case 't':
+                    readLiteral("true");
+                    return Boolean.TRUE;
+                case 'f':
+                    readLiteral("false");
+                    return Boolean.FALSE;
+                case 'n':
+                    readLiteral("null");
+                    return null;
+                default:
+                    return readNumber();
+            }
+        }
+
+        private void skip(char close, int depth, boolean object) {
+
+            if (depth >= MAX_DEPTH) {
+                throw malformed();
+            }
+
+            position++;
+            if (peek() == close) {
+                position++;
+                return;
+            }
+
+            do {
+                if (object) {
+                    readString();
+                    expect(':');
+                }
+                readValue(depth + 1);
+            } while (consume(','));
+            expect(close);
+        }
+
+        private String readString() {
+
+            expect('"');
+            int start = position;
+            StringBuilder unescaped = null;
+            while (position < json.length) {
+                byte c = json[position];
+                if (c == '"') {
+                    String tail = new String(json, start, position - start, StandardCharsets.UTF_8);
+                    position++;
+                    return unescaped != null ? unescaped.append(tail).toString() : tail;
+                }
+
+                if (c == '\\') {
+                    if (unescaped == null) {
+                        unescaped = new StringBuilder();
+                    }
+                    unescaped.append(new String(json, start, position - start, StandardCharsets.UTF_8));
+                    unescaped.append(readEscape());
+                    start = position;
+                } else {
+                    position++;
+                }
+            }
+
+            throw malformed();
+        }
+
+        private char readEscape() {
+
+            position++;
+            if (position >= json.length) {
+                throw malformed();
+            }
+
+            byte c = json[position++];
+            switch (c) {
+                case '"':
+                case '\\':
+                case '/':
+                    return (char) c;
+                case 'b':
+                    return '\b';
+                case 't':
+                    return '\t';
+                case 'n':
+                    return '\n';
+                case 'f':
+                    return '\f';
+                case 'r':
+                    return '\r';
+                case 'u':
+                    if (position + 4 > json.length) {
+                        throw malformed();
+                    }
+                    int code = 0;
+                    for (int i = 0; i < 4; i++) {
+                        int digit = Character.digit(json[position++], 16);
+                        if (digit < 0) {
+                            throw malformed();
+                        }
+                        code = code * 16 + digit;
+                    }
+                    return (char) code;
+                default:
+                    throw malformed();
+            }
+        }
+
+        private Object readNumber() {
+
+            int start = position;
+            boolean negative = json[position] == '-';
+            if (negative) {
+                position++;
+            }
+
+            long value = 0;
+            int digits = 0;
+            boolean integer = true;
+            while (position < json.length) {
+                byte c = json[position];
+                if (c >= '0' && c <= '9') {
+                    value = value * 10 + (c - '0');
+                    digits++;
+                } else if (c == '.' || c == 'e' || c == 'E' || c == '+' || c == '-') {
+                    integer = false;
+                } else {
+                    break;
+                }
+                position++;
+            }
+
+            if (digits == 0) {
+                throw malformed();
+            }
+            if (integer && digits <= 18) {
+                return negative ? -value : value;
+            }
+
+            try {
+                return Double.parseDouble(new String(json, start, position - start, StandardCharsets.US_ASCII));
+            } catch (NumberFormatException e) {
+                throw malformed();
+            }
+        }
+
+        private void readLiteral(String literal) {
+            for (int i = 0; i < literal.length(); i++) {
+                if (position >= json.length || json[position++] != literal.charAt(i)) {
+                    throw malformed();
+                }
+            }
+        }
+
+        private boolean consume(char c) {
+            if (peek() == c) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(char c) {
+            if (peek() != c) {
+                throw malformed();
+            }
+            position++;
+        }
+
+        private byte peek() {
+            skipWhitespace();
+            if (position >= json.length) {
+                throw malformed();
+            }
+            return json[position];
+        }
+
+        private void skipWhitespace() {
+            while (position < json.length
+                    && (json[position] == ' ' || json[position] == '\t' || json[position] == '\n' || json[position] == '\r')) {
+                position++;
+            }
+        }
+
+        private MalformedJwtException malformed() {
+            return new MalformedJwtException("Invalid token json at position " + position);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.tesis.utils;
+
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.UnsupportedJwtException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.security.Key;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keys that sign and verify tokens. Each token carries the id of the key that signed it in its kid header, and is
+ * verified with that key, so rotating the signing key doesn't invalidate the tokens already issued: they keep working
+ * until they expire and users move to the new key on their next login.
+ * Only one key of each algorithm signs at a time, the one with the latest activeFrom already reached. Every key
+ * verifies, the legacy key verifies the tokens without kid and signs HS512 tokens while no other HS512 key is active.
+ */
+@Slf4j
+public class KeyRing {
+
+    private final TokenKey legacyKey;
+    private final Map<String, TokenKey> keys;
+    private final Map<SignatureAlgorithm, List<TokenKey>> schedules = new EnumMap<>(SignatureAlgorithm.class);
+    private final Map<SignatureAlgorithm, TokenKey> signingKeys = new ConcurrentHashMap<>();
+
+    /**
+     * @param legacyKey HS512 key of the tokens without kid, nullable if every token has one
+     * @param keys keys with id
+     */
+    public KeyRing(Key legacyKey, List<TokenKey> keys) {
+
+        this.legacyKey = legacyKey != null ? new TokenKey(null, legacyKey, Instant.EPOCH) : null;
+        this.keys = new HashMap<>();
+        for (TokenKey key : keys) {
+            Objects.requireNonNull(key.getId(), "key id");
+            if (this.keys.put(key.getId(), key) != null) {
+                throw new IllegalArgumentException("Duplicated key id " + key.getId());
+            }
+            schedules.computeIfAbsent(key.getAlgorithm(), algorithm -> new ArrayList<>()).add(key);
+        }
+
+        schedules.values().forEach(schedule -> schedule.sort(Comparator.comparing(TokenKey::getActiveFrom)));
+        if (this.legacyKey != null) {
+            schedules.putIfAbsent(SignatureAlgorithm.HS512, Collections.emptyList());
+        }
+
+        rotate(Instant.now());
+        if (getSigningKey() == null) {
+            throw new IllegalStateException("No HS512 signing key active, configure jwt.secret-key or a key already active");
+        }
+    }
+
+    /**
+     * @param key
+     * @return ring with a single key that signs tokens without kid
+     */
+    public static KeyRing of(Key key) {
+        return new KeyRing(key, Collections.emptyList());
+    }
+
+    /**
+     * @return the HS512 key that signs new tokens
+     */
+    public TokenKey getSigningKey() {
+        return getSigningKey(SignatureAlgorithm.HS512);
+    }
+
+    /**
+     * @param algorithm
+     * @return the key of the algorithm that signs new tokens, null if none is active yet
+     */
+    public TokenKey getSigningKey(SignatureAlgorithm algorithm) {
+        return signingKeys.get(algorithm);
+    }
+
+    /**
+     * @param keyId kid of the token, null if it has none
+     * @return the key that signed the token
+     * @throws UnsupportedJwtException if the key is unknown, e.g. it was removed after its tokens expired
+     */
+    public TokenKey getVerificationKey(String keyId) throws UnsupportedJwtException {
+        TokenKey key = keyId != null ? keys.get(keyId) : legacyKey;
+        if (key == null) {
+            throw new UnsupportedJwtException("Unknown signing key " + keyId);
+        }
+        return key;
+    }
+
+    /**
+     * @return every key, the legacy one included
+     */
+    public Collection<TokenKey> getKeys() {
+        List<TokenKey> allKeys = new ArrayList<>(keys.values());
+        if (legacyKey != null) {
+            allKeys.add(legacyKey);
+        }
+        return allKeys;
+    }
+
+    /**
+     * Switch every algorithm to its latest key already active
+     * @param now
+     * @return true if a signing key changed
+     */
+    public boolean rotate(Instant now) {
+
+        boolean rotated = false;
+        for (Map.Entry<SignatureAlgorithm, List<TokenKey>> schedule : schedules.entrySet()) {
+            SignatureAlgorithm algorithm = schedule.getKey();
+            TokenKey activeKey = algorithm == SignatureAlgorithm.HS512 ? legacyKey : null;
+            for (TokenKey key : schedule.getValue()) {
+                if (key.getActiveFrom().isAfter(now)) {
+                    break;
+                }
+                activeKey = key;
+            }
+
+            TokenKey previousKey = signingKeys.get(algorithm);
+            if (activeKey == null || activeKey == previousKey) {
+                continue;
+            }
+
+            if (previousKey != null) {
+                logger.info("[message: Signing key rotated] [algorithm: {}] [previous_kid: {}] [kid: {}]", algorithm, previousKey.getId(), activeKey.getId());
+            }
+            signingKeys.put(algorithm, activeKey);
+            rotated = true;
+        }
+
+        return rotated;
+    }
+}
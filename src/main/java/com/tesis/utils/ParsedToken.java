@@ -0,0 +1,53 @@
+package com.tesis.utils;
+
+import com.tesis.authentication.AccessTokenClaims;
+import io.jsonwebtoken.Claims;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.util.Date;
+import java.util.function.Supplier;
+
+/**
+ * Claims of a token already verified by {@link TokenCodec}
+ */
+@Getter
+public class ParsedToken {
+
+    private final Long userId;
+    private final Date expiration;
+    /**
+     * Role carried by access tokens, null for legacy tokens, users without role and recovery tokens
+     */
+    private final Long roleId;
+
+    @Getter(AccessLevel.NONE)
+    private final Supplier<Claims> claimsReader;
+    @Getter(AccessLevel.NONE)
+    private Claims claims;
+
+    public ParsedToken(Claims claims) {
+        this.userId = Long.parseLong(claims.getSubject());
+        this.expiration = claims.getExpiration();
+        this.roleId = AccessTokenClaims.getRoleId(claims);
+        this.claimsReader = null;
+        this.claims = claims;
+    }
+
+    ParsedToken(String subject, Date expiration, Long roleId, Supplier<Claims> claimsReader) {
+        this.userId = Long.parseLong(subject);
+        this.expiration = expiration;
+        this.roleId = roleId;
+        this.claimsReader = claimsReader;
+    }
+
+    /**
+     * @return every claim of the token, tokens verified by {@link Hs512Codec} decode them on the first call
+     */
+    public Claims getClaims() {
+        if (claims == null) {
+            claims = claimsReader.get();
+        }
+        return claims;
+    }
+}
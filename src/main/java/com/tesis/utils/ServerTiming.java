@@ -0,0 +1,76 @@
+package com.tesis.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Time spent by the current request in each stage (jwt, db, hash, email), rendered as a Server-Timing header.
+ * Outside a request (schedulers, outbox dispatcher) nothing is recorded. Stages may overlap: the db time of an email
+ * enqueue is counted in both.
+ */
+public class ServerTiming {
+
+    public static final String HEADER = "Server-Timing";
+    public static final String JWT = "jwt";
+    public static final String DB = "db";
+    public static final String HASH = "hash";
+    public static final String EMAIL = "email";
+
+    private static final ThreadLocal<Map<String, long[]>> STAGES = new ThreadLocal<>();
+
+    public static void begin() {
+        STAGES.set(new LinkedHashMap<>());
+    }
+
+    public static void end() {
+        STAGES.remove();
+    }
+
+    public static <T> T time(String stage, Supplier<T> operation) {
+
+        if (STAGES.get() == null) {
+            return operation.get();
+        }
+
+        long start = System.nanoTime();
+        try {
+            return operation.get();
+        } finally {
+            record(stage, System.nanoTime() - start);
+        }
+    }
+
+    public static void record(String stage, long nanos) {
+
+        Map<String, long[]> stages = STAGES.get();
+        if (stages != null) {
+            // {nanos, calls}
+            long[] totals = stages.computeIfAbsent(stage, key -> new long[2]);
+            totals[0] += nanos;
+            totals[1]++;
+        }
+    }
+
+    /**
+     * @param totalNanos time since the request started
+     * @return header value, i.e. jwt;dur=0.42;desc="1 calls", db;dur=3.10;desc="2 calls", total;dur=5.73
+     */
+    public static String header(long totalNanos) {
+
+        StringBuilder header = new StringBuilder();
+        Map<String, long[]> stages = STAGES.get();
+        if (stages != null) {
+            stages.forEach((stage, totals) -> header.append(stage)
+                    .append(";dur=").append(millis(totals[0]))
+                    .append(";desc=\"").append(totals[1]).append(" calls\", "));
+        }
+
+        return header.append("total;dur=").append(millis(totalNanos)).toString();
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.2f", nanos / 1_000_000d);
+    }
+}
@@ -0,0 +1,97 @@
+package com.tesis.utils;
+
+import org.slf4j.Logger;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Warning that repeats on every rejected request (invalid token, unknown route). Only the first permitsPerWindow of
+ * each window are logged, the rest are counted and reported as a single summary line once the window is over.
+ */
+public class ThrottledLogger {
+
+    public static final int DEFAULT_PERMITS = 10;
+    public static final long DEFAULT_WINDOW_MILLIS = 60_000;
+
+    private static final List<ThrottledLogger> INSTANCES = new CopyOnWriteArrayList<>();
+
+    private final Logger logger;
+    private final String key;
+    private final int permitsPerWindow;
+    private final long windowNanos;
+    private final AtomicLong windowStart;
+    private final AtomicInteger logged = new AtomicInteger();
+    private final AtomicLong suppressed = new AtomicLong();
+
+    public ThrottledLogger(Logger logger, String key, int permitsPerWindow, long windowMillis) {
+        this.logger = logger;
+        this.key = key;
+        this.permitsPerWindow = permitsPerWindow;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        this.windowStart = new AtomicLong(System.nanoTime());
+    }
+
+    public static ThrottledLogger of(Logger logger, String key) {
+        ThrottledLogger throttledLogger = new ThrottledLogger(logger, key, DEFAULT_PERMITS, DEFAULT_WINDOW_MILLIS);
+        INSTANCES.add(throttledLogger);
+        return throttledLogger;
+    }
+
+    /**
+     * Reports the suppressed warnings of every window already over, even if the warning didn't happen again
+     */
+    public static void flushAll() {
+        INSTANCES.forEach(throttledLogger -> throttledLogger.roll(System.nanoTime()));
+    }
+
+    // Sin varargs, para no crear un array por cada warning descartado
+    public void warn(String format, Object arg) {
+        if (tryAcquire()) {
+            logger.warn(format, arg);
+        }
+    }
+
+    public void warn(String format, Object arg1, Object arg2) {
+        if (tryAcquire()) {
+            logger.warn(format, arg1, arg2);
+        }
+    }
+
+    public long getSuppressed() {
+        return suppressed.get();
+    }
+
+    private boolean tryAcquire() {
+
+        if (!logger.isWarnEnabled()) {
+            return false;
+        }
+
+        roll(System.nanoTime());
+        if (logged.incrementAndGet() <= permitsPerWindow) {
+            return true;
+        }
+
+        suppressed.incrementAndGet();
+        return false;
+    }
+
+    private void roll(long now) {
+
+        long start = windowStart.get();
+        if (now - start < windowNanos || !windowStart.compareAndSet(start, now)) {
+            return;
+        }
+
+        logged.set(0);
+        long count = suppressed.getAndSet(0);
+        if (count > 0) {
+            logger.warn("[message: Repeated warning suppressed] [key: {}] [suppressed: {}] [window_seconds: {}]",
+                    key, count, TimeUnit.NANOSECONDS.toSeconds(now - start));
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.tesis.utils;
+
+import io.jsonwebtoken.Claims;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Header and claims of a token to be signed by {@link TokenCodec}. Same setters and insertion order as jjwt's
+ * JwtBuilder, dates are stored as seconds and null values remove the entry, so every codec serializes the same json.
+ */
+public class TokenBuilder {
+
+    private final Map<String, Object> header = new LinkedHashMap<>();
+    private final Map<String, Object> claims = new LinkedHashMap<>();
+
+    TokenBuilder() {
+    }
+
+    public TokenBuilder setHeaderParam(String name, Object value) {
+        put(header, name, value);
+        return this;
+    }
+
+    public TokenBuilder addClaims(Map<String, ?> claims) {
+        claims.forEach((name, value) -> put(this.claims, name, value));
+        return this;
+    }
+
+    public TokenBuilder setId(String id) {
+        put(claims, Claims.ID, id);
+        return this;
+    }
+
+    public TokenBuilder setSubject(String subject) {
+        put(claims, Claims.SUBJECT, subject);
+        return this;
+    }
+
+    public TokenBuilder setIssuedAt(Date issuedAt) {
+        put(claims, Claims.ISSUED_AT, toSeconds(issuedAt));
+        return this;
+    }
+
+    public TokenBuilder setExpiration(Date expiration) {
+        put(claims, Claims.EXPIRATION, toSeconds(expiration));
+        return this;
+    }
+
+    Map<String, Object> getHeader() {
+        return Collections.unmodifiableMap(header);
+    }
+
+    Map<String, Object> getClaims() {
+        return Collections.unmodifiableMap(claims);
+    }
+
+    private static Long toSeconds(Date date) {
+        return date != null ? date.getTime() / 1000 : null;
+    }
+
+    private static void put(Map<String, Object> map, String name, Object value) {
+        if (value == null) {
+            map.remove(name);
+        } else {
+            map.put(name, value);
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package com.tesis.utils;
+
+import com.tesis.exceptions.InternalServerErrorException;
+import com.tesis.exceptions.UnauthorizedException;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.JwtBuilder;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.SigningKeyResolverAdapter;
+import io.jsonwebtoken.MalformedJwtException;
+import io.jsonwebtoken.UnsupportedJwtException;
+import io.jsonwebtoken.io.Decoders;
+import io.jsonwebtoken.io.Deserializer;
+import io.jsonwebtoken.io.Encoders;
+import io.jsonwebtoken.io.Serializer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.ServiceLoader;
+import java.util.function.Supplier;
+
+/**
+ * Signs and verifies the tokens issued by this service. The parser is built once and shared by every thread:
+ * jjwt looks up (and creates) its json deserializer each time a parser is built, and its serializer each time a token is
+ * signed, which was most of the cost of a verification. A token is verified once and the resulting
+ * {@link ParsedToken} is reused for everything read from it.
+ * With jwt.codec HS512 tokens are signed and verified by {@link Hs512Codec} instead of jjwt, see {@link TokenCodecMode}.
+ * Tokens are signed with the active key of the {@link KeyRing} and verified with the key named by their kid header.
+ * Access tokens can be signed with an asymmetric algorithm (jwt.access-token.algorithm), so other services can verify
+ * them with the published public keys.
+ */
+@Slf4j
+@Component
+public class TokenCodec {
+
+    private static final ThrottledLogger INVALID_TOKEN = ThrottledLogger.of(logger, "invalid_token");
+
+    private final KeyRing keyRing;
+    private final SignatureAlgorithm accessTokenAlgorithm;
+    private final JwtParser parser;
+    private final Serializer<Map<String, ?>> serializer;
+    private final Deserializer<Map<String, Object>> deserializer;
+    private final Hs512Codec hs512Codec;
+    private final Timer signTimer;
+    private final Timer parseTimer;
+
+    public TokenCodec(Key key, MeterRegistry meterRegistry) {
+        this(key, meterRegistry, TokenCodecMode.JJWT);
+    }
+
+    public TokenCodec(Key key, MeterRegistry meterRegistry, TokenCodecMode mode) {
+        this(KeyRing.of(key), meterRegistry, mode, SignatureAlgorithm.HS512);
+    }
+
+    @Autowired
+    public TokenCodec(KeyRing keyRing,
+                      MeterRegistry meterRegistry,
+                      @Value("${jwt.codec:JJWT}") TokenCodecMode mode,
+                      @Value("${jwt.access-token.algorithm:HS512}") SignatureAlgorithm accessTokenAlgorithm) {
+        if (keyRing.getSigningKey(accessTokenAlgorithm) == null) {
+            throw new IllegalStateException("No " + accessTokenAlgorithm + " signing key active for access tokens");
+        }
+
+        this.keyRing = keyRing;
+        this.accessTokenAlgorithm = accessTokenAlgorithm;
+        this.parser = Jwts.parserBuilder()
+                .setSigningKeyResolver(new SigningKeyResolverAdapter() {
+                    @Override
+                    public Key resolveSigningKey(JwsHeader header, Claims claims) {
+                        TokenKey tokenKey = keyRing.getVerificationKey(header.getKeyId());
+                        // Cada key verifica solo con su algoritmo
+                        if (!tokenKey.getAlgorithm().getValue().equals(header.getAlgorithm())) {
+                            throw new UnsupportedJwtException("Unexpected signature algorithm " + header.getAlgorithm());
+                        }
+                        return tokenKey.getVerificationKey();
+                    }
+                })
+                .build();
+        this.serializer = load(Serializer.class);
+        this.deserializer = load(Deserializer.class);
+        this.hs512Codec = mode == TokenCodecMode.HS512 ? new Hs512Codec(keyRing, deserializer) : null;
+        this.signTimer = Timer.builder("jwt.operations")
+                .tag("operation", "sign")
+                .register(meterRegistry);
+        this.parseTimer = Timer.builder("jwt.operations")
+                .tag("operation", "parse")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @return new token, signed with the active key by {@link #sign(TokenBuilder)}
+     */
+    public TokenBuilder builder() {
+        return new TokenBuilder();
+    }
+
+    /**
+     * Sign and serialize the token
+     * @param builder token with its claims, from {@link #builder()}
+     * @return compact jws
+     */
+    public String sign(TokenBuilder builder) {
+        return sign(builder, keyRing.getSigningKey());
+    }
+
+    /**
+     * Same as {@link #sign(TokenBuilder)}, with the active key of jwt.access-token.algorithm
+     * @param builder access token with its claims, from {@link #builder()}
+     * @return compact jws
+     */
+    public String signAccessToken(TokenBuilder builder) {
+        return sign(builder, keyRing.getSigningKey(accessTokenAlgorithm));
+    }
+
+    /**
+     * @param token
+     * @return the verified token, or empty if its signature is invalid, it expired or it is malformed
+     */
+    public Optional<ParsedToken> verify(String token) {
+
+        Supplier<ParsedToken> verifiedToken;
+        try {
+            verifiedToken = ServerTiming.time(ServerTiming.JWT, () -> parseTimer.record(() -> decode(token)));
+        } catch (JwtException | IllegalArgumentException e) {
+            INVALID_TOKEN.warn("[message: Invalid token] [error: {}]", e.getMessage());
+            return Optional.empty();
+        }
+
+        try {
+            return Optional.of(verifiedToken.get());
+        } catch (Exception e) {
+            logger.error("[message: Could not parse token claims] [error: {}] [stacktrace: {}]", e.getMessage(), e.getStackTrace());
+            throw new InternalServerErrorException("internal error");
+        }
+    }
+
+    /**
+     * Same as {@link #verify(String)} for callers that reject invalid tokens
+     * @param token
+     * @return the verified token
+     * @throws UnauthorizedException if the token is invalid
+     */
+    public ParsedToken parse(String token) throws UnauthorizedException {
+        return verify(token).orElseThrow(UnauthorizedException::new);
+    }
+
+    /**
+     * Token without its signature, to store it where it could leak (e.g. the email outbox). It can't be used as a token
+     * until {@link #restoreSignature(String, String)} signs it again
+     * @param token HMAC signed token
+     * @return header and claims of the token
+     */
+    public String stripSignature(String token) {
+        int signatureStart = token.lastIndexOf('.');
+        if (signatureStart < 0) {
+            throw new MalformedJwtException("JWT strings must contain exactly 2 period characters");
+        }
+        return token.substring(0, signatureStart);
+    }
+
+    /**
+     * Sign again a token from {@link #stripSignature(String)} with the key named by its kid. HMAC signatures are
+     * deterministic, the result is the original token.
+     * Whatever is signed here was not checked, the caller has to match the result against the digest it kept of the
+     * original token before trusting it
+     * @param unsignedToken
+     * @param type only tokens with this type header are signed, never access tokens
+     * @return compact jws
+     * @throws UnsupportedJwtException if the type does not match, the key is unknown or it is not an HMAC key
+     */
+    public String restoreSignature(String unsignedToken, String type) throws UnsupportedJwtException {
+
+        int headerEnd = unsignedToken.indexOf('.');
+        if (headerEnd < 0) {
+            throw new MalformedJwtException("Unsigned JWT strings must contain exactly 1 period character");
+        }
+        Map<String, Object> header = deserializer.deserialize(Decoders.BASE64URL.decode(unsignedToken.substring(0, headerEnd)));
+        if (!type.equals(header.get("type"))) {
+            throw new UnsupportedJwtException("Only " + type + " signatures can be restored, got " + header.get("type"));
+        }
+        Object keyId = header.get(JwsHeader.KEY_ID);
+        TokenKey tokenKey = keyRing.getVerificationKey(keyId != null ? keyId.toString() : null);
+        if (!tokenKey.getAlgorithm().isHmac() || !tokenKey.getAlgorithm().getValue().equals(header.get(JwsHeader.ALGORITHM))) {
+            throw new UnsupportedJwtException("Only HMAC signatures can be restored, got " + header.get(JwsHeader.ALGORITHM));
+        }
+
+        try {
+            Mac mac = Mac.getInstance(tokenKey.getAlgorithm().getJcaName());
+            mac.init(tokenKey.getKey());
+            return unsignedToken + '.' + Encoders.BASE64URL.encode(mac.doFinal(unsignedToken.getBytes(StandardCharsets.US_ASCII)));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Unable to initialize " + tokenKey.getAlgorithm().getJcaName(), e);
+        }
+    }
+
+    private String sign(TokenBuilder builder, TokenKey signingKey) {
+        builder.setHeaderParam(JwsHeader.KEY_ID, signingKey.getId());
+        boolean hs512 = hs512Codec != null && signingKey.getAlgorithm() == SignatureAlgorithm.HS512;
+        return ServerTiming.time(ServerTiming.JWT, () -> signTimer.record(() -> hs512
+                ? hs512Codec.sign(builder.getHeader(), builder.getClaims(), signingKey)
+                : jjwtBuilder(builder, signingKey).compact()));
+    }
+
+    private Supplier<ParsedToken> decode(String token) {
+        Supplier<ParsedToken> verifiedToken = hs512Codec != null ? hs512Codec.verify(token) : null;
+        return verifiedToken != null ? verifiedToken : jjwtVerify(token);
+    }
+
+    // Builders are not thread safe, only their serializer is shared
+    private JwtBuilder jjwtBuilder(TokenBuilder builder, TokenKey signingKey) {
+        JwtBuilder jwtBuilder = Jwts.builder()
+                .setHeaderParams(builder.getHeader())
+                .setClaims(builder.getClaims());
+        if (serializer != null) {
+            jwtBuilder.serializeToJsonWith(serializer);
+        }
+        return jwtBuilder.signWith(signingKey.getKey(), signingKey.getAlgorithm());
+    }
+
+    private Supplier<ParsedToken> jjwtVerify(String token) {
+        Claims claims = parser.parseClaimsJws(token).getBody();
+        return () -> new ParsedToken(claims);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T load(Class<?> type) {
+        // El mismo que jjwt buscaria en cada parser o compact()
+        Iterator<?> implementations = ServiceLoader.load(type).iterator();
+        return implementations.hasNext() ? (T) implementations.next() : null;
+    }
+}
@@ -0,0 +1,16 @@
+package com.tesis.utils;
+
+public enum TokenCodecMode {
+
+    /**
+     * Tokens are signed and verified by jjwt
+     */
+    JJWT,
+
+    /**
+     * Tokens are signed and verified by {@link Hs512Codec}, which only supports the shape of the tokens we issue (HS512,
+     * flat header and claims). Issued tokens are the same bytes jjwt would produce, so both modes accept each other's
+     * tokens and can be switched at any time
+     */
+    HS512
+}
@@ -0,0 +1,34 @@
+package com.tesis.utils;
+
+import com.tesis.exceptions.InternalServerErrorException;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Fixed size fingerprint of the tokens stored in db, so the token itself is never persisted
+ */
+public class TokenDigests {
+
+    public static final String ALGORITHM = "SHA-256";
+    public static final int LENGTH = 32;
+
+    public static byte[] digest(String token) {
+        try {
+            return MessageDigest.getInstance(ALGORITHM).digest(token.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new InternalServerErrorException("internal error", e);
+        }
+    }
+
+    /**
+     * Constant time comparison of a stored digest against a token
+     * @param digest
+     * @param token
+     * @return
+     */
+    public static boolean matches(byte[] digest, String token) {
+        return digest != null && token != null && MessageDigest.isEqual(digest, digest(token));
+    }
+}
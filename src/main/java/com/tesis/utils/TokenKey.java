@@ -0,0 +1,54 @@
+package com.tesis.utils;
+
+import io.jsonwebtoken.SignatureAlgorithm;
+import lombok.Getter;
+
+import java.security.Key;
+import java.security.KeyPair;
+import java.time.Instant;
+
+@Getter
+public class TokenKey {
+
+    /**
+     * Sent in the kid header of the tokens it signs, null for the legacy key (tokens without kid)
+     */
+    private final String id;
+    /**
+     * Signs the tokens, the secret of HMAC keys or the private key of asymmetric ones
+     */
+    private final Key key;
+    /**
+     * Verifies the tokens, the same secret or the public key
+     */
+    private final Key verificationKey;
+    private final SignatureAlgorithm algorithm;
+    /**
+     * From then on it signs new tokens, until a key of the same algorithm with a later activeFrom is reached
+     */
+    private final Instant activeFrom;
+
+    /**
+     * HS512 key
+     */
+    public TokenKey(String id, Key key, Instant activeFrom) {
+        this(id, key, key, SignatureAlgorithm.HS512, activeFrom);
+    }
+
+    /**
+     * Asymmetric key, its public key can be published to verify tokens outside this service
+     */
+    public TokenKey(String id, KeyPair keyPair, SignatureAlgorithm algorithm, Instant activeFrom) {
+        this(id, keyPair.getPrivate(), keyPair.getPublic(), algorithm, activeFrom);
+        algorithm.assertValidSigningKey(keyPair.getPrivate());
+        algorithm.assertValidVerificationKey(keyPair.getPublic());
+    }
+
+    private TokenKey(String id, Key key, Key verificationKey, SignatureAlgorithm algorithm, Instant activeFrom) {
+        this.id = id;
+        this.key = key;
+        this.verificationKey = verificationKey;
+        this.algorithm = algorithm;
+        this.activeFrom = activeFrom;
+    }
+}
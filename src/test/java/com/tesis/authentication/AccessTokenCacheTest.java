@@ -0,0 +1,160 @@
+package com.tesis.authentication;
+
+import com.tesis.exceptions.UnauthorizedException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AccessTokenCacheTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private AccessTokenCache accessTokenCache;
+
+    @BeforeEach
+    public void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        accessTokenCache = new AccessTokenCache(meterRegistry, 2, Duration.ofDays(1));
+    }
+
+    @DisplayName("Access token cache - get() verifier is only called on a miss")
+    @Test
+    public void get1() {
+
+        AtomicInteger verifications = new AtomicInteger();
+        VerifiedAccessToken verifiedToken = new VerifiedAccessToken(1L, Date.from(Instant.now().plusSeconds(60)));
+
+        assertEquals(1L, accessTokenCache.get("token", () -> {
+            verifications.incrementAndGet();
+            return verifiedToken;
+        }).getUserId());
+        assertEquals(1L, accessTokenCache.get("token", () -> {
+            verifications.incrementAndGet();
+            return verifiedToken;
+        }).getUserId());
+
+        assertEquals(1, verifications.get());
+        assertEquals(1, meterRegistry.get("cache.gets").tag("cache", AccessTokenCache.CACHE_NAME).tag("result", "hit").functionCounter().count());
+    }
+
+    @DisplayName("Access token cache - get() entries past their exp claim should be verified again")
+    @Test
+    public void get2() {
+
+        VerifiedAccessToken expiredToken = new VerifiedAccessToken(1L, Date.from(Instant.now().minusSeconds(1)));
+        accessTokenCache.get("token", () -> expiredToken);
+
+        assertThrows(UnauthorizedException.class, () -> accessTokenCache.get("token", () -> {
+            throw new UnauthorizedException();
+        }));
+    }
+
+    @DisplayName("Access token cache - get() verifier errors are not cached")
+    @Test
+    public void get3() {
+
+        assertThrows(UnauthorizedException.class, () -> accessTokenCache.get("token", () -> {
+            throw new UnauthorizedException("Invalid access token");
+        }));
+        assertEquals(1L, accessTokenCache.get("token", () -> new VerifiedAccessToken(1L, null)).getUserId());
+    }
+
+    @DisplayName("Access token cache - invalidate() should force a new verification")
+    @Test
+    public void invalidate1() {
+
+        AtomicInteger verifications = new AtomicInteger();
+        accessTokenCache.get("token", () -> {
+            verifications.incrementAndGet();
+            return new VerifiedAccessToken(1L, null);
+        });
+
+        accessTokenCache.invalidate("token");
+        accessTokenCache.invalidate(null);
+
+        accessTokenCache.get("token", () -> {
+            verifications.incrementAndGet();
+            return new VerifiedAccessToken(1L, null);
+        });
+        assertEquals(2, verifications.get());
+    }
+
+    @DisplayName("Access token cache - invalidateUser() should only drop the tokens of the user")
+    @Test
+    public void invalidateUser1() {
+
+        accessTokenCache.put("token1", new VerifiedAccessToken(1L, null), accessTokenCache.generation());
+        accessTokenCache.put("token2", new VerifiedAccessToken(2L, null), accessTokenCache.generation());
+
+        accessTokenCache.invalidateUser(1L);
+
+        assertNull(accessTokenCache.getIfPresent("token1"));
+        assertNotNull(accessTokenCache.getIfPresent("token2"));
+    }
+
+    @DisplayName("Access token cache - invalidateUser() should drop verified and re-cached tokens of the user")
+    @Test
+    public void invalidateUser2() {
+
+        accessTokenCache.get("token1", () -> new VerifiedAccessToken(1L, null));
+        accessTokenCache.invalidate("token1");
+        accessTokenCache.get("token1", () -> new VerifiedAccessToken(1L, null));
+        accessTokenCache.put("token2", new VerifiedAccessToken(1L, null), accessTokenCache.generation());
+
+        accessTokenCache.invalidateUser(1L);
+
+        assertNull(accessTokenCache.getIfPresent("token1"));
+        assertNull(accessTokenCache.getIfPresent("token2"));
+    }
+
+    @DisplayName("Access token cache - get() a verification running while the user logs out should not stay cached")
+    @Test
+    public void invalidateUser3() throws Exception {
+
+        CountDownLatch verifying = new CountDownLatch(1);
+        CountDownLatch loggedOut = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<VerifiedAccessToken> validation = executor.submit(() -> accessTokenCache.get("token", () -> {
+                verifying.countDown();
+                assertTrue(loggedOut.await(5, TimeUnit.SECONDS));
+                return new VerifiedAccessToken(1L, null);
+            }));
+
+            assertTrue(verifying.await(5, TimeUnit.SECONDS));
+            accessTokenCache.invalidateUser(1L);
+            loggedOut.countDown();
+
+            assertEquals(1L, validation.get(5, TimeUnit.SECONDS).getUserId());
+            assertNull(accessTokenCache.getIfPresent("token"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @DisplayName("Access token cache - put() a verification taken before an invalidation should not stay cached")
+    @Test
+    public void invalidateUser4() {
+
+        long verifiedAt = accessTokenCache.generation();
+        accessTokenCache.invalidate("token1");
+
+        accessTokenCache.put("token1", new VerifiedAccessToken(1L, null), verifiedAt);
+        accessTokenCache.put("token2", new VerifiedAccessToken(1L, null), accessTokenCache.generation());
+
+        assertNull(accessTokenCache.getIfPresent("token1"));
+        assertNotNull(accessTokenCache.getIfPresent("token2"));
+    }
+}
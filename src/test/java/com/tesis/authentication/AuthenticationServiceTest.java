@@ -3,14 +3,27 @@ package com.tesis.authentication;
 import com.google.common.collect.Sets;
 import com.tesis.exceptions.BadRequestException;
 import com.tesis.exceptions.ForbiddenException;
+import com.tesis.exceptions.TooManyRequestsException;
 import com.tesis.exceptions.UnauthorizedException;
+import com.tesis.passwords.PasswordRehasher;
 import com.tesis.privileges.Privilege;
+import com.tesis.privileges.PrivilegeRepository;
+import com.tesis.roles.AuthorizationIndex;
 import com.tesis.roles.Role;
+import com.tesis.roles.RoleRepository;
 import com.tesis.users.User;
+import com.tesis.users.UserAccessChangedEvent;
+import com.tesis.users.UserAuthorization;
 import com.tesis.users.UserService;
-import com.tesis.utils.JwtUtils;
+import com.tesis.users.UserStatus;
+import com.tesis.utils.ParsedToken;
+import com.tesis.utils.TokenCodec;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.impl.DefaultClaims;
 import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import mockit.MockUp;
 import mockit.integration.junit5.JMockitExtension;
 import org.assertj.core.util.Lists;
@@ -18,20 +31,27 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
-import org.mockito.Spy;
+import org.springframework.data.domain.Sort;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
 import java.security.Key;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Date;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.Mockito.doNothing;
-import static org.mockito.Mockito.when;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
 
 @ExtendWith({SpringExtension.class, JMockitExtension.class})
 public class AuthenticationServiceTest {
@@ -39,18 +59,39 @@ public class AuthenticationServiceTest {
     @Mock
     private AccessTokenRepository accessTokenRepository;
     @Mock
+    private RoleRepository roleRepository;
+    @Mock
+    private PrivilegeRepository privilegeRepository;
+    @Mock
     private UserService userService;
     @Mock
     private PasswordEncoder passwordEncoder;
-    @Spy
+    @Mock
+    private PasswordRehasher passwordRehasher;
     private Key key = Keys.secretKeyFor(SignatureAlgorithm.HS512);
+    private TokenCodec tokenCodec = new TokenCodec(key, new SimpleMeterRegistry());
 
-    @InjectMocks
     private DefaultAuthenticationService authenticationService;
+    private LoginThrottle loginThrottle;
+    private AccessTokenCache accessTokenCache;
 
     @BeforeEach
     public void setUp() {
-        authenticationService = new DefaultAuthenticationService(accessTokenRepository, userService, passwordEncoder, key);
+        authenticationService = newAuthenticationService(ValidationMode.STATEFUL);
+    }
+
+    private DefaultAuthenticationService newAuthenticationService(ValidationMode validationMode) {
+        accessTokenCache = new AccessTokenCache(new SimpleMeterRegistry(), 100, Duration.ofDays(1));
+        AuthorizationIndex authorizationIndex = new AuthorizationIndex(roleRepository, privilegeRepository, Duration.ZERO);
+        loginThrottle = new LoginThrottle(new SimpleMeterRegistry(), Duration.ofMinutes(15), 2, 3, 100);
+        return new DefaultAuthenticationService(accessTokenRepository, accessTokenCache, new AccessTokenRevocations(), authorizationIndex, userService, passwordEncoder, passwordRehasher, loginThrottle, tokenCodec, validationMode, 10);
+    }
+
+    private Claims mockClaims(String subject) {
+        Claims claims = new DefaultClaims();
+        claims.setSubject(subject);
+        claims.setExpiration(Date.from(Instant.now().plusSeconds(60)));
+        return claims;
     }
 
     @DisplayName("Authentication service - login() user not found")
@@ -82,7 +123,7 @@ public class AuthenticationServiceTest {
         assertThrows(UnauthorizedException.class, () -> authenticationService.login(body));
     }
 
-    @DisplayName("Authentication service - login() found valid token")
+    @DisplayName("Authentication service - login() existing token should be replaced by a new one")
     @Test
     public void login3() {
 
@@ -110,16 +151,18 @@ public class AuthenticationServiceTest {
         AccessToken token = authenticationService.login(body);
         assertNotNull(token);
         assertNotNull(token.getToken());
+        assertNotEquals("token", token.getToken());
+        verify(accessTokenRepository).delete(mockedToken);
     }
 
     @DisplayName("Authentication service - login() expired token should retrieve a new one")
     @Test
     public void login4() {
 
-        new MockUp<JwtUtils>() {
+        new MockUp<TokenCodec>() {
             @mockit.Mock
-            public boolean validateToken(String token, Key key) {
-                return false;
+            public Optional<ParsedToken> verify(String token) {
+                return Optional.empty();
             }
         };
 
@@ -189,10 +232,10 @@ public class AuthenticationServiceTest {
     @Test
     public void logout1() {
 
-        new MockUp<JwtUtils>() {
+        new MockUp<TokenCodec>() {
             @mockit.Mock
-            public boolean validateToken(String token, Key key) {
-                return false;
+            public Optional<ParsedToken> verify(String token) {
+                return Optional.empty();
             }
         };
 
@@ -203,10 +246,10 @@ public class AuthenticationServiceTest {
     @Test
     public void logout3() {
 
-        new MockUp<JwtUtils>() {
+        new MockUp<TokenCodec>() {
             @mockit.Mock
-            public Long getUserIdFromToken(String token, Key key) {
-                return 1L;
+            public Optional<ParsedToken> verify(String token) {
+                return Optional.of(new ParsedToken(mockClaims("1")));
             }
         };
         when(accessTokenRepository.findById(1L)).thenReturn(Optional.empty());
@@ -218,10 +261,10 @@ public class AuthenticationServiceTest {
     @Test
     public void logout4() {
 
-        new MockUp<JwtUtils>() {
+        new MockUp<TokenCodec>() {
             @mockit.Mock
-            public Long getUserIdFromToken(String token, Key key) {
-                return 1L;
+            public Optional<ParsedToken> verify(String token) {
+                return Optional.of(new ParsedToken(mockClaims("1")));
             }
         };
         when(accessTokenRepository.findById(1L)).thenReturn(Optional.of(AccessToken.builder().build()));
@@ -233,10 +276,10 @@ public class AuthenticationServiceTest {
     @Test
     public void validatePrivilegesOnAccessToken1() {
 
-        new MockUp<JwtUtils>() {
+        new MockUp<TokenCodec>() {
             @mockit.Mock
-            public boolean validateToken(String token, Key key) {
-                return false;
+            public Optional<ParsedToken> verify(String token) {
+                return Optional.empty();
             }
         };
 
@@ -247,10 +290,10 @@ public class AuthenticationServiceTest {
     @Test
     public void validatePrivilegesOnAccessToken4() {
 
-        new MockUp<JwtUtils>() {
+        new MockUp<TokenCodec>() {
             @mockit.Mock
-            public Long getUserIdFromToken(String token, Key key) {
-                return 1L;
+            public Optional<ParsedToken> verify(String token) {
+                return Optional.of(new ParsedToken(mockClaims("1")));
             }
         };
         when(accessTokenRepository.findById(1L)).thenReturn(Optional.of(AccessToken.builder().token("token").build()));
@@ -261,10 +304,10 @@ public class AuthenticationServiceTest {
     @Test
     public void validatePrivilegesOnAccessToken5() {
 
-        new MockUp<JwtUtils>() {
+        new MockUp<TokenCodec>() {
             @mockit.Mock
-            public Long getUserIdFromToken(String token, Key key) {
-                return 1L;
+            public Optional<ParsedToken> verify(String token) {
+                return Optional.of(new ParsedToken(mockClaims("1")));
             }
         };
 
@@ -287,7 +330,9 @@ public class AuthenticationServiceTest {
                 .build();
 
         when(accessTokenRepository.findById(1L)).thenReturn(Optional.of(AccessToken.builder().token("token").build()));
-        when(userService.getUser(1L)).thenReturn(Optional.of(mockedUser));
+        when(userService.getUserAuthorization(1L)).thenReturn(Optional.of(new UserAuthorization(1L, UserStatus.ACTIVE, mockedUser.getRole().getId())));
+        when(privilegeRepository.findAll(any(Sort.class))).thenReturn(new ArrayList<>(mockedUser.getRole().getPrivileges()));
+        when(roleRepository.findAllWithPrivileges()).thenReturn(Collections.singletonList(mockedUser.getRole()));
 
         assertThrows(ForbiddenException.class, () -> authenticationService.validatePrivilegesOnAccessToken("token", Lists.newArrayList("GET_CLIENT", "UPDATE_CLIENT")));
     }
@@ -296,10 +341,10 @@ public class AuthenticationServiceTest {
     @Test
     public void validatePrivilegesOnAccessToken6() {
 
-        new MockUp<JwtUtils>() {
+        new MockUp<TokenCodec>() {
             @mockit.Mock
-            public Long getUserIdFromToken(String token, Key key) {
-                return 1L;
+            public Optional<ParsedToken> verify(String token) {
+                return Optional.of(new ParsedToken(mockClaims("1")));
             }
         };
 
@@ -322,8 +367,502 @@ public class AuthenticationServiceTest {
                 .build();
 
         when(accessTokenRepository.findById(1L)).thenReturn(Optional.of(AccessToken.builder().token("token").build()));
-        when(userService.getUser(1L)).thenReturn(Optional.of(mockedUser));
+        when(userService.getUserAuthorization(1L)).thenReturn(Optional.of(new UserAuthorization(1L, UserStatus.ACTIVE, mockedUser.getRole().getId())));
+        when(privilegeRepository.findAll(any(Sort.class))).thenReturn(new ArrayList<>(mockedUser.getRole().getPrivileges()));
+        when(roleRepository.findAllWithPrivileges()).thenReturn(Collections.singletonList(mockedUser.getRole()));
 
         assertDoesNotThrow(() -> authenticationService.validatePrivilegesOnAccessToken("token", Lists.newArrayList("GET_CLIENT")));
     }
+
+    @DisplayName("Authentication service - validatePrivilegesOnAccessToken() verified token should be served from cache")
+    @Test
+    public void validatePrivilegesOnAccessToken7() {
+
+        new MockUp<TokenCodec>() {
+            @mockit.Mock
+            public Optional<ParsedToken> verify(String token) {
+                return Optional.of(new ParsedToken(mockClaims("1")));
+            }
+        };
+        when(accessTokenRepository.findById(1L)).thenReturn(Optional.of(AccessToken.builder().token("token").build()));
+
+        authenticationService.validatePrivilegesOnAccessToken("token", Collections.emptyList());
+        authenticationService.validatePrivilegesOnAccessToken("token", Collections.emptyList());
+
+        verify(accessTokenRepository, times(1)).findById(1L);
+    }
+
+    @DisplayName("Authentication service - validatePrivilegesOnAccessToken() logout should evict token from cache")
+    @Test
+    public void validatePrivilegesOnAccessToken8() {
+
+        new MockUp<TokenCodec>() {
+            @mockit.Mock
+            public Optional<ParsedToken> verify(String token) {
+                return Optional.of(new ParsedToken(mockClaims("1")));
+            }
+        };
+        when(accessTokenRepository.findById(1L)).thenReturn(Optional.of(AccessToken.builder().token("token").build()));
+
+        authenticationService.validatePrivilegesOnAccessToken("token", Collections.emptyList());
+        authenticationService.logout("token");
+
+        when(accessTokenRepository.findById(1L)).thenReturn(Optional.empty());
+        assertThrows(UnauthorizedException.class, () -> authenticationService.validatePrivilegesOnAccessToken("token", Collections.emptyList()));
+    }
+
+    @DisplayName("Authentication service - validatePrivilegesOnAccessToken() should not modify requested privileges")
+    @Test
+    public void validatePrivilegesOnAccessToken9() {
+
+        new MockUp<TokenCodec>() {
+            @mockit.Mock
+            public Optional<ParsedToken> verify(String token) {
+                return Optional.of(new ParsedToken(mockClaims("1")));
+            }
+        };
+
+        Role role = Role.builder()
+                .id(1L)
+                .privileges(Sets.newHashSet(Privilege.builder().id(1L).name("GET_CLIENT").build()))
+                .build();
+        User mockedUser = User.builder()
+                .id(1L)
+                .role(role)
+                .build();
+
+        when(accessTokenRepository.findById(1L)).thenReturn(Optional.of(AccessToken.builder().token("token").build()));
+        when(userService.getUserAuthorization(1L)).thenReturn(Optional.of(new UserAuthorization(1L, UserStatus.ACTIVE, mockedUser.getRole().getId())));
+        when(privilegeRepository.findAll(any(Sort.class))).thenReturn(new ArrayList<>(role.getPrivileges()));
+        when(roleRepository.findAllWithPrivileges()).thenReturn(Collections.singletonList(role));
+
+        List<String> privileges = Lists.newArrayList("GET_CLIENT", "UPDATE_CLIENT");
+        assertThrows(ForbiddenException.class, () -> authenticationService.validatePrivilegesOnAccessToken("token", privileges));
+        assertEquals(2, privileges.size());
+    }
+
+    @DisplayName("Authentication service - validatePrivilegesOnAccessTokens() one result per validation in request order")
+    @Test
+    public void validatePrivilegesOnAccessTokens1() {
+
+        new MockUp<TokenCodec>() {
+            @mockit.Mock
+            public Optional<ParsedToken> verify(String token) {
+                if ("invalid".equals(token)) {
+                    return Optional.empty();
+                }
+                return Optional.of(new ParsedToken(mockClaims(token.substring(token.length() - 1))));
+            }
+        };
+
+        Role role = Role.builder()
+                .id(1L)
+                .privileges(Sets.newHashSet(Privilege.builder().id(1L).name("GET_CLIENT").build()))
+                .build();
+
+        when(accessTokenRepository.findAllById(any())).thenReturn(Lists.newArrayList(
+                AccessToken.builder().userId(1L).token("token1").build(),
+                AccessToken.builder().userId(2L).token("token2").build(),
+                AccessToken.builder().userId(3L).token("newer token").build()
+        ));
+        when(userService.getUserAuthorizations(any())).thenReturn(Lists.newArrayList(
+                new UserAuthorization(1L, UserStatus.ACTIVE, role.getId()),
+                new UserAuthorization(2L, UserStatus.ACTIVE, role.getId())
+        ));
+        when(privilegeRepository.findAll(any(Sort.class))).thenReturn(new ArrayList<>(role.getPrivileges()));
+        when(roleRepository.findAllWithPrivileges()).thenReturn(Collections.singletonList(role));
+
+        List<TokenValidationResult> results = authenticationService.validatePrivilegesOnAccessTokens(Lists.newArrayList(
+                new TokenValidationBody("token1", Lists.newArrayList("GET_CLIENT")),
+                new TokenValidationBody("token2", Lists.newArrayList("GET_CLIENT", "CREATE_CLIENT")),
+                new TokenValidationBody("token1", null),
+                new TokenValidationBody("token3", Collections.emptyList()),
+                new TokenValidationBody("invalid", Lists.newArrayList("GET_CLIENT")),
+                new TokenValidationBody(null, null)
+        ));
+
+        assertEquals(6, results.size());
+        assertEquals(ValidationStatus.OK, results.get(0).getStatus());
+        assertEquals(ValidationStatus.FORBIDDEN, results.get(1).getStatus());
+        assertEquals(ValidationStatus.OK, results.get(2).getStatus());
+        assertEquals(ValidationStatus.UNAUTHORIZED, results.get(3).getStatus());
+        assertEquals(ValidationStatus.UNAUTHORIZED, results.get(4).getStatus());
+        assertEquals(ValidationStatus.UNAUTHORIZED, results.get(5).getStatus());
+
+        verify(accessTokenRepository, times(1)).findAllById(any());
+        verify(accessTokenRepository, never()).findById(any());
+        verify(userService, times(1)).getUserAuthorizations(any());
+        verify(userService, never()).getUserAuthorization(anyLong());
+    }
+
+    @DisplayName("Authentication service - validatePrivilegesOnAccessTokens() cached tokens should not hit the db")
+    @Test
+    public void validatePrivilegesOnAccessTokens2() {
+
+        new MockUp<TokenCodec>() {
+            @mockit.Mock
+            public Optional<ParsedToken> verify(String token) {
+                return Optional.of(new ParsedToken(mockClaims("1")));
+            }
+        };
+        when(accessTokenRepository.findById(1L)).thenReturn(Optional.of(AccessToken.builder().userId(1L).token("token").build()));
+        authenticationService.validatePrivilegesOnAccessToken("token", Collections.emptyList());
+
+        List<TokenValidationResult> results = authenticationService.validatePrivilegesOnAccessTokens(Lists.newArrayList(
+                new TokenValidationBody("token", null),
+                new TokenValidationBody("token", Collections.emptyList())
+        ));
+
+        assertEquals(ValidationStatus.OK, results.get(0).getStatus());
+        assertEquals(ValidationStatus.OK, results.get(1).getStatus());
+        verify(accessTokenRepository, never()).findAllById(any());
+    }
+
+    @DisplayName("Authentication service - validatePrivilegesOnAccessTokens() deleted user should be unauthorized")
+    @Test
+    public void validatePrivilegesOnAccessTokens3() {
+
+        new MockUp<TokenCodec>() {
+            @mockit.Mock
+            public Optional<ParsedToken> verify(String token) {
+                return Optional.of(new ParsedToken(mockClaims("1")));
+            }
+        };
+        when(accessTokenRepository.findAllById(any())).thenReturn(Lists.newArrayList(AccessToken.builder().userId(1L).token("token").build()));
+        when(userService.getUserAuthorizations(any())).thenReturn(Collections.emptyList());
+
+        List<TokenValidationResult> results = authenticationService.validatePrivilegesOnAccessTokens(Lists.newArrayList(
+                new TokenValidationBody("token", Lists.newArrayList("GET_CLIENT"))
+        ));
+
+        assertEquals(ValidationStatus.UNAUTHORIZED, results.get(0).getStatus());
+    }
+
+    @DisplayName("Authentication service - validatePrivilegesOnAccessTokens() batches over the limit or with null validations are rejected")
+    @Test
+    public void validatePrivilegesOnAccessTokens4() {
+
+        List<TokenValidationBody> tooMany = IntStream.range(0, 11)
+                .mapToObj(i -> new TokenValidationBody("token" + i, null))
+                .collect(Collectors.toList());
+        List<TokenValidationBody> withNull = Lists.newArrayList(new TokenValidationBody("token", null), null);
+
+        assertThrows(BadRequestException.class, () -> authenticationService.validatePrivilegesOnAccessTokens(tooMany));
+        assertThrows(BadRequestException.class, () -> authenticationService.validatePrivilegesOnAccessTokens(withNull));
+        verify(accessTokenRepository, never()).findAllById(any());
+        verify(userService, never()).getUserAuthorizations(any());
+    }
+
+    @DisplayName("Authentication service - validatePrivilegesOnAccessToken() stateless mode should not hit the db")
+    @Test
+    public void validatePrivilegesOnAccessTokenStateless1() {
+
+        Role role = Role.builder()
+                .id(1L)
+                .privileges(Sets.newHashSet(Privilege.builder().id(1L).name("GET_CLIENT").build()))
+                .build();
+        new MockUp<TokenCodec>() {
+            @mockit.Mock
+            public Optional<ParsedToken> verify(String token) {
+                Claims claims = mockClaims("1");
+                claims.put(AccessTokenClaims.ROLE_ID, 1);
+                return Optional.of(new ParsedToken(claims));
+            }
+        };
+        when(privilegeRepository.findAll(any(Sort.class))).thenReturn(new ArrayList<>(role.getPrivileges()));
+        when(roleRepository.findAllWithPrivileges()).thenReturn(Collections.singletonList(role));
+
+        DefaultAuthenticationService statelessService = newAuthenticationService(ValidationMode.STATELESS);
+
+        assertDoesNotThrow(() -> statelessService.validatePrivilegesOnAccessToken("token", Lists.newArrayList("GET_CLIENT")));
+        assertThrows(ForbiddenException.class, () -> statelessService.validatePrivilegesOnAccessToken("token", Lists.newArrayList("CREATE_CLIENT")));
+        verify(accessTokenRepository, never()).findById(any());
+        verify(userService, never()).getUserAuthorization(anyLong());
+    }
+
+    @DisplayName("Authentication service - validatePrivilegesOnAccessToken() stateless mode should reject revoked tokens")
+    @Test
+    public void validatePrivilegesOnAccessTokenStateless2() {
+
+        new MockUp<TokenCodec>() {
+            @mockit.Mock
+            public Optional<ParsedToken> verify(String token) {
+                Claims claims = mockClaims("1");
+                claims.put(AccessTokenClaims.ROLE_ID, 1);
+                return Optional.of(new ParsedToken(claims));
+            }
+        };
+        when(accessTokenRepository.findById(1L)).thenReturn(Optional.of(AccessToken.builder().userId(1L).token("token").build()));
+
+        DefaultAuthenticationService statelessService = newAuthenticationService(ValidationMode.STATELESS);
+
+        assertDoesNotThrow(() -> statelessService.validatePrivilegesOnAccessToken("token", Collections.emptyList()));
+        statelessService.logout("token");
+        assertThrows(UnauthorizedException.class, () -> statelessService.validatePrivilegesOnAccessToken("token", Collections.emptyList()));
+    }
+
+    @DisplayName("Authentication service - validatePrivilegesOnAccessToken() stateless mode tokens without role claim should be checked against db")
+    @Test
+    public void validatePrivilegesOnAccessTokenStateless3() {
+
+        new MockUp<TokenCodec>() {
+            @mockit.Mock
+            public Optional<ParsedToken> verify(String token) {
+                return Optional.of(new ParsedToken(mockClaims("1")));
+            }
+        };
+        when(accessTokenRepository.findById(1L)).thenReturn(Optional.empty());
+
+        DefaultAuthenticationService statelessService = newAuthenticationService(ValidationMode.STATELESS);
+
+        assertThrows(UnauthorizedException.class, () -> statelessService.validatePrivilegesOnAccessToken("token", Collections.emptyList()));
+        verify(accessTokenRepository, times(1)).findById(1L);
+    }
+
+    @DisplayName("Authentication service - onUserAccessChanged() should revoke the active token")
+    @Test
+    public void onUserAccessChanged1() {
+
+        new MockUp<TokenCodec>() {
+            @mockit.Mock
+            public Optional<ParsedToken> verify(String token) {
+                Claims claims = mockClaims("1");
+                claims.put(AccessTokenClaims.ROLE_ID, 1);
+                return Optional.of(new ParsedToken(claims));
+            }
+        };
+        AccessToken activeToken = AccessToken.builder().userId(1L).token("token").build();
+        when(accessTokenRepository.findById(1L)).thenReturn(Optional.of(activeToken));
+
+        DefaultAuthenticationService statelessService = newAuthenticationService(ValidationMode.STATELESS);
+        statelessService.validatePrivilegesOnAccessToken("token", Collections.emptyList());
+
+        statelessService.onUserAccessChanged(new UserAccessChangedEvent(1L));
+
+        verify(accessTokenRepository).delete(activeToken);
+        assertThrows(UnauthorizedException.class, () -> statelessService.validatePrivilegesOnAccessToken("token", Collections.emptyList()));
+    }
+
+    @DisplayName("Authentication service - login() new tokens should carry the user role")
+    @Test
+    public void login6() {
+
+        User mockedUser = User.builder()
+                .id(1L)
+                .email("test@test.com")
+                .password("test")
+                .role(Role.builder().id(3L).name("CLIENT").build())
+                .build();
+
+        when(userService.getUser("test@test.com")).thenReturn(Optional.of(mockedUser));
+        when(passwordEncoder.matches("test", "test")).thenReturn(true);
+        when(accessTokenRepository.findById(1L)).thenReturn(Optional.empty());
+
+        AccessToken accessToken = authenticationService.login(new ClientCredentialsBody("test@test.com", "test"));
+
+        Claims claims = tokenCodec.parse(accessToken.getToken()).getClaims();
+        assertEquals(3L, claims.get(AccessTokenClaims.ROLE_ID, Long.class));
+        assertNotNull(claims.getId());
+    }
+
+    @DisplayName("Authentication service - login() new tokens should use the compact claims instead of the user entity")
+    @Test
+    public void login7() {
+
+        User mockedUser = User.builder()
+                .id(1L)
+                .name("test")
+                .lastName("test")
+                .dni("123")
+                .email("test@test.com")
+                .password("$2a$06$kOmbkTdcOYhwsjv2cs1yeOR8Qf5kW7gXwq4kE1KnL8e0m1x9nJcLq")
+                .role(Role.builder()
+                        .id(3L)
+                        .name("CLIENT")
+                        .privileges(Sets.newHashSet(
+                                Privilege.builder().id(1L).name("GET_CLIENT").build(),
+                                Privilege.builder().id(2L).name("CREATE_CLIENT").build()))
+                        .build())
+                .build();
+
+        when(userService.getUser("test@test.com")).thenReturn(Optional.of(mockedUser));
+        when(passwordEncoder.matches("test", mockedUser.getPassword())).thenReturn(true);
+        when(accessTokenRepository.findById(1L)).thenReturn(Optional.empty());
+
+        String token = authenticationService.login(new ClientCredentialsBody("test@test.com", "test")).getToken();
+        String legacyToken = Jwts.builder()
+                .setHeaderParam("type", "BEARER")
+                .setSubject("1")
+                .setIssuedAt(new Date())
+                .setExpiration(Date.from(Instant.now().plusSeconds(60)))
+                .claim("user", mockedUser)
+                .signWith(key, SignatureAlgorithm.HS512)
+                .compact();
+
+        Claims claims = tokenCodec.parse(token).getClaims();
+        assertNull(claims.get("user"));
+        assertEquals(AccessTokenClaims.CURRENT_VERSION, claims.get(AccessTokenClaims.VERSION, Integer.class));
+        assertEquals("test@test.com", claims.get(AccessTokenClaims.EMAIL, String.class));
+        assertEquals("CLIENT", claims.get(AccessTokenClaims.ROLE, String.class));
+        assertTrue(token.length() < legacyToken.length());
+    }
+
+    @DisplayName("Authentication service - validatePrivilegesOnAccessToken() legacy tokens should still be accepted")
+    @Test
+    public void validatePrivilegesOnAccessToken10() {
+
+        String legacyToken = Jwts.builder()
+                .setHeaderParam("type", "BEARER")
+                .setSubject("1")
+                .setIssuedAt(new Date())
+                .setExpiration(Date.from(Instant.now().plusSeconds(60)))
+                .claim("user", User.builder().id(1L).email("test@test.com").build())
+                .signWith(key, SignatureAlgorithm.HS512)
+                .compact();
+        when(accessTokenRepository.findById(1L)).thenReturn(Optional.of(AccessToken.builder().userId(1L).token(legacyToken).build()));
+
+        DefaultAuthenticationService statelessService = newAuthenticationService(ValidationMode.STATELESS);
+
+        assertDoesNotThrow(() -> authenticationService.validatePrivilegesOnAccessToken(legacyToken, Collections.emptyList()));
+        assertDoesNotThrow(() -> statelessService.validatePrivilegesOnAccessToken(legacyToken, Collections.emptyList()));
+    }
+
+    @DisplayName("Authentication service - login() stateless mode should revoke the replaced token")
+    @Test
+    public void login8() {
+
+        User mockedUser = User.builder()
+                .id(1L)
+                .email("test@test.com")
+                .password("test")
+                .role(Role.builder().id(1L).name("CLIENT").build())
+                .build();
+
+        when(userService.getUser("test@test.com")).thenReturn(Optional.of(mockedUser));
+        when(passwordEncoder.matches("test", "test")).thenReturn(true);
+
+        DefaultAuthenticationService statelessService = newAuthenticationService(ValidationMode.STATELESS);
+        AccessToken firstToken = statelessService.login(new ClientCredentialsBody("test@test.com", "test"));
+        assertDoesNotThrow(() -> statelessService.validatePrivilegesOnAccessToken(firstToken.getToken(), Collections.emptyList()));
+
+        // Token emitido por otra instancia o que ya salio de este cache
+        accessTokenCache.invalidate(firstToken.getToken());
+        when(accessTokenRepository.findById(1L)).thenReturn(Optional.of(firstToken));
+        AccessToken secondToken = statelessService.login(new ClientCredentialsBody("test@test.com", "test"));
+
+        assertThrows(UnauthorizedException.class, () -> statelessService.validatePrivilegesOnAccessToken(firstToken.getToken(), Collections.emptyList()));
+        assertDoesNotThrow(() -> statelessService.validatePrivilegesOnAccessToken(secondToken.getToken(), Collections.emptyList()));
+        verify(accessTokenRepository, never()).findAllById(any());
+    }
+
+    @DisplayName("Authentication service - login() should ask for a rehash only after the password matches")
+    @Test
+    public void login9() {
+
+        User mockedUser = User.builder()
+                .id(1L)
+                .email("test@test.com")
+                .password("stored hash")
+                .build();
+
+        when(userService.getUser("test@test.com")).thenReturn(Optional.of(mockedUser));
+        when(passwordEncoder.matches("wrong", "stored hash")).thenReturn(false);
+        when(passwordEncoder.matches("test", "stored hash")).thenReturn(true);
+
+        assertThrows(UnauthorizedException.class, () -> authenticationService.login(new ClientCredentialsBody("test@test.com", "wrong")));
+        verify(passwordRehasher, never()).rehashIfNeeded(any(), any(), any());
+
+        authenticationService.login(new ClientCredentialsBody("test@test.com", "test"));
+        verify(passwordRehasher).rehashIfNeeded(1L, "test", "stored hash");
+    }
+
+    @DisplayName("Authentication service - login() throttled email should be rejected before any db or hashing work")
+    @Test
+    public void login10() {
+
+        User mockedUser = User.builder()
+                .id(1L)
+                .email("test@test.com")
+                .password("stored hash")
+                .build();
+
+        when(userService.getUser("test@test.com")).thenReturn(Optional.of(mockedUser));
+        when(passwordEncoder.matches("wrong", "stored hash")).thenReturn(false);
+
+        assertThrows(UnauthorizedException.class, () -> authenticationService.login(new ClientCredentialsBody("test@test.com", "wrong"), "10.0.0.1"));
+        assertThrows(UnauthorizedException.class, () -> authenticationService.login(new ClientCredentialsBody("test@test.com", "wrong"), "10.0.0.2"));
+        assertThrows(TooManyRequestsException.class, () -> authenticationService.login(new ClientCredentialsBody("test@test.com", "test"), "10.0.0.3"));
+
+        verify(userService, times(2)).getUser(anyString());
+        verify(passwordEncoder, times(2)).matches(any(), any());
+    }
+
+    @DisplayName("Authentication service - login() success should reset the failures of the email")
+    @Test
+    public void login11() {
+
+        User mockedUser = User.builder()
+                .id(1L)
+                .email("test@test.com")
+                .password("stored hash")
+                .build();
+
+        when(userService.getUser("test@test.com")).thenReturn(Optional.of(mockedUser));
+        when(passwordEncoder.matches("wrong", "stored hash")).thenReturn(false);
+        when(passwordEncoder.matches("test", "stored hash")).thenReturn(true);
+
+        assertThrows(UnauthorizedException.class, () -> authenticationService.login(new ClientCredentialsBody("test@test.com", "wrong")));
+        assertNotNull(authenticationService.login(new ClientCredentialsBody("test@test.com", "test")));
+        assertThrows(UnauthorizedException.class, () -> authenticationService.login(new ClientCredentialsBody("test@test.com", "wrong")));
+        assertNotNull(authenticationService.login(new ClientCredentialsBody("test@test.com", "test")));
+    }
+
+    @DisplayName("Authentication service - login() active token should be reused while it is valid")
+    @Test
+    public void login12() {
+
+        User mockedUser = User.builder()
+                .id(1L)
+                .email("test@test.com")
+                .password("test")
+                .role(Role.builder().id(1L).name("CLIENT").build())
+                .build();
+
+        when(userService.getUser("test@test.com")).thenReturn(Optional.of(mockedUser));
+        when(passwordEncoder.matches("test", "test")).thenReturn(true);
+
+        AccessToken firstToken = authenticationService.login(new ClientCredentialsBody("test@test.com", "test"));
+        when(accessTokenRepository.findById(1L)).thenReturn(Optional.of(firstToken));
+        AccessToken secondToken = authenticationService.login(new ClientCredentialsBody("test@test.com", "test"));
+
+        assertEquals(firstToken.getToken(), secondToken.getToken());
+        verify(accessTokenRepository, times(1)).save(any());
+        verify(accessTokenRepository, never()).delete(any());
+        assertDoesNotThrow(() -> authenticationService.validatePrivilegesOnAccessToken(firstToken.getToken(), Collections.emptyList()));
+    }
+
+    @DisplayName("Authentication service - login() after a logout should retrieve a new token")
+    @Test
+    public void login13() {
+
+        User mockedUser = User.builder()
+                .id(1L)
+                .email("test@test.com")
+                .password("test")
+                .role(Role.builder().id(1L).name("CLIENT").build())
+                .build();
+
+        when(userService.getUser("test@test.com")).thenReturn(Optional.of(mockedUser));
+        when(passwordEncoder.matches("test", "test")).thenReturn(true);
+
+        AccessToken firstToken = authenticationService.login(new ClientCredentialsBody("test@test.com", "test"));
+        when(accessTokenRepository.findById(1L)).thenReturn(Optional.of(firstToken));
+        authenticationService.logout(firstToken.getToken());
+
+        when(accessTokenRepository.findById(1L)).thenReturn(Optional.empty());
+        AccessToken secondToken = authenticationService.login(new ClientCredentialsBody("test@test.com", "test"));
+
+        assertNotEquals(firstToken.getToken(), secondToken.getToken());
+        verify(accessTokenRepository, times(2)).save(any());
+    }
 }
@@ -0,0 +1,87 @@
+package com.tesis.authentication;
+
+import com.tesis.utils.KeyRing;
+import com.tesis.utils.TokenKey;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.io.Decoders;
+import io.jsonwebtoken.security.Keys;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.math.BigInteger;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.PublicKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECPoint;
+import java.security.spec.ECPublicKeySpec;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+public class JwkSetTest {
+
+    private KeyPair keyPair;
+    private JwkSet jwkSet;
+
+    @BeforeEach
+    public void setUp() {
+        keyPair = Keys.keyPairFor(SignatureAlgorithm.ES256);
+        KeyRing keyRing = new KeyRing(Keys.secretKeyFor(SignatureAlgorithm.HS512), Arrays.asList(
+                new TokenKey("hs", Keys.secretKeyFor(SignatureAlgorithm.HS512), Instant.EPOCH),
+                new TokenKey("es", keyPair, SignatureAlgorithm.ES256, Instant.EPOCH)));
+        jwkSet = new JwkSet(keyRing, Duration.ofHours(1), Duration.ofDays(1));
+    }
+
+    @DisplayName("JWK set - only public keys are published, and they rebuild the same key")
+    @Test
+    public void keySet1() throws Exception {
+
+        List<Map<String, Object>> keys = jwkSet.getKeySet().get("keys");
+        assertEquals(1, keys.size());
+
+        Map<String, Object> jwk = keys.get(0);
+        assertEquals("EC", jwk.get("kty"));
+        assertEquals("P-256", jwk.get("crv"));
+        assertEquals("es", jwk.get("kid"));
+        assertEquals("ES256", jwk.get("alg"));
+        assertEquals("sig", jwk.get("use"));
+
+        ECPublicKey publicKey = (ECPublicKey) keyPair.getPublic();
+        ECPoint point = new ECPoint(
+                new BigInteger(1, Decoders.BASE64URL.decode((String) jwk.get("x"))),
+                new BigInteger(1, Decoders.BASE64URL.decode((String) jwk.get("y"))));
+        PublicKey rebuilt = KeyFactory.getInstance("EC").generatePublic(new ECPublicKeySpec(point, publicKey.getParams()));
+        assertArrayEquals(publicKey.getEncoded(), rebuilt.getEncoded());
+    }
+
+    @DisplayName("JWK set - GET /authentication/jwks is cacheable and revalidated with its etag")
+    @Test
+    public void jwks1() throws Exception {
+
+        MockMvc mockMvc = MockMvcBuilders.standaloneSetup(new AuthenticationController(mock(AuthenticationService.class), jwkSet)).build();
+
+        MvcResult result = mockMvc.perform(get("/authentication/jwks"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "max-age=3600, public, stale-if-error=86400, stale-while-revalidate=3600"))
+                .andExpect(jsonPath("$.keys[0].kid").value("es"))
+                .andReturn();
+
+        String eTag = result.getResponse().getHeader(HttpHeaders.ETAG);
+        assertNotNull(eTag);
+        mockMvc.perform(get("/authentication/jwks").header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isNotModified());
+    }
+}
@@ -0,0 +1,86 @@
+package com.tesis.authentication;
+
+import com.google.common.base.Ticker;
+import com.tesis.exceptions.TooManyRequestsException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LoginThrottleTest {
+
+    private final AtomicLong now = new AtomicLong();
+    private SimpleMeterRegistry meterRegistry;
+    private LoginThrottle loginThrottle;
+
+    @BeforeEach
+    public void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        Ticker ticker = new Ticker() {
+            @Override
+            public long read() {
+                return now.get();
+            }
+        };
+        loginThrottle = new LoginThrottle(meterRegistry, Duration.ofMinutes(10), 3, 5, 100, ticker);
+    }
+
+    @DisplayName("Login throttle - checkAllowed() email over the limit should be rejected until its oldest failure leaves the window")
+    @Test
+    public void checkAllowed1() {
+
+        loginThrottle.recordFailure("test@test.com", "10.0.0.1");
+        advance(Duration.ofMinutes(2));
+        loginThrottle.recordFailure("TEST@test.com ", "10.0.0.2");
+        loginThrottle.recordFailure("test@test.com", "10.0.0.3");
+        assertDoesNotThrow(() -> loginThrottle.checkAllowed("other@test.com", "10.0.0.1"));
+
+        TooManyRequestsException e = assertThrows(TooManyRequestsException.class, () -> loginThrottle.checkAllowed("test@test.com", "10.0.0.4"));
+        assertEquals(Duration.ofMinutes(8), e.getRetryAfter());
+        assertEquals("480", e.getResponseHeaders().getFirst("Retry-After"));
+        assertEquals(1, meterRegistry.get("authentication.login.throttled").tag("key", "email").counter().count());
+
+        advance(Duration.ofMinutes(8));
+        assertDoesNotThrow(() -> loginThrottle.checkAllowed("test@test.com", "10.0.0.4"));
+    }
+
+    @DisplayName("Login throttle - checkAllowed() address over the limit should be rejected for any email")
+    @Test
+    public void checkAllowed2() {
+
+        for (int i = 0; i < 5; i++) {
+            loginThrottle.recordFailure("user" + i + "@test.com", "10.0.0.1");
+        }
+
+        assertThrows(TooManyRequestsException.class, () -> loginThrottle.checkAllowed("new@test.com", "10.0.0.1"));
+        assertDoesNotThrow(() -> loginThrottle.checkAllowed("new@test.com", "10.0.0.2"));
+        assertDoesNotThrow(() -> loginThrottle.checkAllowed("new@test.com", null));
+        assertEquals(1, meterRegistry.get("authentication.login.throttled").tag("key", "address").counter().count());
+    }
+
+    @DisplayName("Login throttle - recordSuccess() should reset the email but not the address")
+    @Test
+    public void recordSuccess1() {
+
+        for (int i = 0; i < 3; i++) {
+            loginThrottle.recordFailure("test@test.com", "10.0.0.1");
+        }
+        loginThrottle.recordSuccess("test@test.com");
+        assertDoesNotThrow(() -> loginThrottle.checkAllowed("test@test.com", "10.0.0.1"));
+
+        for (int i = 0; i < 3; i++) {
+            loginThrottle.recordFailure("test@test.com", "10.0.0.1");
+        }
+        assertThrows(TooManyRequestsException.class, () -> loginThrottle.checkAllowed("test@test.com", "10.0.0.2"));
+        assertThrows(TooManyRequestsException.class, () -> loginThrottle.checkAllowed("other@test.com", "10.0.0.1"));
+    }
+
+    private void advance(Duration duration) {
+        now.addAndGet(duration.toNanos());
+    }
+}
@@ -0,0 +1,128 @@
+package com.tesis.config;
+
+import com.tesis.utils.ServerTiming;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.slf4j.MDC;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RequestTracingFilterTest {
+
+    private final RequestTracingFilter filter = new RequestTracingFilter(true, "", new String[]{"/authentication/login"});
+
+    @DisplayName("Request tracing - the incoming request id should be kept in the MDC and returned")
+    @Test
+    public void requestId1() throws Exception {
+
+        AtomicReference<String> logged = new AtomicReference<>();
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/validate");
+        request.addHeader(RequestTracingFilter.REQUEST_ID_HEADER, "abc-123");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(request, response, new MockFilterChain(servlet(() -> logged.set(MDC.get(RequestTracingFilter.REQUEST_ID)))));
+
+        assertEquals("abc-123", logged.get());
+        assertEquals("abc-123", response.getHeader(RequestTracingFilter.REQUEST_ID_HEADER));
+        assertNull(MDC.get(RequestTracingFilter.REQUEST_ID));
+    }
+
+    @DisplayName("Request tracing - a missing or invalid request id should be replaced by a generated one")
+    @Test
+    public void requestId2() throws Exception {
+
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/validate");
+        request.addHeader(RequestTracingFilter.REQUEST_ID_HEADER, "bad id\n[request_id:forged]");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(request, response, new MockFilterChain());
+
+        String requestId = response.getHeader(RequestTracingFilter.REQUEST_ID_HEADER);
+        assertNotNull(requestId);
+        assertEquals(36, requestId.length());
+    }
+
+    @DisplayName("Request tracing - stages recorded during the request should be returned in the Server-Timing header")
+    @Test
+    public void serverTiming1() throws Exception {
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(new MockHttpServletRequest("POST", "/login"), response, new MockFilterChain(servlet(() -> {
+            ServerTiming.record(ServerTiming.DB, TimeUnit.MILLISECONDS.toNanos(3));
+            ServerTiming.record(ServerTiming.DB, TimeUnit.MILLISECONDS.toNanos(1));
+            ServerTiming.time(ServerTiming.HASH, () -> true);
+        })));
+
+        String serverTiming = response.getHeader(ServerTiming.HEADER);
+        assertNotNull(serverTiming);
+        assertTrue(serverTiming.startsWith("db;dur=4.00;desc=\"2 calls\", hash;dur="), serverTiming);
+        assertTrue(serverTiming.contains("total;dur="), serverTiming);
+        assertEquals("ok", response.getContentAsString());
+
+        // Fuera de un request no se acumula nada
+        ServerTiming.record(ServerTiming.DB, 1);
+        assertEquals("total;dur=0.00", ServerTiming.header(0));
+    }
+
+    @DisplayName("Request tracing - Server-Timing should not be sent when disabled or on excluded paths")
+    @Test
+    public void serverTiming2() throws Exception {
+
+        MockHttpServletResponse disabled = new MockHttpServletResponse();
+        new RequestTracingFilter(false, "", new String[0])
+                .doFilter(new MockHttpServletRequest("POST", "/validate"), disabled, new MockFilterChain(servlet(() -> {})));
+        assertNull(disabled.getHeader(ServerTiming.HEADER));
+        assertNotNull(disabled.getHeader(RequestTracingFilter.REQUEST_ID_HEADER));
+
+        MockHttpServletResponse login = new MockHttpServletResponse();
+        filter.doFilter(new MockHttpServletRequest("POST", "/authentication/login"), login, new MockFilterChain(servlet(() ->
+                ServerTiming.time(ServerTiming.HASH, () -> true))));
+        assertNull(login.getHeader(ServerTiming.HEADER));
+    }
+
+    @DisplayName("Request tracing - with a token configured only trusted callers should get Server-Timing")
+    @Test
+    public void serverTiming3() throws Exception {
+
+        RequestTracingFilter restrictedFilter = new RequestTracingFilter(true, "secret", new String[]{"/authentication/login"});
+
+        MockHttpServletResponse untrusted = new MockHttpServletResponse();
+        MockHttpServletRequest forged = new MockHttpServletRequest("POST", "/validate");
+        forged.addHeader(RequestTracingFilter.SERVER_TIMING_TOKEN_HEADER, "guess");
+        restrictedFilter.doFilter(forged, untrusted, new MockFilterChain(servlet(() -> {})));
+        assertNull(untrusted.getHeader(ServerTiming.HEADER));
+
+        MockHttpServletResponse trusted = new MockHttpServletResponse();
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/validate");
+        request.addHeader(RequestTracingFilter.SERVER_TIMING_TOKEN_HEADER, "secret");
+        restrictedFilter.doFilter(request, trusted, new MockFilterChain(servlet(() -> {})));
+        assertNotNull(trusted.getHeader(ServerTiming.HEADER));
+
+        MockHttpServletResponse login = new MockHttpServletResponse();
+        MockHttpServletRequest loginRequest = new MockHttpServletRequest("POST", "/authentication/login");
+        loginRequest.addHeader(RequestTracingFilter.SERVER_TIMING_TOKEN_HEADER, "secret");
+        restrictedFilter.doFilter(loginRequest, login, new MockFilterChain(servlet(() -> {})));
+        assertNull(login.getHeader(ServerTiming.HEADER));
+    }
+
+    private HttpServlet servlet(Runnable handler) {
+        return new HttpServlet() {
+            @Override
+            protected void service(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+                handler.run();
+                resp.getWriter().write("ok");
+            }
+        };
+    }
+}
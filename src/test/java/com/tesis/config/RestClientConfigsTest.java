@@ -0,0 +1,136 @@
+package com.tesis.config;
+
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import kong.unirest.Empty;
+import kong.unirest.HttpResponse;
+import kong.unirest.UnirestException;
+import kong.unirest.UnirestInstance;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RestClientConfigsTest {
+
+    private HttpServer server;
+    private CountDownLatch release;
+    private SimpleMeterRegistry meterRegistry;
+    private String baseUrl;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+
+        release = new CountDownLatch(1);
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/ok", exchange -> {
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        server.createContext("/hang", exchange -> {
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+
+        meterRegistry = new SimpleMeterRegistry();
+        baseUrl = "http://localhost:" + server.getAddress().getPort();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        release.countDown();
+        server.stop(0);
+    }
+
+    @DisplayName("Rest client configs - every tier should have its own client and config")
+    @Test
+    public void tiers1() {
+
+        RestClientConfigs configs = new RestClientConfigs();
+        UnirestInstance fast = configs.fastInstance(meterRegistry);
+        UnirestInstance verySlow = configs.verySlowInstance(meterRegistry);
+        try {
+            assertNotSame(fast, verySlow);
+            assertEquals(500, fast.config().getSocketTimeout());
+            assertEquals(5000, verySlow.config().getSocketTimeout());
+            assertEquals(20, verySlow.config().getMaxConnections());
+            assertEquals(0, meterRegistry.get("http.client.connections.active").tag("tier", RestClientConfigs.FAST).tag("client", "async").gauge().value());
+        } finally {
+            fast.shutDown();
+            verySlow.shutDown();
+        }
+    }
+
+    @DisplayName("Rest client configs - a saturated tier should not starve the others and its requests should be measured")
+    @Test
+    public void tiers2() throws Exception {
+
+        UnirestInstance slow = RestClientConfigs.tier(RestClientConfigs.SLOW, 5000, 1000, 1, 1, 100, meterRegistry);
+        UnirestInstance fast = RestClientConfigs.tier(RestClientConfigs.FAST, 500, 1000, 1, 1, 100, meterRegistry);
+        try {
+            // El unico connection del tier lento queda tomado
+            CompletableFuture<HttpResponse> hanging = CompletableFuture.supplyAsync(() -> slow.get(baseUrl + "/hang").asEmpty());
+            long deadline = System.currentTimeMillis() + 5000;
+            while (meterRegistry.get("http.client.connections.active").tag("tier", RestClientConfigs.SLOW).tag("client", "sync").gauge().value() < 1
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+
+            long start = System.currentTimeMillis();
+            assertThrows(UnirestException.class, () -> slow.get(baseUrl + "/ok").asEmpty());
+            assertTrue(System.currentTimeMillis() - start < 1000);
+            assertEquals(200, fast.get(baseUrl + "/ok").asEmpty().getStatus());
+
+            release.countDown();
+            assertEquals(200, hanging.get(5, TimeUnit.SECONDS).getStatus());
+            assertEquals(1, meterRegistry.get("http.client.requests").tag("tier", RestClientConfigs.FAST).tag("status", "200").timer().count());
+            assertEquals(1, meterRegistry.get("http.client.requests").tag("tier", RestClientConfigs.SLOW).tag("exception", "ConnectionPoolTimeoutException").timer().count());
+        } finally {
+            slow.shutDown();
+            fast.shutDown();
+        }
+    }
+
+    @DisplayName("Rest client configs - async requests should be bounded by the pool and pool wait of their tier")
+    @Test
+    public void tiers3() throws Exception {
+
+        UnirestInstance slow = RestClientConfigs.tier(RestClientConfigs.SLOW, 5000, 1000, 1, 1, 100, meterRegistry);
+        try {
+            CompletableFuture<HttpResponse<Empty>> hanging = slow.get(baseUrl + "/hang").asEmptyAsync();
+            long deadline = System.currentTimeMillis() + 5000;
+            while (meterRegistry.get("http.client.connections.active").tag("tier", RestClientConfigs.SLOW).tag("client", "async").gauge().value() < 1
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(1, meterRegistry.get("http.client.connections.max").tag("tier", RestClientConfigs.SLOW).tag("client", "async").gauge().value());
+
+            long start = System.currentTimeMillis();
+            ExecutionException exception = assertThrows(ExecutionException.class, () -> slow.get(baseUrl + "/ok").asEmptyAsync().get(5, TimeUnit.SECONDS));
+            assertTrue(System.currentTimeMillis() - start < 1000, exception.getCause().toString());
+
+            release.countDown();
+            assertEquals(200, hanging.get(5, TimeUnit.SECONDS).getStatus());
+            assertEquals(0, meterRegistry.get("http.client.connections.active").tag("tier", RestClientConfigs.SLOW).tag("client", "sync").gauge().value());
+        } finally {
+            slow.shutDown();
+        }
+    }
+}
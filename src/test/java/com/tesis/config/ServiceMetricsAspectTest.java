@@ -0,0 +1,53 @@
+package com.tesis.config;
+
+import com.tesis.exceptions.NotFoundException;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ServiceMetricsAspectTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private DefaultSampleService service;
+
+    @BeforeEach
+    public void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        AspectJProxyFactory factory = new AspectJProxyFactory(new DefaultSampleService());
+        factory.setProxyTargetClass(true);
+        factory.addAspect(new ServiceMetricsAspect(meterRegistry));
+        service = factory.getProxy();
+    }
+
+    @DisplayName("Service metrics - every call should be timed by class, method and exception")
+    @Test
+    public void timeService1() {
+
+        assertEquals("ok", service.find(1L));
+        assertEquals("ok", service.find(2L));
+        assertThrows(NotFoundException.class, () -> service.find(null));
+
+        Timer success = meterRegistry.get("service.calls")
+                .tag("class", "DefaultSampleService")
+                .tag("method", "find")
+                .tag("exception", "None")
+                .timer();
+        assertEquals(2, success.count());
+        assertEquals(1, meterRegistry.get("service.calls").tag("exception", "NotFoundException").timer().count());
+    }
+
+    public static class DefaultSampleService {
+
+        public String find(Long id) {
+            if (id == null) {
+                throw new NotFoundException("not found");
+            }
+            return "ok";
+        }
+    }
+}
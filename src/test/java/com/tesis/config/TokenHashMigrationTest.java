@@ -0,0 +1,105 @@
+package com.tesis.config;
+
+import com.tesis.authentication.AccessToken;
+import com.tesis.authentication.AccessTokenRepository;
+import com.tesis.recovery.RecoveryRepository;
+import com.tesis.recovery.RecoveryToken;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import javax.sql.DataSource;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@DataJpaTest
+public class TokenHashMigrationTest {
+
+    @Autowired
+    private DataSource dataSource;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private TestEntityManager entityManager;
+    @Autowired
+    private AccessTokenRepository accessTokenRepository;
+    @Autowired
+    private RecoveryRepository recoveryRepository;
+
+    private JdbcTemplate jdbcTemplate;
+    private TokenHashMigration migration;
+
+    @BeforeEach
+    public void setUp() {
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        migration = new TokenHashMigration(jdbcTemplate, transactionManager);
+    }
+
+    @DisplayName("Token hash migration - run() should rewrite legacy rows with the token digest")
+    @Test
+    public void run1() {
+
+        for (String table : TokenHashMigration.TABLES) {
+            jdbcTemplate.execute(String.format("alter table %s add column token varchar(3000)", table));
+            jdbcTemplate.update(String.format("insert into %s (user_id, token) values (1, 'legacy token')", table));
+        }
+
+        migration.run(null);
+        entityManager.clear();
+
+        AccessToken accessToken = accessTokenRepository.findById(1L).orElseThrow(AssertionError::new);
+        assertTrue(accessToken.matches("legacy token"));
+        assertFalse(accessToken.matches("other token"));
+        assertNull(accessToken.getToken());
+
+        RecoveryToken recoveryToken = recoveryRepository.findById(1L).orElseThrow(AssertionError::new);
+        assertTrue(recoveryToken.matches("legacy token"));
+
+        Integer legacyColumns = jdbcTemplate.queryForObject(
+                "select count(*) from information_schema.columns where lower(column_name) = 'token'", Integer.class);
+        assertEquals(0, legacyColumns);
+    }
+
+    @DisplayName("Token hash migration - run() migrated schema should be left untouched")
+    @Test
+    public void run2() {
+
+        accessTokenRepository.saveAndFlush(AccessToken.builder().userId(1L).token("token").build());
+
+        migration.run(null);
+        entityManager.clear();
+
+        assertTrue(accessTokenRepository.findById(1L).orElseThrow(AssertionError::new).matches("token"));
+    }
+
+    @DisplayName("Token hash migration - run() should lock and skip tables already migrated by another instance")
+    @Test
+    public void run3() {
+
+        JdbcTemplate jdbcTemplateMock = mock(JdbcTemplate.class);
+        PlatformTransactionManager transactionManagerMock = mock(PlatformTransactionManager.class);
+        when(transactionManagerMock.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        when(jdbcTemplateMock.execute(any(ConnectionCallback.class))).thenReturn("PostgreSQL");
+        // La primera consulta ve la columna, despues del lock ya no esta
+        when(jdbcTemplateMock.queryForObject(anyString(), eq(Integer.class), any(), any())).thenReturn(1, 0);
+
+        new TokenHashMigration(jdbcTemplateMock, transactionManagerMock).run(null);
+
+        verify(jdbcTemplateMock).query(eq("select pg_advisory_xact_lock(?)"), any(ResultSetExtractor.class), eq(TokenHashMigration.LOCK_KEY));
+        verify(jdbcTemplateMock, never()).execute(anyString());
+        verify(jdbcTemplateMock, never()).batchUpdate(anyString(), anyList());
+        verify(transactionManagerMock).commit(any());
+    }
+}
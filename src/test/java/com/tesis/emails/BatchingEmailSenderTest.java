@@ -0,0 +1,129 @@
+package com.tesis.emails;
+
+import com.google.common.collect.Lists;
+import com.tesis.emails.models.EmailModel;
+import com.tesis.emails.models.MailAddress;
+import com.tesis.emails.models.MailContent;
+import com.tesis.emails.models.Personalization;
+import com.tesis.exceptions.InternalServerErrorException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(SpringExtension.class)
+public class BatchingEmailSenderTest {
+
+    @Mock
+    private SendGridClient mailClient;
+    private BatchingEmailSender sender;
+
+    @BeforeEach
+    public void setUp() {
+        sender = new BatchingEmailSender(mailClient, 3);
+        when(mailClient.sendMailAsync(any())).thenReturn(CompletableFuture.completedFuture(null));
+    }
+
+    @DisplayName("Batching email sender - send() emails with the same template should share requests up to the personalizations limit")
+    @Test
+    public void send1() {
+
+        Map<Integer, EmailModel> emails = new LinkedHashMap<>();
+        for (int i = 0; i < 5; i++) {
+            emails.put(i, email("d-welcome", "user" + i + "@test.com"));
+        }
+        emails.put(5, email("d-recovery", "user5@test.com"));
+
+        assertTrue(sender.send(emails).isEmpty());
+
+        ArgumentCaptor<EmailModel> captor = ArgumentCaptor.forClass(EmailModel.class);
+        verify(mailClient, times(3)).sendMailAsync(captor.capture());
+        List<EmailModel> requests = captor.getAllValues();
+        assertEquals(3, requests.get(0).getPersonalizations().size());
+        assertEquals("d-welcome", requests.get(0).getTemplateId());
+        assertEquals("user0@test.com", requests.get(0).getPersonalizations().get(0).getTo().get(0).getEmail());
+        assertEquals(5, requests.stream().filter(r -> "d-welcome".equals(r.getTemplateId())).mapToInt(r -> r.getPersonalizations().size()).sum());
+        assertEquals(1, requests.stream().filter(r -> "d-recovery".equals(r.getTemplateId())).count());
+    }
+
+    @DisplayName("Batching email sender - send() emails with inline content should be sent alone")
+    @Test
+    public void send2() {
+
+        EmailModel withContent = email("d-welcome", "first@test.com");
+        withContent.setContent(Lists.newArrayList(MailContent.builder().type("text/plain").value("hello").build()));
+        Map<String, EmailModel> emails = new LinkedHashMap<>();
+        emails.put("first", withContent);
+        emails.put("second", email("d-welcome", "second@test.com"));
+
+        assertTrue(sender.send(emails).isEmpty());
+
+        verify(mailClient).sendMailAsync(withContent);
+        verify(mailClient, times(2)).sendMailAsync(any());
+    }
+
+    @DisplayName("Batching email sender - send() rejected batch should be resent one by one to isolate the invalid email")
+    @Test
+    public void send3() {
+
+        when(mailClient.sendMailAsync(argThat(model -> model.getPersonalizations().size() > 1
+                        || "invalid".equals(model.getPersonalizations().get(0).getTo().get(0).getEmail()))))
+                .thenReturn(failed(new ResponseStatusException(HttpStatus.BAD_REQUEST, "invalid email")));
+        Map<String, EmailModel> emails = new LinkedHashMap<>();
+        emails.put("first", email("d-welcome", "first@test.com"));
+        emails.put("invalid", email("d-welcome", "invalid"));
+        emails.put("third", email("d-welcome", "third@test.com"));
+
+        Map<String, Exception> errors = sender.send(emails);
+
+        assertEquals(1, errors.size());
+        assertTrue(errors.get("invalid") instanceof ResponseStatusException);
+        verify(mailClient, times(4)).sendMailAsync(any());
+    }
+
+    @DisplayName("Batching email sender - send() provider error should fail every email of the batch")
+    @Test
+    public void send4() {
+
+        when(mailClient.sendMailAsync(any())).thenReturn(failed(new InternalServerErrorException("internal error")));
+        Map<String, EmailModel> emails = new LinkedHashMap<>();
+        emails.put("first", email("d-welcome", "first@test.com"));
+        emails.put("second", email("d-welcome", "second@test.com"));
+
+        Map<String, Exception> errors = sender.send(emails);
+
+        assertEquals(2, errors.size());
+        verify(mailClient, times(1)).sendMailAsync(any());
+    }
+
+    private CompletableFuture<Void> failed(Exception e) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        future.completeExceptionally(e);
+        return future;
+    }
+
+    private EmailModel email(String template, String receiver) {
+        return EmailModel.builder()
+                .from(MailAddress.builder().email("sender@test.com").build())
+                .templateId(template)
+                .personalizations(Lists.newArrayList(Personalization.builder()
+                        .to(Lists.newArrayList(MailAddress.builder().email(receiver).build()))
+                        .build()))
+                .build();
+    }
+}
@@ -1,40 +1,72 @@
 package com.tesis.emails;
 
 import com.google.common.collect.Lists;
-import com.tesis.exceptions.InternalServerErrorException;
+import com.tesis.emails.models.EmailModel;
+import com.tesis.emails.outbox.EmailOutbox;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
-import static org.junit.jupiter.api.Assertions.assertThrows;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.Mockito.doThrow;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 @ExtendWith(SpringExtension.class)
 public class EmailServiceTest {
 
     @Mock
-    private SendGridClient mailClient;
-    @InjectMocks
+    private EmailOutbox emailOutbox;
     private DefaultEmailService emailService;
 
-    @DisplayName("Email service - sendRecoveryPasswordEmail() client error")
+    @BeforeEach
+    public void setUp() {
+        emailService = new DefaultEmailService(emailOutbox, "sender@test.com", "http://recovery?token=", "http://welcome?token=");
+    }
+
+    @DisplayName("Email service - sendRecoveryPasswordEmail() should queue the email in the outbox")
     @Test
     public void recoveryEmail1() {
 
-        doThrow(InternalServerErrorException.class).when(mailClient).sendMail(any());
-        assertThrows(InternalServerErrorException.class, () -> emailService.sendRecoveryPasswordEmail(Lists.newArrayList(), "token"));
+        emailService.sendRecoveryPasswordEmail(Lists.newArrayList("test@test.com"), "token");
+
+        ArgumentCaptor<EmailModel> captor = ArgumentCaptor.forClass(EmailModel.class);
+        verify(emailOutbox).enqueue(captor.capture(), eq("token"));
+        assertEquals("test@test.com", captor.getValue().getPersonalizations().get(0).getTo().get(0).getEmail());
+        assertEquals("http://recovery?token=token", captor.getValue().getPersonalizations().get(0).getDynamicTemplateData().get("recovery_link"));
     }
 
-    @DisplayName("Email service - sendWelcomePasswordEmail() client error")
+    @DisplayName("Email service - sendWelcomePasswordEmail() should queue the email in the outbox")
     @Test
     public void sendWelcomePasswordEmail1() {
 
-        doThrow(InternalServerErrorException.class).when(mailClient).sendMail(any());
-        assertThrows(InternalServerErrorException.class, () -> emailService.sendWelcomePasswordEmail(Lists.newArrayList(), "Pedro", "token"));
+        emailService.sendWelcomePasswordEmail(Lists.newArrayList("test@test.com"), "Pedro", "token");
+
+        ArgumentCaptor<EmailModel> captor = ArgumentCaptor.forClass(EmailModel.class);
+        verify(emailOutbox).enqueue(captor.capture(), eq("token"));
+        assertEquals("Pedro", captor.getValue().getPersonalizations().get(0).getDynamicTemplateData().get("user_name"));
+        assertEquals("sender@test.com", captor.getValue().getFrom().getEmail());
     }
 
+    @DisplayName("Email service - sendRecoveryPasswordEmailAsync() should return the delivery of the queued email")
+    @Test
+    public void recoveryEmailAsync1() {
+
+        CompletableFuture<Void> delivery = new CompletableFuture<>();
+        when(emailOutbox.enqueueAsync(any(), any())).thenReturn(delivery);
+
+        assertSame(delivery, emailService.sendRecoveryPasswordEmailAsync(Lists.newArrayList("test@test.com"), "token"));
+
+        ArgumentCaptor<EmailModel> captor = ArgumentCaptor.forClass(EmailModel.class);
+        verify(emailOutbox).enqueueAsync(captor.capture(), eq("token"));
+        assertEquals("http://recovery?token=token", captor.getValue().getPersonalizations().get(0).getDynamicTemplateData().get("recovery_link"));
+    }
 }
@@ -0,0 +1,144 @@
+package com.tesis.emails;
+
+import com.google.common.collect.Lists;
+import com.sun.net.httpserver.HttpServer;
+import com.tesis.config.ResilienceConfigs;
+import com.tesis.config.SpringConfig;
+import com.tesis.emails.models.EmailModel;
+import com.tesis.emails.models.MailAddress;
+import com.tesis.emails.models.Personalization;
+import com.tesis.exceptions.ServiceUnavailableException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import kong.unirest.Unirest;
+import kong.unirest.UnirestInstance;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.Queue;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * SendGridClient against a local stub of SendGrid that answers with scripted status codes
+ */
+public class SendGridClientResilienceTest {
+
+    private HttpServer server;
+    private final Queue<Integer> responses = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger requests = new AtomicInteger();
+    private UnirestInstance unirest;
+    private SimpleMeterRegistry meterRegistry;
+    private CircuitBreaker circuitBreaker;
+    private SendGridClient client;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/mail/send", exchange -> {
+            try (InputStream body = exchange.getRequestBody()) {
+                while (body.read() != -1) {
+                    // Se consume el body completo antes de responder
+                }
+                requests.incrementAndGet();
+                Integer status = responses.poll();
+                byte[] error = "{\"errors\":[{\"message\":\"injected\"}]}".getBytes();
+                exchange.sendResponseHeaders(status != null ? status : 202, status != null && status >= 400 ? error.length : -1);
+                if (status != null && status >= 400) {
+                    exchange.getResponseBody().write(error);
+                }
+            } finally {
+                exchange.close();
+            }
+        });
+        server.start();
+
+        meterRegistry = new SimpleMeterRegistry();
+        ResilienceConfigs configs = new ResilienceConfigs();
+        circuitBreaker = configs.sendGridCircuitBreaker(configs.circuitBreakerRegistry(meterRegistry), 50, 6, 6, Duration.ofMinutes(1), 1);
+        unirest = Unirest.spawnInstance();
+        client = new SendGridClient(unirest, new SpringConfig().objectMapper(), "key", "http://localhost:" + server.getAddress().getPort(),
+                meterRegistry, circuitBreaker, configs.sendGridRetry(configs.retryRegistry(meterRegistry), 3, Duration.ofMillis(10), 2, 0.5));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        client.destroy();
+        unirest.shutDown();
+        server.stop(0);
+    }
+
+    @DisplayName("SendGrid client resilience - transient errors should be retried until SendGrid accepts the email")
+    @Test
+    public void retry1() {
+
+        responses.add(503);
+        responses.add(429);
+
+        assertDoesNotThrow(() -> client.sendMail(email()));
+        assertEquals(3, requests.get());
+
+        responses.add(500);
+        assertDoesNotThrow(() -> client.sendMailAsync(email()).join());
+        assertEquals(5, requests.get());
+        assertEquals(2, meterRegistry.get("resilience4j.retry.calls").tag("kind", "successful_with_retry").functionCounter().count());
+    }
+
+    @DisplayName("SendGrid client resilience - a rejected email should not be retried nor count as a provider failure")
+    @Test
+    public void retry2() {
+
+        responses.add(400);
+
+        ResponseStatusException exception = assertThrows(ResponseStatusException.class, () -> client.sendMail(email()));
+        assertEquals(HttpStatus.BAD_REQUEST, exception.getStatus());
+        assertEquals(1, requests.get());
+        assertEquals(0, circuitBreaker.getMetrics().getNumberOfFailedCalls());
+    }
+
+    @DisplayName("SendGrid client resilience - provider down should open the circuit breaker and fail fast without calling it")
+    @Test
+    public void circuitBreaker1() {
+
+        for (int i = 0; i < 10; i++) {
+            responses.add(500);
+        }
+
+        assertThrows(ResponseStatusException.class, () -> client.sendMail(email()));
+        assertEquals(3, requests.get());
+        assertTrue(client.isAvailable());
+
+        // Los 6 intentos fallidos abren el circuit breaker
+        assertThrows(CompletionException.class, () -> client.sendMailAsync(email()).join());
+        assertEquals(6, requests.get());
+        assertFalse(client.isAvailable());
+
+        assertThrows(ServiceUnavailableException.class, () -> client.sendMail(email()));
+        CompletionException exception = assertThrows(CompletionException.class, () -> client.sendMailAsync(email()).join());
+        assertTrue(exception.getCause() instanceof ServiceUnavailableException);
+        assertEquals(6, requests.get());
+        assertEquals(1, meterRegistry.get("resilience4j.circuitbreaker.state").tag("state", "open").gauge().value());
+    }
+
+    private EmailModel email() {
+        return EmailModel.builder()
+                .from(MailAddress.builder().email("sender@test.com").build())
+                .templateId("d-template")
+                .personalizations(Lists.newArrayList(Personalization.builder()
+                        .to(Lists.newArrayList(MailAddress.builder().email("test@test.com").build()))
+                        .build()))
+                .build();
+    }
+}
@@ -5,16 +5,23 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.tesis.emails.models.EmailModel;
 import com.tesis.emails.models.ErrorResponse;
 import com.tesis.exceptions.InternalServerErrorException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.retry.Retry;
+import io.github.resilience4j.retry.RetryConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import kong.unirest.*;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.springframework.http.HttpStatus;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
@@ -28,10 +35,15 @@ public class SendGridClientTest {
     private UnirestInstance instance;
     @Mock
     private ObjectMapper objectMapper;
-    @InjectMocks
+    private SimpleMeterRegistry meterRegistry;
     private SendGridClient client;
 
-
+    @BeforeEach
+    public void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        client = new SendGridClient(instance, objectMapper, "key", "http://sendgrid", meterRegistry,
+                CircuitBreaker.ofDefaults("sendgrid"), Retry.of("sendgrid", RetryConfig.custom().maxAttempts(1).build()));
+    }
 
     @DisplayName("SendGrid client - sendMail() connection timeout")
     @Test
@@ -100,4 +112,56 @@ public class SendGridClientTest {
 
         assertDoesNotThrow(() -> client.sendMail(EmailModel.builder().build()));
     }
+
+    @DisplayName("SendGrid client - sendMailAsync() ok should not block and count the outstanding request until it completes")
+    @Test
+    public void sendMailAsync1() throws JsonProcessingException {
+
+        HttpRequestWithBody httpRequestWithBody = mock(HttpRequestWithBody.class);
+        RequestBodyEntity requestBodyEntity = mock(RequestBodyEntity.class);
+        HttpResponse<Empty> httpResponse = mock(HttpResponse.class);
+        CompletableFuture<HttpResponse<Empty>> exchange = new CompletableFuture<>();
+
+        when(instance.post(anyString())).thenReturn(httpRequestWithBody);
+        when(httpRequestWithBody.header(anyString(), anyString())).thenReturn(httpRequestWithBody);
+        when(objectMapper.writeValueAsString(any())).thenReturn("");
+        when(httpRequestWithBody.body(anyString())).thenReturn(requestBodyEntity);
+        when(requestBodyEntity.asEmptyAsync()).thenReturn(exchange);
+        when(httpResponse.isSuccess()).thenReturn(true);
+
+        CompletableFuture<Void> result = client.sendMailAsync(EmailModel.builder().build());
+        assertFalse(result.isDone());
+        assertEquals(1, meterRegistry.get("email.sendgrid.requests.outstanding").gauge().value());
+
+        exchange.complete(httpResponse);
+        assertDoesNotThrow(() -> result.join());
+        assertEquals(0, meterRegistry.get("email.sendgrid.requests.outstanding").gauge().value());
+        assertEquals(1, meterRegistry.get("email.sendgrid.requests").tag("mode", "async").tag("result", "success").timer().count());
+    }
+
+    @DisplayName("SendGrid client - sendMailAsync() invalid response and connection error should complete exceptionally")
+    @Test
+    public void sendMailAsync2() throws JsonProcessingException {
+
+        HttpRequestWithBody httpRequestWithBody = mock(HttpRequestWithBody.class);
+        RequestBodyEntity requestBodyEntity = mock(RequestBodyEntity.class);
+        HttpResponse<Empty> httpResponse = mock(HttpResponse.class);
+        CompletableFuture<HttpResponse<Empty>> rejected = CompletableFuture.completedFuture(httpResponse);
+        CompletableFuture<HttpResponse<Empty>> unreachable = new CompletableFuture<>();
+        unreachable.completeExceptionally(new UnirestException("connection refused"));
+
+        when(instance.post(anyString())).thenReturn(httpRequestWithBody);
+        when(httpRequestWithBody.header(anyString(), anyString())).thenReturn(httpRequestWithBody);
+        when(objectMapper.writeValueAsString(any())).thenReturn("");
+        when(httpRequestWithBody.body(anyString())).thenReturn(requestBodyEntity);
+        when(requestBodyEntity.asEmptyAsync()).thenReturn(rejected, unreachable);
+        when(httpResponse.getStatus()).thenReturn(400);
+        when(httpResponse.mapError(ErrorResponse.class)).thenReturn(ErrorResponse.builder().build());
+
+        CompletionException badRequest = assertThrows(CompletionException.class, () -> client.sendMailAsync(EmailModel.builder().build()).join());
+        assertEquals(HttpStatus.BAD_REQUEST, ((ResponseStatusException) badRequest.getCause()).getStatus());
+        CompletionException connectionError = assertThrows(CompletionException.class, () -> client.sendMailAsync(EmailModel.builder().build()).join());
+        assertTrue(connectionError.getCause() instanceof InternalServerErrorException);
+        assertEquals(2, meterRegistry.get("email.sendgrid.requests").tag("mode", "async").tag("result", "error").timer().count());
+    }
 }
@@ -0,0 +1,271 @@
+package com.tesis.emails.outbox;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Lists;
+import com.tesis.config.SpringConfig;
+import com.tesis.emails.BatchingEmailSender;
+import com.tesis.emails.SendGridClient;
+import com.tesis.emails.models.EmailModel;
+import com.tesis.emails.models.MailAddress;
+import com.tesis.emails.models.Personalization;
+import com.tesis.exceptions.InternalServerErrorException;
+import com.tesis.exceptions.ServiceUnavailableException;
+import com.tesis.recovery.RecoveryRepository;
+import com.tesis.recovery.RecoveryToken;
+import com.tesis.utils.TokenCodec;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.*;
+
+@DataJpaTest
+public class EmailOutboxTest {
+
+    @Autowired
+    private OutboxEmailRepository outboxEmailRepository;
+    @Autowired
+    private RecoveryRepository recoveryRepository;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @MockBean
+    private SendGridClient mailClient;
+
+    private final ObjectMapper objectMapper = new SpringConfig().objectMapper();
+    private final TokenCodec tokenCodec = new TokenCodec(Keys.secretKeyFor(SignatureAlgorithm.HS512), new SimpleMeterRegistry());
+    private SimpleMeterRegistry meterRegistry;
+    private EmailOutboxDispatcher dispatcher;
+    private EmailOutbox emailOutbox;
+
+    @BeforeEach
+    public void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        dispatcher = spy(new EmailOutboxDispatcher(outboxEmailRepository, new BatchingEmailSender(mailClient, 1000),
+                objectMapper, tokenCodec, recoveryRepository, transactionManager, meterRegistry, 2, 2, Duration.ofSeconds(30), Duration.ofMinutes(5),
+                Duration.ofMillis(500)));
+        doNothing().when(dispatcher).trigger();
+        when(mailClient.sendMailAsync(any())).thenReturn(CompletableFuture.completedFuture(null));
+        when(mailClient.isAvailable()).thenReturn(true);
+        emailOutbox = new EmailOutbox(outboxEmailRepository, dispatcher, objectMapper, tokenCodec);
+    }
+
+    @DisplayName("Email outbox - enqueue() should store the email and wait for the commit to dispatch it")
+    @Test
+    public void enqueue1() {
+
+        OutboxEmail outboxEmail = emailOutbox.enqueue(email("test@test.com"));
+
+        OutboxEmail stored = outboxEmailRepository.findById(outboxEmail.getId()).orElseThrow(AssertionError::new);
+        assertEquals(OutboxEmailStatus.PENDING, stored.getStatus());
+        assertEquals("d-template", stored.getTemplateId());
+        assertTrue(stored.getPayload().contains("\"template_id\":\"d-template\""));
+        verify(dispatcher, never()).trigger();
+        verify(mailClient, never()).sendMailAsync(any());
+    }
+
+    @DisplayName("Email outbox - dispatchPending() should send every due email in batches, one request per batch, and delete it")
+    @Test
+    public void dispatchPending1() {
+
+        emailOutbox.enqueue(email("first@test.com"));
+        emailOutbox.enqueue(email("second@test.com"));
+        emailOutbox.enqueue(email("third@test.com"));
+
+        assertEquals(3, dispatcher.dispatchPending());
+
+        verify(mailClient, times(2)).sendMailAsync(any());
+        verify(mailClient).sendMailAsync(argThat(model -> model.getPersonalizations().size() == 2));
+        verify(mailClient).sendMailAsync(argThat(model -> "third@test.com".equals(model.getPersonalizations().get(0).getTo().get(0).getEmail())));
+        assertEquals(0, outboxEmailRepository.count());
+        assertEquals(3, meterRegistry.get("email.outbox.dispatched").tag("result", "sent").counter().count());
+        assertEquals(0, meterRegistry.get("email.outbox.pending").gauge().value());
+    }
+
+    @DisplayName("Email outbox - dispatchPending() failed email should be retried later and given up after max attempts")
+    @Test
+    public void dispatchPending2() {
+
+        CompletableFuture<Void> error = new CompletableFuture<>();
+        error.completeExceptionally(new InternalServerErrorException("internal error"));
+        when(mailClient.sendMailAsync(any())).thenReturn(error);
+        OutboxEmail outboxEmail = emailOutbox.enqueue(email("test@test.com"));
+
+        assertEquals(0, dispatcher.dispatchPending());
+        OutboxEmail retry = outboxEmailRepository.findById(outboxEmail.getId()).orElseThrow(AssertionError::new);
+        assertEquals(OutboxEmailStatus.PENDING, retry.getStatus());
+        assertEquals(1, retry.getAttempts());
+        assertTrue(retry.getNextAttemptAt().isAfter(LocalDateTime.now().plusSeconds(20)));
+        assertNotNull(retry.getLastError());
+        assertEquals(1, meterRegistry.get("email.outbox.pending").gauge().value());
+
+        // No se reintenta antes de tiempo
+        assertEquals(0, dispatcher.dispatchPending());
+        verify(mailClient, times(1)).sendMailAsync(any());
+
+        retry.setNextAttemptAt(LocalDateTime.now());
+        outboxEmailRepository.save(retry);
+        dispatcher.dispatchPending();
+
+        OutboxEmail failed = outboxEmailRepository.findById(outboxEmail.getId()).orElseThrow(AssertionError::new);
+        assertEquals(OutboxEmailStatus.FAILED, failed.getStatus());
+        assertEquals(2, failed.getAttempts());
+        assertEquals(1, meterRegistry.get("email.outbox.dispatched").tag("result", "failed").counter().count());
+        assertEquals(0, meterRegistry.get("email.outbox.pending").gauge().value());
+    }
+
+    @DisplayName("Email outbox - dispatchPending() provider down should keep the emails without spending attempts")
+    @Test
+    public void dispatchPending3() {
+
+        OutboxEmail outboxEmail = emailOutbox.enqueue(email("test@test.com"));
+        when(mailClient.isAvailable()).thenReturn(false);
+
+        assertEquals(0, dispatcher.dispatchPending());
+        verify(mailClient, never()).sendMailAsync(any());
+
+        // El circuit breaker se abre en medio del batch
+        CompletableFuture<Void> unavailable = new CompletableFuture<>();
+        unavailable.completeExceptionally(new ServiceUnavailableException("email provider unavailable"));
+        when(mailClient.sendMailAsync(any())).thenReturn(unavailable);
+        when(mailClient.isAvailable()).thenReturn(true);
+
+        assertEquals(0, dispatcher.dispatchPending());
+        OutboxEmail postponed = outboxEmailRepository.findById(outboxEmail.getId()).orElseThrow(AssertionError::new);
+        assertEquals(OutboxEmailStatus.PENDING, postponed.getStatus());
+        assertEquals(0, postponed.getAttempts());
+        assertEquals(0, meterRegistry.get("email.outbox.dispatched").tag("result", "retry").counter().count());
+    }
+
+    @DisplayName("Email outbox - enqueueAsync() should complete once the email is delivered, or fail if its transaction rolls back")
+    @Test
+    public void enqueueAsync1() {
+
+        CompletableFuture<Void> delivery = emailOutbox.enqueueAsync(email("test@test.com"));
+        assertFalse(delivery.isDone());
+
+        dispatcher.dispatchPending();
+        assertTrue(delivery.isDone());
+        assertFalse(delivery.isCompletedExceptionally());
+        assertEquals(1, meterRegistry.get("email.outbox.delivery").timer().count());
+
+        // Una transaccion propia que hace rollback descarta el email
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setPropagationBehavior(TransactionTemplate.PROPAGATION_REQUIRES_NEW);
+        CompletableFuture<Void> discarded = transactionTemplate.execute(status -> {
+            status.setRollbackOnly();
+            return emailOutbox.enqueueAsync(email("discarded@test.com"));
+        });
+        CompletionException exception = assertThrows(CompletionException.class, discarded::join);
+        assertTrue(exception.getCause() instanceof InternalServerErrorException);
+    }
+
+    @DisplayName("Email outbox - enqueue() link tokens should not be stored usable, neither pending nor failed")
+    @Test
+    public void enqueue2() {
+
+        String token = tokenCodec.sign(tokenCodec.builder()
+                .setHeaderParam("type", RecoveryToken.TOKEN_TYPE)
+                .setSubject("7")
+                .setExpiration(new Date(System.currentTimeMillis() + 60_000)));
+        recoveryRepository.save(new RecoveryToken(7L, token));
+        String signature = token.substring(token.lastIndexOf('.') + 1);
+        EmailModel email = email("test@test.com");
+        email.getPersonalizations().get(0).setDynamicTemplateData(Collections.singletonMap("recovery_link", "http://recovery?token=" + token));
+
+        emailOutbox.enqueue(email, token);
+        assertNoTokenStored(signature);
+
+        assertEquals(1, dispatcher.dispatchPending());
+        verify(mailClient).sendMailAsync(argThat(model -> ("http://recovery?token=" + token)
+                .equals(model.getPersonalizations().get(0).getDynamicTemplateData().get("recovery_link"))));
+        assertEquals(0, outboxEmailRepository.count());
+
+        CompletableFuture<Void> error = new CompletableFuture<>();
+        error.completeExceptionally(new InternalServerErrorException("internal error"));
+        when(mailClient.sendMailAsync(any())).thenReturn(error);
+        OutboxEmail outboxEmail = emailOutbox.enqueue(email, token);
+        for (int attempt = 0; attempt < 2; attempt++) {
+            OutboxEmail retry = outboxEmailRepository.findById(outboxEmail.getId()).orElseThrow(AssertionError::new);
+            retry.setNextAttemptAt(LocalDateTime.now());
+            outboxEmailRepository.save(retry);
+            dispatcher.dispatchPending();
+        }
+
+        assertEquals(OutboxEmailStatus.FAILED, outboxEmailRepository.findById(outboxEmail.getId()).orElseThrow(AssertionError::new).getStatus());
+        assertNoTokenStored(signature);
+    }
+
+    @DisplayName("Email outbox - dispatchPending() link tokens other than the active recovery token should be given up without sending")
+    @Test
+    public void dispatchPending4() {
+
+        Date expiration = new Date(System.currentTimeMillis() + 60_000);
+        String bearerToken = tokenCodec.sign(tokenCodec.builder()
+                .setHeaderParam("type", "BEARER")
+                .setSubject("7")
+                .addClaims(Collections.singletonMap("rol", "ADMIN"))
+                .setExpiration(expiration));
+        String replacedToken = tokenCodec.sign(tokenCodec.builder()
+                .setHeaderParam("type", RecoveryToken.TOKEN_TYPE)
+                .setSubject("7")
+                .setExpiration(expiration));
+        recoveryRepository.save(new RecoveryToken(7L, tokenCodec.sign(tokenCodec.builder()
+                .setHeaderParam("type", RecoveryToken.TOKEN_TYPE)
+                .setSubject("7")
+                .setId("active")
+                .setExpiration(expiration))));
+
+        // Filas escritas directo en la tabla, por fuera del outbox
+        for (String token : Lists.newArrayList(bearerToken, replacedToken, "e30.e30.e30")) {
+            OutboxEmail outboxEmail = emailOutbox.enqueue(email("test@test.com"));
+            outboxEmail.setPayload(outboxEmail.getPayload().replace("d-template", EmailOutbox.LINK_TOKEN));
+            outboxEmail.setLinkToken(tokenCodec.stripSignature(token));
+            outboxEmailRepository.save(outboxEmail);
+        }
+
+        assertEquals(0, dispatcher.dispatchPending());
+
+        verify(mailClient, never()).sendMailAsync(any());
+        for (OutboxEmail failed : outboxEmailRepository.findAll()) {
+            assertEquals(OutboxEmailStatus.FAILED, failed.getStatus());
+            assertEquals(1, failed.getAttempts());
+        }
+        assertEquals(3, meterRegistry.get("email.outbox.dispatched").tag("result", "failed").counter().count());
+    }
+
+    private void assertNoTokenStored(String signature) {
+        for (OutboxEmail stored : outboxEmailRepository.findAll()) {
+            assertFalse(stored.getPayload().contains(signature));
+            assertTrue(stored.getPayload().contains(EmailOutbox.LINK_TOKEN));
+            assertFalse(stored.getLinkToken().contains(signature));
+        }
+    }
+
+    private EmailModel email(String receiver) {
+        return EmailModel.builder()
+                .from(MailAddress.builder().email("sender@test.com").build())
+                .templateId("d-template")
+                .personalizations(Lists.newArrayList(Personalization.builder()
+                        .to(Lists.newArrayList(MailAddress.builder().email(receiver).build()))
+                        .build()))
+                .build();
+    }
+}
@@ -0,0 +1,36 @@
+package com.tesis.exceptions;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ClientErrorExceptionTest {
+
+    @DisplayName("Client errors - expected 4xx outcomes should not capture a stack trace")
+    @Test
+    public void stackTrace1() {
+
+        assertEquals(0, new UnauthorizedException().getStackTrace().length);
+        assertEquals(0, new ForbiddenException("forbidden").getStackTrace().length);
+        assertEquals(0, new BadRequestException("bad request").getStackTrace().length);
+        assertEquals(0, new NotFoundException("not found").getStackTrace().length);
+        assertEquals(0, new TooManyRequestsException("too many", Duration.ofSeconds(1)).getStackTrace().length);
+        assertEquals(HttpStatus.UNAUTHORIZED, new UnauthorizedException().getStatus());
+    }
+
+    @DisplayName("Client errors - the cause should keep its stack trace, and server errors theirs")
+    @Test
+    public void stackTrace2() {
+
+        IllegalStateException cause = new IllegalStateException("cause");
+        UnauthorizedException exception = new UnauthorizedException("Unauthorized", cause);
+
+        assertSame(cause, exception.getCause());
+        assertTrue(cause.getStackTrace().length > 0);
+        assertTrue(new InternalServerErrorException("internal error").getStackTrace().length > 0);
+    }
+}
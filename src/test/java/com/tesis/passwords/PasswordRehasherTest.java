@@ -0,0 +1,106 @@
+package com.tesis.passwords;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import com.tesis.users.UserService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(SpringExtension.class)
+public class PasswordRehasherTest {
+
+    @Mock
+    private UserService userService;
+
+    private SimpleMeterRegistry meterRegistry;
+    private PasswordRehasher passwordRehasher;
+
+    @BeforeEach
+    public void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        passwordRehasher = new PasswordRehasher(new CostAwareBCryptPasswordEncoder(5), userService, meterRegistry, MoreExecutors.newDirectExecutorService());
+    }
+
+    @DisplayName("Password rehasher - rehashIfNeeded() hash with a lower cost should be upgraded")
+    @Test
+    public void rehashIfNeeded1() {
+
+        String outdatedHash = new BCryptPasswordEncoder(4).encode("password");
+        when(userService.upgradePassword(eq(1L), eq(outdatedHash), anyString())).thenReturn(true);
+
+        passwordRehasher.rehashIfNeeded(1L, "password", outdatedHash);
+
+        verify(userService).upgradePassword(eq(1L), eq(outdatedHash), argThat(hash -> hash.startsWith("$2a$05$")
+                && new BCryptPasswordEncoder().matches("password", hash)));
+        assertEquals(1, meterRegistry.get("password.rehashed").counter().count());
+    }
+
+    @DisplayName("Password rehasher - rehashIfNeeded() hash with the current cost should be kept")
+    @Test
+    public void rehashIfNeeded2() {
+
+        passwordRehasher.rehashIfNeeded(1L, "password", new BCryptPasswordEncoder(5).encode("password"));
+
+        verify(userService, never()).upgradePassword(anyLong(), any(), any());
+        assertEquals(0, meterRegistry.get("password.rehashed").counter().count());
+    }
+
+    @DisplayName("Password rehasher - rehashIfNeeded() hash with a higher cost should be kept")
+    @Test
+    public void rehashIfNeeded3() {
+
+        passwordRehasher.rehashIfNeeded(1L, "password", new BCryptPasswordEncoder(6).encode("password"));
+
+        verify(userService, never()).upgradePassword(anyLong(), any(), any());
+    }
+
+    @DisplayName("Password rehasher - rehashIfNeeded() failed upgrade should not reach the caller")
+    @Test
+    public void rehashIfNeeded4() {
+
+        when(userService.upgradePassword(anyLong(), anyString(), anyString())).thenThrow(new RuntimeException("db down"));
+
+        assertDoesNotThrow(() -> passwordRehasher.rehashIfNeeded(1L, "password", new BCryptPasswordEncoder(4).encode("password")));
+        assertEquals(0, meterRegistry.get("password.rehashed").counter().count());
+    }
+
+    @DisplayName("BCrypt calibrator - calibrate() should pick a cost within bounds")
+    @Test
+    public void calibrate1() {
+
+        PasswordHashingCalibration slow = BCryptCalibrator.calibrate(Duration.ZERO, 4, 6);
+        assertEquals(4, slow.getCost());
+        assertTrue(slow.isCalibrated());
+
+        PasswordHashingCalibration fast = BCryptCalibrator.calibrate(Duration.ofMinutes(1), 4, 6);
+        assertEquals(6, fast.getCost());
+        assertEquals(Duration.ofMinutes(1), fast.getTargetLatency());
+    }
+
+    @DisplayName("Cost aware encoder - upgradeEncoding() should only flag lower costs")
+    @Test
+    public void upgradeEncoding1() {
+
+        CostAwareBCryptPasswordEncoder encoder = new CostAwareBCryptPasswordEncoder(5);
+
+        assertTrue(encoder.upgradeEncoding(new BCryptPasswordEncoder(4).encode("password")));
+        assertFalse(encoder.upgradeEncoding(new BCryptPasswordEncoder(6).encode("password")));
+        assertFalse(encoder.upgradeEncoding(encoder.encode("password")));
+        assertFalse(encoder.upgradeEncoding("not a bcrypt hash"));
+        assertFalse(encoder.upgradeEncoding(null));
+    }
+}
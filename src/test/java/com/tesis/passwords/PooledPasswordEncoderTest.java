@@ -0,0 +1,82 @@
+package com.tesis.passwords;
+
+import com.tesis.exceptions.ServiceUnavailableException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PooledPasswordEncoderTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private PooledPasswordEncoder passwordEncoder;
+
+    @BeforeEach
+    public void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        passwordEncoder.destroy();
+    }
+
+    @DisplayName("Pooled password encoder - encode() and matches() should delegate and record latency")
+    @Test
+    public void encode1() {
+
+        passwordEncoder = new PooledPasswordEncoder(new BCryptPasswordEncoder(4), 1, 1, meterRegistry);
+
+        String hash = passwordEncoder.encode("password");
+        assertTrue(passwordEncoder.matches("password", hash));
+        assertFalse(passwordEncoder.matches("other password", hash));
+
+        assertEquals(1, meterRegistry.get("password.hashing").tag("operation", "encode").timer().count());
+        assertEquals(2, meterRegistry.get("password.hashing").tag("operation", "matches").timer().count());
+        assertNotNull(meterRegistry.get("executor.queued").tag("name", PooledPasswordEncoder.POOL_NAME).gauge());
+    }
+
+    @DisplayName("Pooled password encoder - matches() saturated pool should fail fast")
+    @Test
+    public void matches1() throws Exception {
+
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        PasswordEncoder blockingEncoder = new BCryptPasswordEncoder(4) {
+            @Override
+            public boolean matches(CharSequence rawPassword, String encodedPassword) {
+                started.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return true;
+            }
+        };
+        passwordEncoder = new PooledPasswordEncoder(blockingEncoder, 1, 1, meterRegistry);
+
+        CompletableFuture<Boolean> running = CompletableFuture.supplyAsync(() -> passwordEncoder.matches("password", "hash"));
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        CompletableFuture<Boolean> queued = CompletableFuture.supplyAsync(() -> passwordEncoder.matches("password", "hash"));
+        while (meterRegistry.get("executor.queued").tag("name", PooledPasswordEncoder.POOL_NAME).gauge().value() < 1) {
+            Thread.sleep(10);
+        }
+
+        assertThrows(ServiceUnavailableException.class, () -> passwordEncoder.matches("password", "hash"));
+        assertEquals(1, meterRegistry.get("password.hashing.rejected").counter().count());
+
+        release.countDown();
+        assertTrue(running.get(10, TimeUnit.SECONDS));
+        assertTrue(queued.get(10, TimeUnit.SECONDS));
+    }
+}
@@ -1,5 +1,6 @@
 package com.tesis.privileges;
 
+import com.tesis.roles.AuthorizationIndex;
 import org.assertj.core.util.Lists;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -21,6 +22,8 @@ public class PrivilegeServiceTest {
 
     @Mock
     private PrivilegeRepository privilegeRepository;
+    @Mock
+    private AuthorizationIndex authorizationIndex;
 
     @InjectMocks
     private DefaultPrivilegeService privilegeService;
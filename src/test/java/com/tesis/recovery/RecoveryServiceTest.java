@@ -7,21 +7,26 @@ import com.tesis.exceptions.NotFoundException;
 import com.tesis.exceptions.UnauthorizedException;
 import com.tesis.users.User;
 import com.tesis.users.UserService;
-import com.tesis.utils.JwtUtils;
+import com.tesis.utils.ParsedToken;
+import com.tesis.utils.TokenCodec;
+import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.impl.DefaultClaims;
 import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import mockit.MockUp;
 import mockit.integration.junit5.JMockitExtension;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
-import org.mockito.Spy;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.web.server.ResponseStatusException;
 
 import java.security.Key;
+import java.time.Instant;
+import java.util.Date;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -37,12 +42,22 @@ public class RecoveryServiceTest {
     private UserService userService;
     @Mock
     private EmailService emailService;
-    @Spy
     private Key key = Keys.secretKeyFor(SignatureAlgorithm.HS512);
 
-    @InjectMocks
     private DefaultRecoveryService recoveryService;
 
+    @BeforeEach
+    public void setUp() {
+        recoveryService = new DefaultRecoveryService(recoveryRepository, userService, emailService, new TokenCodec(key, new SimpleMeterRegistry()));
+    }
+
+    private Claims mockClaims(String subject) {
+        Claims claims = new DefaultClaims();
+        claims.setSubject(subject);
+        claims.setExpiration(Date.from(Instant.now().plusSeconds(60)));
+        return claims;
+    }
+
     @DisplayName("Recovery service - createToken() invalid user email")
     @Test
     public void createToken1() {
@@ -55,10 +70,10 @@ public class RecoveryServiceTest {
     @Test
     public void createToken2() {
 
-        new MockUp<JwtUtils>() {
+        new MockUp<TokenCodec>() {
             @mockit.Mock
-            public boolean validateToken(String token, Key key) {
-                return false;
+            public Optional<ParsedToken> verify(String token) {
+                return Optional.empty();
             }
         };
 
@@ -85,10 +100,10 @@ public class RecoveryServiceTest {
     @Test
     public void createToken3() {
 
-        new MockUp<JwtUtils>() {
+        new MockUp<TokenCodec>() {
             @mockit.Mock
-            public boolean validateToken(String token, Key key) {
-                return false;
+            public Optional<ParsedToken> verify(String token) {
+                return Optional.empty();
             }
         };
 
@@ -112,19 +127,14 @@ public class RecoveryServiceTest {
         assertEquals(1L, token.getUserId());
     }
 
-    @DisplayName("Recovery service - createToken() existing token, should not create a new one")
+    @DisplayName("Recovery service - createToken() existing token, should be replaced by a new one")
     @Test
     public void createToken4() {
 
-        new MockUp<JwtUtils>() {
-            @mockit.Mock
-            public boolean validateToken(String token, Key key) {
-                return true;
-            }
-
+        new MockUp<TokenCodec>() {
             @mockit.Mock
-            public Long getUserIdFromToken(String accessToken, Key secretKey) {
-                return 1L;
+            public Optional<ParsedToken> verify(String token) {
+                return Optional.of(new ParsedToken(mockClaims("1")));
             }
         };
 
@@ -146,6 +156,8 @@ public class RecoveryServiceTest {
         RecoveryToken token = recoveryService.createToken("test@test.com");
         assertNotNull(token);
         assertEquals(1L, token.getUserId());
+        assertNotEquals("token", token.getToken());
+        assertTrue(token.matches(token.getToken()));
     }
 
     @DisplayName("Recovery service - createToken() ok")
@@ -171,10 +183,10 @@ public class RecoveryServiceTest {
     @Test
     public void createWelcomeToken2() {
 
-        new MockUp<JwtUtils>() {
+        new MockUp<TokenCodec>() {
             @mockit.Mock
-            public boolean validateToken(String token, Key key) {
-                return false;
+            public Optional<ParsedToken> verify(String token) {
+                return Optional.empty();
             }
         };
 
@@ -200,10 +212,10 @@ public class RecoveryServiceTest {
     @Test
     public void createWelcomeToken3() {
 
-        new MockUp<JwtUtils>() {
+        new MockUp<TokenCodec>() {
             @mockit.Mock
-            public boolean validateToken(String token, Key key) {
-                return false;
+            public Optional<ParsedToken> verify(String token) {
+                return Optional.empty();
             }
         };
 
@@ -226,19 +238,14 @@ public class RecoveryServiceTest {
         assertEquals(1L, token.getUserId());
     }
 
-    @DisplayName("Recovery service - createWelcomeToken() existing token, should not create a new one")
+    @DisplayName("Recovery service - createWelcomeToken() existing token, should be replaced by a new one")
     @Test
     public void createWelcomeToken4() {
 
-        new MockUp<JwtUtils>() {
-            @mockit.Mock
-            public boolean validateToken(String token, Key key) {
-                return true;
-            }
-
+        new MockUp<TokenCodec>() {
             @mockit.Mock
-            public Long getUserIdFromToken(String accessToken, Key secretKey) {
-                return 1L;
+            public Optional<ParsedToken> verify(String token) {
+                return Optional.of(new ParsedToken(mockClaims("1")));
             }
         };
 
@@ -259,6 +266,8 @@ public class RecoveryServiceTest {
         RecoveryToken token = recoveryService.createWelcomeToken(mockedUser);
         assertNotNull(token);
         assertEquals(1L, token.getUserId());
+        assertNotEquals("token", token.getToken());
+        assertTrue(token.matches(token.getToken()));
     }
 
     @DisplayName("Recovery service - createWelcomeToken() ok")
@@ -284,10 +293,10 @@ public class RecoveryServiceTest {
     @Test
     public void changeUserPassword1() {
 
-        new MockUp<JwtUtils>() {
+        new MockUp<TokenCodec>() {
             @mockit.Mock
-            public Long getUserIdFromToken(String token, Key key) {
-                return 1L;
+            public Optional<ParsedToken> verify(String token) {
+                return Optional.of(new ParsedToken(mockClaims("1")));
             }
         };
         when(recoveryRepository.findById(1L)).thenReturn(Optional.empty());
@@ -299,10 +308,10 @@ public class RecoveryServiceTest {
     @Test
     public void changeUserPassword2() {
 
-        new MockUp<JwtUtils>() {
+        new MockUp<TokenCodec>() {
             @mockit.Mock
-            public Long getUserIdFromToken(String token, Key key) {
-                return 1L;
+            public Optional<ParsedToken> verify(String token) {
+                return Optional.of(new ParsedToken(mockClaims("1")));
             }
         };
         when(recoveryRepository.findById(1L)).thenReturn(Optional.of(RecoveryToken.builder().token("other token").build()));
@@ -314,10 +323,10 @@ public class RecoveryServiceTest {
     @Test
     public void changeUserPassword3() {
 
-        new MockUp<JwtUtils>() {
+        new MockUp<TokenCodec>() {
             @mockit.Mock
-            public Long getUserIdFromToken(String token, Key key) {
-                return 1L;
+            public Optional<ParsedToken> verify(String token) {
+                return Optional.of(new ParsedToken(mockClaims("1")));
             }
         };
         when(recoveryRepository.findById(1L)).thenReturn(Optional.of(RecoveryToken.builder().token("token").build()));
@@ -330,10 +339,10 @@ public class RecoveryServiceTest {
     @Test
     public void changeUserPassword4() {
 
-        new MockUp<JwtUtils>() {
+        new MockUp<TokenCodec>() {
             @mockit.Mock
-            public Long getUserIdFromToken(String token, Key key) {
-                return 1L;
+            public Optional<ParsedToken> verify(String token) {
+                return Optional.of(new ParsedToken(mockClaims("1")));
             }
         };
         when(recoveryRepository.findById(1L)).thenReturn(Optional.of(RecoveryToken.builder().token("token").build()));
@@ -345,10 +354,10 @@ public class RecoveryServiceTest {
     @Test
     public void validateToken1() {
 
-        new MockUp<JwtUtils>() {
+        new MockUp<TokenCodec>() {
             @mockit.Mock
-            public boolean validateToken(String token, Key key) {
-                return false;
+            public Optional<ParsedToken> verify(String token) {
+                return Optional.empty();
             }
         };
 
@@ -359,15 +368,10 @@ public class RecoveryServiceTest {
     @Test
     public void validateToken2() {
 
-        new MockUp<JwtUtils>() {
+        new MockUp<TokenCodec>() {
             @mockit.Mock
-            public boolean validateToken(String token, Key key) {
-                return true;
-            }
-
-            @mockit.Mock
-            public Long getUserIdFromToken(String accessToken, Key secretKey) {
-                return 1L;
+            public Optional<ParsedToken> verify(String token) {
+                return Optional.of(new ParsedToken(mockClaims("1")));
             }
         };
 
@@ -379,15 +383,10 @@ public class RecoveryServiceTest {
     @Test
     public void validateToken3() {
 
-        new MockUp<JwtUtils>() {
+        new MockUp<TokenCodec>() {
             @mockit.Mock
-            public boolean validateToken(String token, Key key) {
-                return true;
-            }
-
-            @mockit.Mock
-            public Long getUserIdFromToken(String accessToken, Key secretKey) {
-                return 1L;
+            public Optional<ParsedToken> verify(String token) {
+                return Optional.of(new ParsedToken(mockClaims("1")));
             }
         };
 
@@ -399,15 +398,10 @@ public class RecoveryServiceTest {
     @Test
     public void validateToken4() {
 
-        new MockUp<JwtUtils>() {
-            @mockit.Mock
-            public boolean validateToken(String token, Key key) {
-                return true;
-            }
-
+        new MockUp<TokenCodec>() {
             @mockit.Mock
-            public Long getUserIdFromToken(String accessToken, Key secretKey) {
-                return 1L;
+            public Optional<ParsedToken> verify(String token) {
+                return Optional.of(new ParsedToken(mockClaims("1")));
             }
         };
 
@@ -0,0 +1,138 @@
+package com.tesis.roles;
+
+import com.google.common.collect.Sets;
+import com.tesis.privileges.Privilege;
+import com.tesis.privileges.PrivilegeRepository;
+import org.assertj.core.util.Lists;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.springframework.data.domain.Sort;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(SpringExtension.class)
+public class AuthorizationIndexTest {
+
+    @Mock
+    private RoleRepository roleRepository;
+    @Mock
+    private PrivilegeRepository privilegeRepository;
+
+    private AuthorizationIndex authorizationIndex;
+
+    private final Privilege getClient = Privilege.builder().id(1L).name("GET_CLIENT").build();
+    private final Privilege createClient = Privilege.builder().id(2L).name("CREATE_CLIENT").build();
+    private final Privilege deleteClient = Privilege.builder().id(3L).name("DELETE_CLIENT").build();
+
+    @BeforeEach
+    public void setUp() {
+        authorizationIndex = new AuthorizationIndex(roleRepository, privilegeRepository, Duration.ZERO);
+        when(privilegeRepository.findAll(any(Sort.class))).thenReturn(Lists.newArrayList(getClient, createClient, deleteClient));
+    }
+
+    @DisplayName("Authorization index - hasPrivileges() role has every privilege")
+    @Test
+    public void hasPrivileges1() {
+
+        Role role = Role.builder().id(1L).name("CLIENT").privileges(Sets.newHashSet(getClient, createClient)).build();
+        when(roleRepository.findAllWithPrivileges()).thenReturn(Collections.singletonList(role));
+
+        assertTrue(authorizationIndex.hasPrivileges(1L, Lists.newArrayList("GET_CLIENT", "CREATE_CLIENT")));
+        assertTrue(authorizationIndex.hasPrivileges(1L, Lists.newArrayList("CREATE_CLIENT")));
+        assertTrue(authorizationIndex.hasPrivileges(1L, Collections.emptyList()));
+    }
+
+    @DisplayName("Authorization index - hasPrivileges() missing privilege")
+    @Test
+    public void hasPrivileges2() {
+
+        Role role = Role.builder().id(1L).name("CLIENT").privileges(Sets.newHashSet(getClient)).build();
+        when(roleRepository.findAllWithPrivileges()).thenReturn(Collections.singletonList(role));
+
+        assertFalse(authorizationIndex.hasPrivileges(1L, Lists.newArrayList("GET_CLIENT", "DELETE_CLIENT")));
+    }
+
+    @DisplayName("Authorization index - hasPrivileges() unknown privilege")
+    @Test
+    public void hasPrivileges3() {
+
+        Role role = Role.builder().id(1L).name("CLIENT").privileges(Sets.newHashSet(getClient)).build();
+        when(roleRepository.findAllWithPrivileges()).thenReturn(Collections.singletonList(role));
+
+        assertFalse(authorizationIndex.hasPrivileges(1L, Lists.newArrayList("GET_CLIENT", "INVALID_PRIVILEGE")));
+    }
+
+    @DisplayName("Authorization index - hasPrivileges() unknown role should reload the catalog once")
+    @Test
+    public void hasPrivileges4() {
+
+        when(roleRepository.findAllWithPrivileges()).thenReturn(Collections.emptyList());
+
+        assertFalse(authorizationIndex.hasPrivileges(1L, Lists.newArrayList("GET_CLIENT")));
+        verify(roleRepository, times(2)).findAllWithPrivileges();
+    }
+
+    @DisplayName("Authorization index - hasPrivileges() unknown roles should not reload the catalog again within the miss refresh interval")
+    @Test
+    public void hasPrivileges6() {
+
+        authorizationIndex = new AuthorizationIndex(roleRepository, privilegeRepository, Duration.ofHours(1));
+        Role role = Role.builder().id(1L).name("CLIENT").privileges(Sets.newHashSet(getClient)).build();
+        when(roleRepository.findAllWithPrivileges()).thenReturn(Collections.singletonList(role));
+
+        for (int i = 0; i < 100; i++) {
+            assertFalse(authorizationIndex.hasPrivileges(2L, Lists.newArrayList("GET_CLIENT")));
+        }
+        assertTrue(authorizationIndex.hasPrivileges(1L, Lists.newArrayList("GET_CLIENT")));
+        verify(roleRepository, times(1)).findAllWithPrivileges();
+
+        // El refresh periodico o un rebuild siguen trayendo los roles nuevos
+        Role newRole = Role.builder().id(2L).name("ADMIN").privileges(Sets.newHashSet(getClient)).build();
+        when(roleRepository.findAllWithPrivileges()).thenReturn(Lists.newArrayList(role, newRole));
+        authorizationIndex.refresh();
+        assertTrue(authorizationIndex.hasPrivileges(2L, Lists.newArrayList("GET_CLIENT")));
+    }
+
+    @DisplayName("Authorization index - rebuild() should replace role privileges")
+    @Test
+    public void rebuild1() {
+
+        Role role = Role.builder().id(1L).name("CLIENT").privileges(Sets.newHashSet(getClient)).build();
+        when(roleRepository.findAllWithPrivileges()).thenReturn(Collections.singletonList(role));
+        assertFalse(authorizationIndex.hasPrivileges(1L, Lists.newArrayList("DELETE_CLIENT")));
+
+        Role updatedRole = Role.builder().id(1L).name("CLIENT").privileges(Sets.newHashSet(getClient, deleteClient)).build();
+        when(roleRepository.findAllWithPrivileges()).thenReturn(Collections.singletonList(updatedRole));
+        authorizationIndex.rebuild();
+
+        assertTrue(authorizationIndex.hasPrivileges(1L, Lists.newArrayList("DELETE_CLIENT")));
+    }
+
+    @DisplayName("Authorization index - hasPrivileges() catalog bigger than a single mask word")
+    @Test
+    public void hasPrivileges5() {
+
+        List<Privilege> privileges = IntStream.range(0, 130)
+                .mapToObj(i -> Privilege.builder().id((long) i).name("PRIVILEGE_" + i).build())
+                .collect(Collectors.toList());
+        Role role = Role.builder().id(1L).name("ADMIN").privileges(Sets.newHashSet(privileges.get(3), privileges.get(70), privileges.get(129))).build();
+
+        when(privilegeRepository.findAll(any(Sort.class))).thenReturn(privileges);
+        when(roleRepository.findAllWithPrivileges()).thenReturn(Collections.singletonList(role));
+
+        assertTrue(authorizationIndex.hasPrivileges(1L, Lists.newArrayList("PRIVILEGE_3", "PRIVILEGE_70", "PRIVILEGE_129")));
+        assertFalse(authorizationIndex.hasPrivileges(1L, Lists.newArrayList("PRIVILEGE_3", "PRIVILEGE_128")));
+    }
+}
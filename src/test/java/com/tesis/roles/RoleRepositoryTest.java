@@ -1,20 +1,35 @@
 package com.tesis.roles;
 
+import com.google.common.collect.Sets;
+import com.tesis.privileges.Privilege;
+import com.tesis.privileges.PrivilegeRepository;
 import org.assertj.core.util.Lists;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.EntityManagerFactory;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 
-@DataJpaTest
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
 public class RoleRepositoryTest {
 
     @Autowired
     private RoleRepository roleRepository;
+    @Autowired
+    private PrivilegeRepository privilegeRepository;
+    @Autowired
+    private TestEntityManager entityManager;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
 
     @DisplayName("Role repository - getByName() entity not found")
     @Test
@@ -60,4 +75,59 @@ public class RoleRepositoryTest {
         assertTrue(roleRepository.existsByName("CLIENT"));
         assertFalse(roleRepository.existsByName("INVALID_ROLE"));
     }
+
+    @DisplayName("Role repository - findAllWithPrivileges() should fetch privileges in the same query")
+    @Test
+    public void findAllWithPrivileges1() {
+
+        List<Privilege> privileges = privilegeRepository.saveAll(Lists.newArrayList(
+                Privilege.builder().name("GET_CLIENT").build(),
+                Privilege.builder().name("CREATE_CLIENT").build()
+        ));
+        roleRepository.saveAll(Lists.newArrayList(
+                Role.builder().name("CLIENT").privileges(Sets.newHashSet(privileges)).build(),
+                Role.builder().name("ADMIN").build()
+        ));
+        entityManager.flush();
+        entityManager.clear();
+
+        List<Role> roles = roleRepository.findAllWithPrivileges();
+        assertEquals(2, roles.size());
+
+        Role client = roles.stream().filter(r -> "CLIENT".equals(r.getName())).findFirst().orElseThrow(AssertionError::new);
+        assertTrue(entityManager.getEntityManager().getEntityManagerFactory().getPersistenceUnitUtil().isLoaded(client, "privileges"));
+        assertEquals(2, client.getPrivileges().size());
+    }
+
+    @DisplayName("Role repository - getByName() repeated lookups should be served from the second level cache")
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void getByName3() {
+
+        Privilege privilege = privilegeRepository.save(Privilege.builder().name("GET_CLIENT").build());
+        Role role = roleRepository.save(Role.builder().name("CLIENT").build());
+        role.setPrivileges(Sets.newHashSet(privilege));
+        roleRepository.save(role);
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class)
+                .getStatistics();
+        try {
+            // Cada lookup corre en su propia transaccion, solo el cache de segundo nivel puede evitar la db
+            assertNotNull(roleRepository.getByName("CLIENT"));
+            assertNotNull(privilegeRepository.getByName("GET_CLIENT"));
+            statistics.clear();
+
+            for (int i = 0; i < 10; i++) {
+                assertEquals("CLIENT", roleRepository.getByName("CLIENT").getName());
+                assertEquals("GET_CLIENT", privilegeRepository.getByName("GET_CLIENT").getName());
+            }
+
+            assertEquals(0, statistics.getPrepareStatementCount());
+            assertEquals(20, statistics.getNaturalIdCacheHitCount());
+            assertEquals(0, statistics.getNaturalIdCacheMissCount());
+        } finally {
+            roleRepository.deleteAll();
+            privilegeRepository.deleteAll();
+        }
+    }
 }
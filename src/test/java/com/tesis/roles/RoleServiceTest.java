@@ -26,6 +26,8 @@ public class RoleServiceTest {
     private RoleRepository roleRepository;
     @Mock
     private PrivilegeService privilegeService;
+    @Mock
+    private AuthorizationIndex authorizationIndex;
     @InjectMocks
     private DefaultRoleService roleService;
 
@@ -1,19 +1,38 @@
 package com.tesis.users;
 
+import com.google.common.collect.Sets;
+import com.tesis.privileges.Privilege;
+import com.tesis.privileges.PrivilegeRepository;
+import com.tesis.roles.Role;
+import com.tesis.roles.RoleRepository;
+import org.assertj.core.util.Lists;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
 import org.springframework.data.jpa.repository.config.EnableJpaAuditing;
 
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
 import static org.junit.jupiter.api.Assertions.*;
 
-@DataJpaTest
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
 @EnableJpaAuditing
 public class UserRepositoryTest {
 
     @Autowired
     private UserRepository userRepository;
+    @Autowired
+    private RoleRepository roleRepository;
+    @Autowired
+    private PrivilegeRepository privilegeRepository;
+    @Autowired
+    private TestEntityManager entityManager;
 
     @DisplayName("User repository - findByEmail()")
     @Test
@@ -45,4 +64,98 @@ public class UserRepositoryTest {
         assertEquals("test", found.getName());
         assertNull(notFound);
     }
+
+    @DisplayName("User repository - findAuthorizationsByIdInAndStatusIsNot() should skip deleted users")
+    @Test
+    public void findAuthorizationsByIdInAndStatusIsNot1() {
+
+        Role role = roleRepository.save(Role.builder().name("CLIENT").build());
+
+        User active = userRepository.save(User.builder()
+                .name("test")
+                .lastName("test")
+                .email("test@test.com")
+                .dni("123")
+                .role(role)
+                .status(UserStatus.ACTIVE)
+                .build());
+
+        User withoutRole = userRepository.save(User.builder()
+                .name("no role")
+                .lastName("test")
+                .email("norole@test.com")
+                .dni("123")
+                .status(UserStatus.INACTIVE)
+                .build());
+
+        User deleted = userRepository.save(User.builder()
+                .name("deleted")
+                .lastName("test")
+                .email("deleted@test.com")
+                .dni("123")
+                .role(role)
+                .status(UserStatus.DELETED)
+                .build());
+
+        Map<Long, UserAuthorization> authorizations = userRepository.findAuthorizationsByIdInAndStatusIsNot(
+                Lists.newArrayList(active.getId(), withoutRole.getId(), deleted.getId(), -1L), UserStatus.DELETED)
+                .stream()
+                .collect(Collectors.toMap(UserAuthorization::getUserId, Function.identity()));
+
+        assertEquals(2, authorizations.size());
+        assertEquals(role.getId(), authorizations.get(active.getId()).getRoleId());
+        assertEquals(UserStatus.ACTIVE, authorizations.get(active.getId()).getStatus());
+        assertNull(authorizations.get(withoutRole.getId()).getRoleId());
+    }
+
+    @DisplayName("User repository - findAuthorizationByIdAndStatusIsNot() should take a single statement")
+    @Test
+    public void findAuthorizationByIdAndStatusIsNot1() {
+
+        Privilege privilege = privilegeRepository.save(Privilege.builder().name("GET_CLIENT").build());
+        Role role = roleRepository.save(Role.builder().name("CLIENT").build());
+        role.setPrivileges(Sets.newHashSet(privilege));
+        roleRepository.save(role);
+
+        User user = userRepository.save(User.builder()
+                .name("test")
+                .lastName("test")
+                .email("test@test.com")
+                .dni("123")
+                .role(role)
+                .status(UserStatus.ACTIVE)
+                .build());
+        entityManager.flush();
+        entityManager.clear();
+
+        Statistics statistics = entityManager.getEntityManager().getEntityManagerFactory()
+                .unwrap(SessionFactory.class)
+                .getStatistics();
+        statistics.clear();
+
+        UserAuthorization authorization = userRepository.findAuthorizationByIdAndStatusIsNot(user.getId(), UserStatus.DELETED);
+
+        assertEquals(role.getId(), authorization.getRoleId());
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertEquals(0, statistics.getEntityLoadCount());
+        assertNull(userRepository.findAuthorizationByIdAndStatusIsNot(-1L, UserStatus.DELETED));
+    }
+
+    @DisplayName("User repository - updatePassword() should only replace the expected hash")
+    @Test
+    public void updatePassword1() {
+
+        User user = userRepository.save(User.builder()
+                .name("test")
+                .lastName("test")
+                .email("test@test.com")
+                .dni("123")
+                .password("old hash")
+                .status(UserStatus.ACTIVE)
+                .build());
+
+        assertEquals(0, userRepository.updatePassword(user.getId(), "other hash", "new hash"));
+        assertEquals(1, userRepository.updatePassword(user.getId(), "old hash", "new hash"));
+        assertEquals("new hash", userRepository.findById(user.getId()).get().getPassword());
+    }
 }
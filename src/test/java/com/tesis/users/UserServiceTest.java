@@ -12,6 +12,7 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
@@ -22,8 +23,8 @@ import java.util.Optional;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
-import static org.mockito.Mockito.doNothing;
-import static org.mockito.Mockito.when;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.*;
 
 @ExtendWith(SpringExtension.class)
 public class UserServiceTest {
@@ -36,6 +37,8 @@ public class UserServiceTest {
     private RecoveryService recoveryService;
     @Mock
     private PasswordEncoder passwordEncoder;
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
     @InjectMocks
     private DefaultUserService userService;
 
@@ -298,6 +301,30 @@ public class UserServiceTest {
         assertNotNull(updatedUser);
         assertEquals("test2@test.com", updatedUser.getEmail());
         assertEquals("TEST2", updatedUser.getRole().getName());
+        verify(eventPublisher, never()).publishEvent(any(UserAccessChangedEvent.class));
+    }
+
+    @DisplayName("User service - updateUser() role change should revoke user access")
+    @Test
+    public void updateUser5() {
+
+        User mock = User.builder()
+                .id(1L)
+                .name("test")
+                .email("test@test.com")
+                .role(Role.builder().id(1L).name("CLIENT").build())
+                .build();
+
+        UserRequestBody requestBody = UserRequestBody
+                .builder()
+                .role("ADMIN")
+                .build();
+
+        when(userRepository.findByIdAndStatusIsNot(1L, UserStatus.DELETED)).thenReturn(mock);
+        when(roleService.getByName("ADMIN")).thenReturn(Optional.of(Role.builder().id(2L).name("ADMIN").build()));
+
+        userService.updateUser(1L, requestBody);
+        verify(eventPublisher).publishEvent(argThat((Object event) -> event instanceof UserAccessChangedEvent && ((UserAccessChangedEvent) event).getUserId() == 1L));
     }
 
     @DisplayName("User service - deleteUser() user not found")
@@ -335,6 +362,7 @@ public class UserServiceTest {
         } catch (Exception e) {
             fail("should not fail here");
         }
+        verify(eventPublisher).publishEvent(any(UserAccessChangedEvent.class));
     }
 
     @DisplayName("User service - physicallyDeleteUser() ok")
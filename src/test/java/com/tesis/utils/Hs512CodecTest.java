@@ -0,0 +1,193 @@
+package com.tesis.utils;
+
+import com.tesis.authentication.AccessTokenClaims;
+import com.tesis.exceptions.InternalServerErrorException;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtBuilder;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.security.Key;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The HS512 codec is checked against jjwt: same tokens on issuance, and each one accepts the tokens of the other
+ */
+public class Hs512CodecTest {
+
+    private final Key key = Keys.secretKeyFor(SignatureAlgorithm.HS512);
+    private final Date issuedAt = Date.from(Instant.now());
+    private final Date expiration = Date.from(Instant.now().plusSeconds(3600));
+
+    private TokenCodec hs512Codec;
+    private TokenCodec jjwtCodec;
+    private Map<String, Object> accessClaims;
+
+    @BeforeEach
+    public void setUp() {
+        hs512Codec = new TokenCodec(key, new SimpleMeterRegistry(), TokenCodecMode.HS512);
+        jjwtCodec = new TokenCodec(key, new SimpleMeterRegistry(), TokenCodecMode.JJWT);
+
+        accessClaims = new HashMap<>();
+        accessClaims.put(AccessTokenClaims.VERSION, AccessTokenClaims.CURRENT_VERSION);
+        accessClaims.put(AccessTokenClaims.EMAIL, "año \"test\" \\ </a>\u0001\t@mail.com");
+        accessClaims.put(AccessTokenClaims.ROLE_ID, 3L);
+        accessClaims.put(AccessTokenClaims.ROLE, "ADMIN");
+    }
+
+    private TokenBuilder accessToken(TokenCodec tokenCodec) {
+        return tokenCodec.builder()
+                .setHeaderParam("type", "BEARER")
+                .addClaims(accessClaims)
+                .setId("abcdefghijklmnop")
+                .setSubject("1")
+                .setIssuedAt(issuedAt)
+                .setExpiration(expiration);
+    }
+
+    private JwtBuilder jjwtAccessToken() {
+        return Jwts.builder()
+                .setHeaderParam("type", "BEARER")
+                .addClaims(accessClaims)
+                .setId("abcdefghijklmnop")
+                .setSubject("1")
+                .setIssuedAt(issuedAt)
+                .setExpiration(expiration)
+                .signWith(key, SignatureAlgorithm.HS512);
+    }
+
+    @DisplayName("HS512 codec - sign() same bytes as jjwt")
+    @Test
+    public void sign1() {
+
+        String token = hs512Codec.sign(accessToken(hs512Codec));
+
+        assertEquals(jjwtAccessToken().compact(), token);
+        assertEquals(jjwtCodec.sign(accessToken(jjwtCodec)), token);
+
+        String recoveryToken = hs512Codec.sign(hs512Codec.builder()
+                .setHeaderParam("type", "RECOVERY")
+                .setSubject("1")
+                .setIssuedAt(issuedAt)
+                .setExpiration(expiration));
+        assertEquals(Jwts.builder()
+                .setHeaderParam("type", "RECOVERY")
+                .setSubject("1")
+                .setIssuedAt(issuedAt)
+                .setExpiration(expiration)
+                .signWith(key, SignatureAlgorithm.HS512)
+                .compact(), recoveryToken);
+    }
+
+    @DisplayName("HS512 codec - verify() tokens signed by jjwt")
+    @Test
+    public void verify1() {
+
+        ParsedToken parsedToken = hs512Codec.parse(jjwtAccessToken().compact());
+
+        assertEquals(1L, parsedToken.getUserId());
+        assertEquals(3L, parsedToken.getRoleId());
+        assertEquals(expiration.getTime() / 1000 * 1000, parsedToken.getExpiration().getTime());
+        assertEquals(accessClaims.get(AccessTokenClaims.EMAIL), parsedToken.getClaims().get(AccessTokenClaims.EMAIL));
+        assertEquals("abcdefghijklmnop", parsedToken.getClaims().getId());
+    }
+
+    @DisplayName("HS512 codec - tokens signed by the codec are accepted by jjwt")
+    @Test
+    public void verify2() {
+
+        String token = hs512Codec.sign(accessToken(hs512Codec));
+
+        Claims claims = Jwts.parserBuilder().setSigningKey(key).build().parseClaimsJws(token).getBody();
+        assertEquals("1", claims.getSubject());
+        assertEquals(accessClaims.get(AccessTokenClaims.EMAIL), claims.get(AccessTokenClaims.EMAIL));
+        assertEquals(3L, AccessTokenClaims.getRoleId(claims));
+        assertEquals(jjwtCodec.parse(token).getExpiration(), hs512Codec.parse(token).getExpiration());
+    }
+
+    @DisplayName("HS512 codec - verify() expired, forged and tampered tokens are rejected like jjwt does")
+    @Test
+    public void verify3() {
+
+        String expired = Jwts.builder()
+                .setSubject("1")
+                .setExpiration(Date.from(Instant.now().minusSeconds(5)))
+                .signWith(key, SignatureAlgorithm.HS512)
+                .compact();
+        String forged = Jwts.builder()
+                .setSubject("1")
+                .setExpiration(expiration)
+                .signWith(Keys.secretKeyFor(SignatureAlgorithm.HS512), SignatureAlgorithm.HS512)
+                .compact();
+        String[] parts = jjwtAccessToken().compact().split("\\.");
+        String tampered = parts[0] + "." + Base64.getUrlEncoder().withoutPadding().encodeToString("{\"sub\":\"2\"}".getBytes()) + "." + parts[2];
+
+        for (String token : Arrays.asList(expired, forged, tampered, "token", "a.b", "a.b.c.d", "!!.??." + parts[2], "")) {
+            assertFalse(hs512Codec.verify(token).isPresent(), token);
+            assertFalse(jjwtCodec.verify(token).isPresent(), token);
+        }
+    }
+
+    @DisplayName("HS512 codec - verify() only HS512 tokens are accepted")
+    @Test
+    public void verify4() {
+
+        String token = Jwts.builder()
+                .setSubject("1")
+                .signWith(Keys.hmacShaKeyFor(key.getEncoded()), SignatureAlgorithm.HS256)
+                .compact();
+
+        assertFalse(hs512Codec.verify(token).isPresent());
+    }
+
+    @DisplayName("HS512 codec - verify() legacy tokens with nested claims")
+    @Test
+    public void verify5() {
+
+        Map<String, Object> role = new HashMap<>();
+        role.put("id", 2);
+        role.put("privileges", Arrays.asList("GET_CLIENT", "CREATE_CLIENT"));
+        Map<String, Object> user = new HashMap<>();
+        user.put("id", 7);
+        user.put("email", "test@mail.com");
+        user.put("role", role);
+        user.put("deleted", false);
+        user.put("last_login", null);
+
+        String token = Jwts.builder()
+                .setHeaderParam("type", "BEARER")
+                .claim("user", user)
+                .setSubject("7")
+                .setExpiration(expiration)
+                .signWith(key, SignatureAlgorithm.HS512)
+                .compact();
+
+        ParsedToken parsedToken = hs512Codec.parse(token);
+        assertEquals(7L, parsedToken.getUserId());
+        assertNull(parsedToken.getRoleId());
+        assertNotNull(parsedToken.getClaims().get("user"));
+    }
+
+    @DisplayName("HS512 codec - parse() invalid subject")
+    @Test
+    public void parse1() {
+
+        String token = hs512Codec.sign(hs512Codec.builder()
+                .setSubject("test")
+                .setExpiration(expiration));
+
+        assertThrows(InternalServerErrorException.class, () -> hs512Codec.parse(token));
+    }
+}
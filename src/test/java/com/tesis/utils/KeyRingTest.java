@@ -0,0 +1,88 @@
+package com.tesis.utils;
+
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.UnsupportedJwtException;
+import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.security.Key;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class KeyRingTest {
+
+    private final Key legacyKey = Keys.secretKeyFor(SignatureAlgorithm.HS512);
+    private final Instant now = Instant.now();
+    private final TokenKey currentKey = new TokenKey("current", Keys.secretKeyFor(SignatureAlgorithm.HS512), now.minus(Duration.ofDays(1)));
+    private final TokenKey nextKey = new TokenKey("next", Keys.secretKeyFor(SignatureAlgorithm.HS512), now.plus(Duration.ofDays(1)));
+
+    private String sign(TokenCodec tokenCodec) {
+        return tokenCodec.sign(tokenCodec.builder()
+                .setHeaderParam("type", "BEARER")
+                .setSubject("1")
+                .setExpiration(Date.from(now.plus(Duration.ofDays(30)))));
+    }
+
+    @DisplayName("Key ring - rotate() the latest active key signs, the rest only verify")
+    @Test
+    public void rotate1() {
+
+        KeyRing keyRing = new KeyRing(legacyKey, Arrays.asList(nextKey, currentKey));
+
+        assertSame(currentKey, keyRing.getSigningKey());
+        assertFalse(keyRing.rotate(now));
+        assertTrue(keyRing.rotate(now.plus(Duration.ofDays(2))));
+        assertSame(nextKey, keyRing.getSigningKey());
+
+        assertSame(currentKey, keyRing.getVerificationKey("current"));
+        assertSame(nextKey, keyRing.getVerificationKey("next"));
+        assertSame(legacyKey, keyRing.getVerificationKey(null).getKey());
+        assertThrows(UnsupportedJwtException.class, () -> keyRing.getVerificationKey("removed"));
+    }
+
+    @DisplayName("Key ring - the legacy key signs without kid until a key is active")
+    @Test
+    public void rotate2() {
+
+        KeyRing keyRing = new KeyRing(legacyKey, Collections.singletonList(nextKey));
+
+        assertNull(keyRing.getSigningKey().getId());
+        assertSame(legacyKey, keyRing.getSigningKey().getKey());
+        assertThrows(IllegalStateException.class, () -> new KeyRing(null, Collections.singletonList(nextKey)));
+        assertThrows(IllegalArgumentException.class, () -> new KeyRing(legacyKey, Arrays.asList(currentKey, currentKey)));
+    }
+
+    @DisplayName("Key ring - tokens signed before a rotation are still valid after it, in both codecs")
+    @Test
+    public void rotate3() {
+
+        for (TokenCodecMode mode : TokenCodecMode.values()) {
+            KeyRing keyRing = new KeyRing(legacyKey, Arrays.asList(currentKey, nextKey));
+            TokenCodec tokenCodec = new TokenCodec(keyRing, new SimpleMeterRegistry(), mode, SignatureAlgorithm.HS512);
+            String legacyToken = new TokenCodec(legacyKey, new SimpleMeterRegistry(), mode).sign(new TokenBuilder().setSubject("1"));
+
+            String previousToken = sign(tokenCodec);
+            keyRing.rotate(now.plus(Duration.ofDays(2)));
+            String newToken = sign(tokenCodec);
+
+            assertNotEquals(previousToken.split("\\.")[0], newToken.split("\\.")[0], mode.name());
+            assertTrue(tokenCodec.verify(previousToken).isPresent(), mode.name());
+            assertTrue(tokenCodec.verify(newToken).isPresent(), mode.name());
+            assertTrue(tokenCodec.verify(legacyToken).isPresent(), mode.name());
+
+            // Una vez que se saca la key vieja sus tokens dejan de validar
+            TokenKey activeNextKey = new TokenKey(nextKey.getId(), nextKey.getKey(), now);
+            TokenCodec withoutPrevious = new TokenCodec(new KeyRing(null, Collections.singletonList(activeNextKey)), new SimpleMeterRegistry(), mode, SignatureAlgorithm.HS512);
+            assertFalse(withoutPrevious.verify(previousToken).isPresent(), mode.name());
+            assertFalse(withoutPrevious.verify(legacyToken).isPresent(), mode.name());
+            assertTrue(withoutPrevious.verify(newToken).isPresent(), mode.name());
+        }
+    }
+}
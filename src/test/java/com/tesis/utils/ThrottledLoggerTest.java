@@ -0,0 +1,60 @@
+package com.tesis.utils;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class ThrottledLoggerTest {
+
+    @DisplayName("Throttled logger - warnings over the permits of the window should be suppressed")
+    @Test
+    public void warn1() {
+
+        Logger logger = mock(Logger.class);
+        when(logger.isWarnEnabled()).thenReturn(true);
+        ThrottledLogger throttledLogger = new ThrottledLogger(logger, "invalid_token", 2, 60_000);
+
+        for (int i = 0; i < 5; i++) {
+            throttledLogger.warn("[message: Invalid token] [error: {}]", "expired");
+        }
+
+        verify(logger, times(2)).warn("[message: Invalid token] [error: {}]", "expired");
+        assertEquals(3, throttledLogger.getSuppressed());
+    }
+
+    @DisplayName("Throttled logger - a new window should report the suppressed count and log again")
+    @Test
+    public void warn2() throws InterruptedException {
+
+        Logger logger = mock(Logger.class);
+        when(logger.isWarnEnabled()).thenReturn(true);
+        ThrottledLogger throttledLogger = new ThrottledLogger(logger, "invalid_token", 1, 50);
+
+        throttledLogger.warn("[message: Invalid token] [error: {}]", "expired");
+        throttledLogger.warn("[message: Invalid token] [error: {}]", "expired");
+        throttledLogger.warn("[message: Invalid token] [error: {}]", "expired");
+        Thread.sleep(60);
+        throttledLogger.warn("[message: Invalid token] [error: {}]", "expired");
+
+        verify(logger).warn(startsWith("[message: Repeated warning suppressed]"), eq("invalid_token"), eq(2L), anyLong());
+        verify(logger, times(2)).warn("[message: Invalid token] [error: {}]", "expired");
+        assertEquals(0, throttledLogger.getSuppressed());
+    }
+
+    @DisplayName("Throttled logger - nothing should be counted if warn is disabled")
+    @Test
+    public void warn3() {
+
+        Logger logger = mock(Logger.class);
+        ThrottledLogger throttledLogger = new ThrottledLogger(logger, "unknown_route", 1, 60_000);
+
+        throttledLogger.warn("[message: Route not found] [method: {}] [route: {}]", "GET", "/wp-admin");
+
+        verify(logger, never()).warn(anyString(), any(Object.class), any(Object.class));
+        assertEquals(0, throttledLogger.getSuppressed());
+    }
+}
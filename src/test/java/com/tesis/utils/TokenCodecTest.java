@@ -0,0 +1,214 @@
+package com.tesis.utils;
+
+import com.tesis.exceptions.InternalServerErrorException;
+import com.tesis.exceptions.UnauthorizedException;
+import io.jsonwebtoken.*;
+import io.jsonwebtoken.impl.DefaultClaims;
+import io.jsonwebtoken.impl.DefaultJws;
+import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import mockit.MockUp;
+import mockit.integration.junit5.JMockitExtension;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.mockito.Mock;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.security.Key;
+import java.security.KeyPair;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith({SpringExtension.class, JMockitExtension.class})
+public class TokenCodecTest {
+
+    @Mock
+    Key key;
+    @Mock
+    JwtParserBuilder parserBuilderMock;
+    @Mock
+    JwtParser parserMock;
+
+    private final Key secretKey = Keys.secretKeyFor(SignatureAlgorithm.HS512);
+
+    private TokenCodec mockedParserCodec() {
+
+        new MockUp<Jwts>() {
+            @mockit.Mock
+            public JwtParserBuilder parserBuilder() {
+                return parserBuilderMock;
+            }
+        };
+
+        when(parserBuilderMock.setSigningKeyResolver(any())).thenReturn(parserBuilderMock);
+        when(parserBuilderMock.build()).thenReturn(parserMock);
+        return new TokenCodec(key, new SimpleMeterRegistry());
+    }
+
+    @DisplayName("TokenCodec - verify() token invalid")
+    @ParameterizedTest
+    @EnumSource(TokenCodecMode.class)
+    public void verify1(TokenCodecMode mode) {
+
+        TokenCodec tokenCodec = new TokenCodec(secretKey, new SimpleMeterRegistry(), mode);
+        String expired = tokenCodec.sign(tokenCodec.builder()
+                .setSubject("1")
+                .setExpiration(new Date(System.currentTimeMillis() - 60_000)));
+
+        assertFalse(tokenCodec.verify(expired).isPresent());
+        assertFalse(tokenCodec.verify("token").isPresent());
+    }
+
+    @DisplayName("TokenCodec - verify() ok")
+    @ParameterizedTest
+    @EnumSource(TokenCodecMode.class)
+    public void verify2(TokenCodecMode mode) {
+
+        TokenCodec tokenCodec = new TokenCodec(secretKey, new SimpleMeterRegistry(), mode);
+        String token = tokenCodec.sign(tokenCodec.builder()
+                .setSubject("1")
+                .setExpiration(new Date(System.currentTimeMillis() + 60_000)));
+
+        Optional<ParsedToken> parsedToken = tokenCodec.verify(token);
+        assertTrue(parsedToken.isPresent());
+        assertEquals(1L, parsedToken.get().getUserId());
+        assertEquals("1", parsedToken.get().getClaims().getSubject());
+    }
+
+    @DisplayName("TokenCodec - parse() invalid token")
+    @ParameterizedTest
+    @EnumSource(TokenCodecMode.class)
+    public void parse1(TokenCodecMode mode) {
+
+        TokenCodec tokenCodec = new TokenCodec(secretKey, new SimpleMeterRegistry(), mode);
+        String expired = tokenCodec.sign(tokenCodec.builder()
+                .setSubject("1")
+                .setExpiration(new Date(System.currentTimeMillis() - 60_000)));
+
+        assertThrows(UnauthorizedException.class, () -> tokenCodec.parse(expired));
+    }
+
+    @DisplayName("TokenCodec - parse() invalid subject")
+    @ParameterizedTest
+    @EnumSource(TokenCodecMode.class)
+    public void parse2(TokenCodecMode mode) {
+
+        TokenCodec tokenCodec = new TokenCodec(secretKey, new SimpleMeterRegistry(), mode);
+        String token = tokenCodec.sign(tokenCodec.builder().setSubject("test"));
+
+        assertThrows(InternalServerErrorException.class, () -> tokenCodec.parse(token));
+    }
+
+    @DisplayName("TokenCodec - parse() the parser should be built once and reused")
+    @Test
+    public void parse3() {
+
+        TokenCodec tokenCodec = mockedParserCodec();
+        Claims bodyMock = new DefaultClaims();
+        bodyMock.setSubject("1");
+        when(parserMock.parseClaimsJws("token")).thenReturn(new DefaultJws<>(null, bodyMock, null));
+
+        assertEquals(1L, tokenCodec.parse("token").getUserId());
+        assertEquals(1L, tokenCodec.parse("token").getUserId());
+        verify(parserBuilderMock, times(1)).build();
+        verify(parserMock, times(2)).parseClaimsJws("token");
+    }
+
+    @DisplayName("TokenCodec - sign() tokens should only be accepted with the same key")
+    @ParameterizedTest
+    @EnumSource(TokenCodecMode.class)
+    public void sign1(TokenCodecMode mode) {
+
+        TokenCodec tokenCodec = new TokenCodec(secretKey, new SimpleMeterRegistry(), mode);
+        TokenCodec otherCodec = new TokenCodec(Keys.secretKeyFor(SignatureAlgorithm.HS512), new SimpleMeterRegistry(), mode);
+
+        String token = tokenCodec.sign(tokenCodec.builder()
+                .setSubject("7")
+                .setExpiration(new Date(System.currentTimeMillis() + 60_000)));
+
+        assertEquals(7L, tokenCodec.parse(token).getUserId());
+        assertFalse(otherCodec.verify(token).isPresent());
+    }
+
+    @DisplayName("TokenCodec - signAccessToken() ES256 access tokens are verified with the public key only")
+    @ParameterizedTest
+    @EnumSource(TokenCodecMode.class)
+    public void sign2(TokenCodecMode mode) {
+
+        KeyPair keyPair = Keys.keyPairFor(SignatureAlgorithm.ES256);
+        KeyRing keyRing = new KeyRing(secretKey, Collections.singletonList(new TokenKey("es", keyPair, SignatureAlgorithm.ES256, Instant.EPOCH)));
+
+        TokenCodec tokenCodec = new TokenCodec(keyRing, new SimpleMeterRegistry(), mode, SignatureAlgorithm.ES256);
+        String accessToken = tokenCodec.signAccessToken(tokenCodec.builder()
+                .setHeaderParam("type", "BEARER")
+                .setSubject("7")
+                .setExpiration(new Date(System.currentTimeMillis() + 60_000)));
+        String recoveryToken = tokenCodec.sign(tokenCodec.builder()
+                .setHeaderParam("type", "RECOVERY")
+                .setSubject("7"));
+
+        // Lo que hace un servicio que solo tiene la public key del jwks
+        Jws<Claims> jws = Jwts.parserBuilder().setSigningKey(keyPair.getPublic()).build().parseClaimsJws(accessToken);
+        assertEquals("ES256", jws.getHeader().getAlgorithm());
+        assertEquals("es", jws.getHeader().getKeyId());
+        assertEquals("7", jws.getBody().getSubject());
+
+        assertEquals(7L, tokenCodec.parse(accessToken).getUserId());
+        assertEquals(7L, tokenCodec.parse(recoveryToken).getUserId());
+        assertNull(Jwts.parserBuilder().setSigningKey(secretKey).build().parseClaimsJws(recoveryToken).getHeader().getKeyId());
+    }
+
+    @DisplayName("TokenCodec - verify() tokens signed with another algorithm than the one of their key are rejected")
+    @ParameterizedTest
+    @EnumSource(TokenCodecMode.class)
+    public void verify3(TokenCodecMode mode) {
+
+        KeyPair keyPair = Keys.keyPairFor(SignatureAlgorithm.ES256);
+        KeyRing keyRing = new KeyRing(secretKey, Collections.singletonList(new TokenKey("es", keyPair, SignatureAlgorithm.ES256, Instant.EPOCH)));
+
+        // HMAC con la public key publicada como secreto
+        String forged = Jwts.builder()
+                .setHeaderParam("kid", "es")
+                .setSubject("1")
+                .signWith(Keys.hmacShaKeyFor(Arrays.copyOf(keyPair.getPublic().getEncoded(), 64)), SignatureAlgorithm.HS512)
+                .compact();
+
+        TokenCodec tokenCodec = new TokenCodec(keyRing, new SimpleMeterRegistry(), mode, SignatureAlgorithm.ES256);
+        assertFalse(tokenCodec.verify(forged).isPresent());
+    }
+
+    @DisplayName("TokenCodec - restoreSignature() should rebuild the stripped token, only with HMAC keys and the expected type")
+    @ParameterizedTest
+    @EnumSource(TokenCodecMode.class)
+    public void restoreSignature1(TokenCodecMode mode) {
+
+        KeyPair keyPair = Keys.keyPairFor(SignatureAlgorithm.ES256);
+        KeyRing keyRing = new KeyRing(secretKey, Arrays.asList(
+                new TokenKey("hs", Keys.secretKeyFor(SignatureAlgorithm.HS512), Instant.EPOCH),
+                new TokenKey("es", keyPair, SignatureAlgorithm.ES256, Instant.EPOCH)));
+        TokenCodec tokenCodec = new TokenCodec(keyRing, new SimpleMeterRegistry(), mode, SignatureAlgorithm.ES256);
+
+        String token = tokenCodec.sign(tokenCodec.builder().setHeaderParam("type", "RECOVERY").setSubject("7"));
+        String unsignedToken = tokenCodec.stripSignature(token);
+        assertEquals(2, unsignedToken.split("\\.").length);
+        assertEquals(token, tokenCodec.restoreSignature(unsignedToken, "RECOVERY"));
+
+        String accessToken = tokenCodec.signAccessToken(tokenCodec.builder().setHeaderParam("type", "RECOVERY").setSubject("7"));
+        assertThrows(UnsupportedJwtException.class, () -> tokenCodec.restoreSignature(tokenCodec.stripSignature(accessToken), "RECOVERY"));
+
+        String bearerToken = tokenCodec.sign(tokenCodec.builder().setHeaderParam("type", "BEARER").setSubject("7"));
+        assertThrows(UnsupportedJwtException.class, () -> tokenCodec.restoreSignature(tokenCodec.stripSignature(bearerToken), "RECOVERY"));
+    }
+}